@@ -1,7 +1,27 @@
 package com.github.kostyasha.yad;
 
+import com.github.kostyasha.yad.client.DockerDiskUsage;
 import com.github.kostyasha.yad.commons.AbstractCloud;
 import com.github.kostyasha.yad.commons.DockerCreateContainer;
+import com.github.kostyasha.yad.provisioning.ContainerResources;
+import com.github.kostyasha.yad.provisioning.DockerContainerInventory;
+import com.github.kostyasha.yad.provisioning.DockerHostHealth;
+import com.github.kostyasha.yad.provisioning.DockerHostHealth.HostHealth;
+import com.github.kostyasha.yad.provisioning.DockerHostHealthWork;
+import com.github.kostyasha.yad.provisioning.DockerHostPlacement;
+import com.github.kostyasha.yad.provisioning.DockerHostPlacement.HostLoad;
+import com.github.kostyasha.yad.provisioning.DockerImageCache;
+import com.github.kostyasha.yad.provisioning.DockerImageCache.HostImages;
+import com.github.kostyasha.yad.provisioning.DockerImageGc;
+import com.github.kostyasha.yad.provisioning.DockerWarmPool;
+import com.github.kostyasha.yad.provisioning.DockerWarmPool.WarmContainer;
+import com.github.kostyasha.yad.provisioning.HostBudget;
+import com.github.kostyasha.yad.provisioning.ProvisioningCircuitBreaker;
+import com.github.kostyasha.yad.provisioning.ProvisioningLatency;
+import com.github.kostyasha.yad.provisioning.ProvisioningPipeline;
+import com.github.kostyasha.yad.provisioning.ProvisioningStage;
+import com.github.kostyasha.yad.provisioning.ProvisioningReservations;
+import com.github.kostyasha.yad.provisioning.ProvisioningReservations.Reservation;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.CreateContainerResponse;
@@ -9,6 +29,7 @@ import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.In
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.StartContainerCmd;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.DockerException;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Container;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Image;
 import com.github.kostyasha.yad_docker_java.com.google.common.base.Throwables;
 import com.github.kostyasha.yad_docker_java.javax.ws.rs.ProcessingException;
 import com.github.kostyasha.yad_docker_java.org.apache.commons.lang.StringUtils;
@@ -18,12 +39,14 @@ import hudson.Extension;
 import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Label;
+import hudson.model.Node;
 import hudson.slaves.Cloud;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.NodeProvisioner.PlannedNode;
 import hudson.util.FormValidation;
 import jenkins.model.Jenkins;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,17 +55,38 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.INSPECT;
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.LAUNCHER;
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.PULL;
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.RUN;
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.WAIT_UP;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
- * Docker Jenkins Cloud configuration. Contains connection configuration,
+ * Docker Jenkins Cloud configuration. Contains connection configuration for one or more docker hosts,
  * {@link DockerSlaveTemplate} contains configuration for running docker image.
  */
 @SuppressFBWarnings(value = {"SE_BAD_FIELD", "SE_NO_SUITABLE_CONSTRUCTOR"})
@@ -51,11 +95,49 @@ public class DockerCloud extends AbstractCloud implements Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerCloud.class);
 
-    private static final String DOCKER_CLOUD_LABEL = DockerCloud.class.getName();
-    private static final String DOCKER_TEMPLATE_LABEL = DockerSlave.class.getName();
+    public static final String DOCKER_CLOUD_LABEL = DockerCloud.class.getName();
+    public static final String DOCKER_TEMPLATE_LABEL = DockerSlave.class.getName();
+    public static final String DOCKER_WARM_LABEL = DockerCloud.class.getName() + ".warm";
+
+    public static final long HEALTH_PROBE_TIMEOUT = SECONDS.toMillis(10);
+
+    /**
+     * Removal and re-measure rounds of one image collection.
+     */
+    private static final int IMAGE_GC_ROUNDS = 3;
 
     private DockerConnector connector;
 
+    /**
+     * Docker hosts in addition to {@link #connector}. Containers are placed on host with most free capacity.
+     */
+    @CheckForNull
+    private List<DockerConnector> additionalConnectors = Collections.emptyList();
+
+    @CheckForNull
+    private transient volatile DockerContainerInventory inventory;
+
+    @CheckForNull
+    private transient volatile DockerImageCache imageCache;
+
+    @CheckForNull
+    private transient volatile DockerWarmPool warmPool;
+
+    @CheckForNull
+    private transient volatile ProvisioningLatency provisioningLatency;
+
+    @CheckForNull
+    private transient volatile ProvisioningCircuitBreaker templateBreaker;
+
+    @CheckForNull
+    private transient volatile ProvisioningCircuitBreaker hostBreaker;
+
+    @CheckForNull
+    private transient volatile ProvisioningPipeline pipeline;
+
+    @CheckForNull
+    private transient volatile DockerHostHealth hostHealth;
+
     @DataBoundConstructor
     public DockerCloud(String name,
                        List<DockerSlaveTemplate> templates,
@@ -77,23 +159,278 @@ public class DockerCloud extends AbstractCloud implements Serializable {
         return this;
     }
 
+    @Nonnull
+    public List<DockerConnector> getAdditionalConnectors() {
+        return isNull(additionalConnectors) ? Collections.emptyList() : additionalConnectors;
+    }
+
+    @DataBoundSetter
+    public void setAdditionalConnectors(List<DockerConnector> additionalConnectors) {
+        this.additionalConnectors = isNull(additionalConnectors) ? Collections.emptyList() :
+                new ArrayList<>(additionalConnectors);
+    }
+
+    /**
+     * @return main connector followed by additional connectors.
+     */
+    @Nonnull
+    public List<DockerConnector> getConnectors() {
+        final List<DockerConnector> connectors = new ArrayList<>();
+        connectors.add(getConnector());
+        connectors.addAll(getAdditionalConnectors());
+        return connectors;
+    }
+
     /**
-     * Connects to Docker.
+     * @param serverUrl docker host of container, null for containers created before hosts were remembered.
+     * @return connector of host or main connector when host is unknown or was removed from configuration.
+     */
+    @Nonnull
+    public DockerConnector getConnector(@CheckForNull String serverUrl) {
+        if (nonNull(serverUrl)) {
+            for (DockerConnector dockerConnector : getConnectors()) {
+                if (serverUrl.equals(dockerConnector.getServerUrl())) {
+                    return dockerConnector;
+                }
+            }
+        }
+        return getConnector();
+    }
+
+    /**
+     * Connects to Docker. Not synchronized on cloud, so slow provisioning never blocks client users.
      *
-     * @return Docker client.
+     * @return Docker client of main host.
      */
-    public synchronized DockerClient getClient() {
+    public DockerClient getClient() {
         return getConnector().getClient();
     }
 
+    /**
+     * @return Docker client of given host.
+     * @see #getConnector(String)
+     */
+    public DockerClient getClient(@CheckForNull String serverUrl) {
+        return getConnector(serverUrl).getClient();
+    }
+
+    /**
+     * Running containers of this cloud, kept current from docker events.
+     */
+    @Nonnull
+    public DockerContainerInventory getInventory() {
+        DockerContainerInventory result = inventory;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = inventory;
+                if (isNull(result)) {
+                    result = new DockerContainerInventory(getDisplayName(), hostClients(),
+                            templateId -> ContainerResources.of(getTemplateById(templateId)));
+                    inventory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Images known to be present on docker hosts of this cloud.
+     */
+    @Nonnull
+    public DockerImageCache getImageCache() {
+        DockerImageCache result = imageCache;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = imageCache;
+                if (isNull(result)) {
+                    result = new DockerImageCache(getDisplayName(), hostClients());
+                    imageCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return serverUrl -> client for every docker host of cloud.
+     */
+    private Map<String, Supplier<DockerClient>> hostClients() {
+        final Map<String, Supplier<DockerClient>> clients = new LinkedHashMap<>();
+        for (DockerConnector dockerConnector : getConnectors()) {
+            clients.putIfAbsent(dockerConnector.getServerUrl(), dockerConnector::getClient);
+        }
+        return clients;
+    }
+
+    /**
+     * Containers started in advance and ready for launch.
+     */
+    @Nonnull
+    public DockerWarmPool getWarmPool() {
+        DockerWarmPool result = warmPool;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = warmPool;
+                if (isNull(result)) {
+                    result = new DockerWarmPool();
+                    warmPool = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Observed time of provisioning without warm pool, used by predictive provisioning.
+     */
+    @Nonnull
+    public ProvisioningLatency getProvisioningLatency() {
+        ProvisioningLatency result = provisioningLatency;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = provisioningLatency;
+                if (isNull(result)) {
+                    result = new ProvisioningLatency();
+                    provisioningLatency = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Failures of templates (broken image, bad configuration), keyed by template id.
+     */
+    @Nonnull
+    public ProvisioningCircuitBreaker getTemplateBreaker() {
+        ProvisioningCircuitBreaker result = templateBreaker;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = templateBreaker;
+                if (isNull(result)) {
+                    result = new ProvisioningCircuitBreaker();
+                    templateBreaker = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Failures of docker hosts (connection refused, timeouts), keyed by server url.
+     */
+    @Nonnull
+    public ProvisioningCircuitBreaker getHostBreaker() {
+        ProvisioningCircuitBreaker result = hostBreaker;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = hostBreaker;
+                if (isNull(result)) {
+                    result = new ProvisioningCircuitBreaker();
+                    hostBreaker = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Health of docker hosts from periodic probes, keyed by server url.
+     */
+    @Nonnull
+    public DockerHostHealth getHostHealth() {
+        DockerHostHealth result = hostHealth;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = hostHealth;
+                if (isNull(result)) {
+                    result = new DockerHostHealth();
+                    hostHealth = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return health of every docker host of cloud, for cloud configuration page.
+     */
+    @Nonnull
+    public List<HostHealth> getHostsHealth() {
+        final List<HostHealth> result = new ArrayList<>();
+        for (String host : hostClients().keySet()) {
+            result.add(getHostHealth().forHost(host));
+        }
+        return result;
+    }
+
+    /**
+     * Pings every docker host once and records latency or failure, see {@link DockerHostHealthWork}.
+     * Ping client has read timeout, provisioning clients may have none.
+     */
+    public void checkHostHealth() {
+        final int timeoutSeconds = (int) MILLISECONDS.toSeconds(HEALTH_PROBE_TIMEOUT);
+        final Map<String, Runnable> pings = new LinkedHashMap<>();
+        for (DockerConnector dockerConnector : getConnectors()) {
+            // registry shares probe client between rounds
+            final DockerConnector probes = dockerConnector.forProbes(timeoutSeconds);
+            pings.putIfAbsent(dockerConnector.getServerUrl(), () -> probes.getClient().pingCmd().exec());
+        }
+        getHostHealth().probeAll(pings, Computer.threadPoolForRemoting, HEALTH_PROBE_TIMEOUT);
+    }
+
+    /**
+     * Executes provisioning stages with per host limits and timeouts.
+     */
+    @Nonnull
+    public ProvisioningPipeline getPipeline() {
+        ProvisioningPipeline result = pipeline;
+        if (isNull(result)) {
+            synchronized (this) {
+                result = pipeline;
+                if (isNull(result)) {
+                    result = new ProvisioningPipeline(getDisplayName());
+                    pipeline = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Templates that are backing off after failures are not offered, so core may try other clouds.
+     * Nothing is offered when all docker hosts are unavailable.
+     */
+    @Override
+    public boolean canProvision(Label label) {
+        final DockerHostHealth health = getHostHealth();
+        if (getConnectors().stream().noneMatch(c -> health.isAvailable(c.getServerUrl()))) {
+            return false;
+        }
+
+        final ProvisioningCircuitBreaker breaker = getTemplateBreaker();
+        return getTemplates(label).stream().anyMatch(t -> breaker.isAvailable(t.getId()));
+    }
+
     @SuppressFBWarnings(value = "REC_CATCH_EXCEPTION", justification = "docker-java uses runtime exceptions")
     @Nonnull
     @Override
-    public synchronized Collection<PlannedNode> provision(@CheckForNull Label label, int excessWorkload) {
+    public Collection<PlannedNode> provision(@CheckForNull Label label, int excessWorkload) {
         LOG.info("Asked to provision load: '{}', for: '{}' label", excessWorkload, label);
 
+        // decisions are made only against local view, never wait for docker host here
+        final DockerContainerInventory containerInventory = getInventory();
+        if (!containerInventory.isSeeded()) {
+            LOG.info("Container inventory for cloud '{}' is not ready yet, skipping provisioning round",
+                    getDisplayName());
+            containerInventory.seedAsync(Computer.threadPoolForRemoting);
+            return Collections.emptyList();
+        }
+
+        getReservations().expireStale();
+
         List<PlannedNode> r = new ArrayList<>(excessWorkload);
-        final List<DockerSlaveTemplate> tryTemplates = getTemplates(label);
+        final List<DockerSlaveTemplate> tryTemplates = new ArrayList<>(getTemplates(label));
 
         while (excessWorkload > 0 && !tryTemplates.isEmpty()) {
             final DockerSlaveTemplate t = tryTemplates.get(0); // get first
@@ -101,33 +438,58 @@ public class DockerCloud extends AbstractCloud implements Serializable {
             LOG.info("Will provision '{}', for label: '{}', in cloud: '{}'",
                     t.getDockerContainerLifecycle().getImage(), label, getDisplayName());
 
+            final WarmContainer warmContainer = getWarmPool().poll(t, containerInventory::isRunning);
+            if (nonNull(warmContainer)) {
+                LOG.info("Taking ready container '{}' from pool of '{}' in cloud '{}'",
+                        warmContainer.getContainerId(), t.getDockerContainerLifecycle().getImage(), getDisplayName());
+                final Future<Node> plannedNode = createSlaveAsync(t, warmContainer.getInspect(), warmContainer.getHost(),
+                        null);
+                r.add(new PlannedNode(t.getDockerContainerLifecycle().getImage(), plannedNode, t.getNumExecutors()));
+                excessWorkload -= t.getNumExecutors();
+                continue;
+            }
+
+            if (!getTemplateBreaker().tryAcquire(t.getId())) {
+                LOG.info("Template '{}' in cloud '{}' is backing off after failures for {} ms. Trying next template...",
+                        t.getDockerContainerLifecycle().getImage(), getDisplayName(),
+                        getTemplateBreaker().getRetryIn(t.getId()));
+                tryTemplates.remove(t);
+                continue;
+            }
+
+            final Reservation reservation;
             try {
-                if (!addProvisionedSlave(t)) {
+                reservation = addProvisionedSlave(t);
+                if (isNull(reservation)) {
+                    getTemplateBreaker().release(t.getId());
                     tryTemplates.remove(t);
                     continue;
                 }
             } catch (Exception e) {
                 LOG.warn("Bad template '{}' in cloud '{}': '{}'. Trying next template...",
                         t.getDockerContainerLifecycle().getImage(), getDisplayName(), e.getMessage(), e);
+                getTemplateBreaker().failure(t.getId());
                 tryTemplates.remove(t);
                 continue;
             }
 
-            r.add(new PlannedNode(
-                    t.getDockerContainerLifecycle().getImage(),
-                    Computer.threadPoolForRemoting.submit(() -> {
-                        try {
-                            return provisionWithWait(t);
-                        } catch (Exception ex) {
-                            LOG.error("Error in provisioning; template='{}' for cloud='{}'",
-                                    t, getDisplayName(), ex);
-                            throw Throwables.propagate(ex);
-                        } finally {
-                            decrementAmiSlaveProvision(t);
-                        }
-                    }),
-                    t.getNumExecutors())
-            );
+            final String host = reservation.getHost();
+            final long started = System.currentTimeMillis();
+            final CompletableFuture<Node> plannedNode = startContainerAsync(t, host, false, reservation)
+                    .thenCompose(ir -> createSlaveAsync(t, ir, host, reservation));
+            plannedNode.whenComplete((node, ex) -> {
+                reservation.release();
+                if (isNull(ex)) {
+                    getProvisioningLatency().record(t.getId(), System.currentTimeMillis() - started);
+                    provisioningSucceeded(t, host);
+                } else {
+                    LOG.error("Error in provisioning; template='{}' for cloud='{}'", t, getDisplayName(), ex);
+                    provisioningFailed(t, host, ex);
+                }
+            });
+            reservation.attach(plannedNode);
+
+            r.add(new PlannedNode(t.getDockerContainerLifecycle().getImage(), plannedNode, t.getNumExecutors()));
 
             excessWorkload -= t.getNumExecutors();
         }
@@ -137,15 +499,28 @@ public class DockerCloud extends AbstractCloud implements Serializable {
 
 
     /**
-     * Run docker container for given template
+     * Run docker container for given template on main host
      *
      * @return container id
      */
     public String runContainer(DockerSlaveTemplate slaveTemplate) throws DockerException, IOException {
+        return runContainer(slaveTemplate, getConnector().getServerUrl(), false);
+    }
+
+    /**
+     * Run docker container for given template
+     *
+     * @param host docker host to run container on
+     * @param warm container is created for {@link DockerWarmPool}
+     * @return container id
+     */
+    public String runContainer(DockerSlaveTemplate slaveTemplate, String host, boolean warm)
+            throws DockerException, IOException {
         final DockerCreateContainer dockerCreateContainer = slaveTemplate.getDockerContainerLifecycle().getCreateContainer();
         final String image = slaveTemplate.getDockerContainerLifecycle().getImage();
+        final DockerClient client = getClient(host);
 
-        CreateContainerCmd containerConfig = getClient().createContainerCmd(image);
+        CreateContainerCmd containerConfig = client.createContainerCmd(image);
 
         // template specific options
         dockerCreateContainer.fillContainerConfig(containerConfig);
@@ -154,16 +529,16 @@ public class DockerCloud extends AbstractCloud implements Serializable {
         slaveTemplate.getLauncher().appendContainerConfig(slaveTemplate, containerConfig);
 
         // cloud specific options
-        appendContainerConfig(slaveTemplate, containerConfig);
+        appendContainerConfig(slaveTemplate, containerConfig, warm);
 
         // create
         CreateContainerResponse response = containerConfig.exec();
         String containerId = response.getId();
-        LOG.debug("Created container {}, for {}", containerId, getDisplayName());
+        LOG.debug("Created container {}, for {} on {}", containerId, getDisplayName(), host);
         // start
-        StartContainerCmd startCommand = getClient().startContainerCmd(containerId);
+        StartContainerCmd startCommand = client.startContainerCmd(containerId);
         startCommand.exec();
-        LOG.debug("Run container {}, for {}", containerId, getDisplayName());
+        LOG.debug("Run container {}, for {} on {}", containerId, getDisplayName(), host);
 
         return containerId;
     }
@@ -171,7 +546,8 @@ public class DockerCloud extends AbstractCloud implements Serializable {
     /**
      * Cloud specific container config options
      */
-    private void appendContainerConfig(DockerSlaveTemplate slaveTemplate, CreateContainerCmd containerConfig) {
+    private void appendContainerConfig(DockerSlaveTemplate slaveTemplate, CreateContainerCmd containerConfig,
+                                       boolean warm) {
         Map<String, String> labels = containerConfig.getLabels();
         if (labels == null) {
             labels = new HashMap<>();
@@ -179,31 +555,80 @@ public class DockerCloud extends AbstractCloud implements Serializable {
 
         labels.put(DOCKER_CLOUD_LABEL, getDisplayName());
         labels.put(DOCKER_TEMPLATE_LABEL, slaveTemplate.getId());
+        if (warm) {
+            labels.put(DOCKER_WARM_LABEL, Boolean.TRUE.toString());
+        }
 
         containerConfig.withLabels(labels);
     }
 
     /**
-     * Provision slave container and wait for it's availability.
+     * Pull image, run container on host and wait until it is ready for launcher.
+     * Every step is {@link ProvisioningStage} of {@link #getPipeline()}. Container is removed when later stage fails.
+     * Every started step renews reservation, so waiting in stage queues doesn't expire it.
      */
-    private DockerSlave provisionWithWait(DockerSlaveTemplate template) throws IOException, Descriptor.FormException {
+    private CompletableFuture<InspectContainerResponse> startContainerAsync(DockerSlaveTemplate template, String host,
+                                                                            boolean warm, Reservation reservation) {
+        final ProvisioningPipeline stages = getPipeline();
         final DockerContainerLifecycle dockerContainerLifecycle = template.getDockerContainerLifecycle();
         final String imageId = dockerContainerLifecycle.getImage();
 
-        //pull image
-        dockerContainerLifecycle.getPullImage().exec(getClient(), imageId);
+        return stages.stage(PULL, host, () -> {
+            reservation.renew();
+            final HostImages hostImages = getImageCache().forHost(host);
+            if (nonNull(hostImages)) {
+                hostImages.used(imageId);
+            }
+            dockerContainerLifecycle.getPullImage().exec(getClient(host), imageId, hostImages);
+            return imageId;
+        }).thenCompose(image -> stages.stage(RUN, host, () -> {
+            reservation.renew();
+            LOG.info("Trying to run container for {} on {}", imageId, host);
+            final String containerId = runContainer(template, host, warm);
+            getInventory().containerStarted(containerId, template.getId(), host);
+            return containerId;
+        }, lateContainerId -> removeContainerQuietly(lateContainerId, host))
+        ).thenCompose(containerId -> stages.stage(INSPECT, host, () -> {
+            reservation.renew();
+            return getClient(host).inspectContainerCmd(containerId).exec();
+        }).thenCompose(ir -> stages.stage(WAIT_UP, host, () -> {
+            reservation.renew();
+            if (template.getLauncher().waitUp(getDisplayName(), host, template, ir)) {
+                LOG.debug("Container {} is ready for ssh slave connection", containerId);
+            } else {
+                LOG.error("Container {} is not ready for ssh slave connection.", containerId);
+            }
+            return ir;
+        })).whenCompleteAsync((ir, ex) -> {
+            if (nonNull(ex)) {
+                LOG.error("Failed to run container for {}, clean-up container", imageId);
+                removeContainerQuietly(containerId, host);
+            }
+        }, ProvisioningPipeline.getExecutor()));
+    }
 
-        LOG.info("Trying to run container for {}", imageId);
-        final String containerId = runContainer(template);
+    /**
+     * Slave for already running and ready container, created in {@link ProvisioningStage#LAUNCHER} stage.
+     *
+     * @param reservation renewed when stage starts, null for container taken from warm pool
+     */
+    private CompletableFuture<Node> createSlaveAsync(DockerSlaveTemplate template, InspectContainerResponse ir,
+                                                     String host, @CheckForNull Reservation reservation) {
+        return getPipeline().stage(LAUNCHER, host, () -> {
+            if (nonNull(reservation)) {
+                reservation.renew();
+            }
+            return createSlave(template, ir, host);
+        });
+    }
 
-        InspectContainerResponse ir;
-        try {
-            ir = getClient().inspectContainerCmd(containerId).exec();
-        } catch (ProcessingException ex) {
-            LOG.error("Failed to run container for {}, clean-up container", imageId);
-            dockerContainerLifecycle.getRemoveContainer().exec(getClient(), containerId);
-            throw ex;
-        }
+    /**
+     * Slave for already running and ready container.
+     */
+    private DockerSlave createSlave(DockerSlaveTemplate template, InspectContainerResponse ir, String host)
+            throws IOException, Descriptor.FormException {
+        final String imageId = template.getDockerContainerLifecycle().getImage();
+        final String containerId = ir.getId();
 
         // Build a description up:
         String nodeDescription = "Docker Node [" + imageId + " on ";
@@ -216,86 +641,462 @@ public class DockerCloud extends AbstractCloud implements Serializable {
 
         String slaveName = String.format("%s-%s", getDisplayName(), containerId.substring(0, 12));
 
-        if (template.getLauncher().waitUp(getDisplayName(), template, ir)) {
-            LOG.debug("Container {} is ready for ssh slave connection", containerId);
-        } else {
-            LOG.error("Container {} is not ready for ssh slave connection.", containerId);
+        final ComputerLauncher launcher = template.getLauncher()
+                .getPreparedLauncher(getDisplayName(), host, template, ir);
+
+        final DockerSlave slave = new DockerSlave(slaveName, nodeDescription, launcher, containerId, template,
+                getDisplayName());
+        slave.setDockerHost(host);
+        return slave;
+    }
+
+    /**
+     * Pulls or refreshes images of all templates on every available host, honouring template pull strategy.
+     * Pulls are background {@link ProvisioningStage#PULL} stages, so they are bounded per host, coalesce with
+     * provisioning pulls and never queue ahead of them. Runs in background, provisioning doesn't pull again
+     * image refreshed here.
+     *
+     * @return future that completes when all pulls finished, failures are logged.
+     */
+    @Nonnull
+    public CompletableFuture<Void> prePullImages() {
+        final ProvisioningPipeline stages = getPipeline();
+        final ProvisioningCircuitBreaker breaker = getHostBreaker();
+        final List<CompletableFuture<String>> pulls = new ArrayList<>();
+
+        for (DockerSlaveTemplate template : getTemplates()) {
+            final DockerContainerLifecycle dockerContainerLifecycle = template.getDockerContainerLifecycle();
+            final String imageId = dockerContainerLifecycle.getImage();
+            if (StringUtils.isBlank(imageId)) {
+                continue;
+            }
+
+            for (String host : getInventory().getHosts()) {
+                final HostImages hostImages = getImageCache().forHost(host);
+                if (isNull(hostImages) || !breaker.isAvailable(host) || !getHostHealth().isAvailable(host)) {
+                    continue;
+                }
+
+                pulls.add(stages.background(PULL, host, () -> {
+                    dockerContainerLifecycle.getPullImage().refresh(getClient(host), imageId, hostImages);
+                    return imageId;
+                }).whenComplete((image, ex) -> {
+                    if (nonNull(ex)) {
+                        LOG.warn("Can't pre-pull image '{}' on '{}'", imageId, host, ex);
+                    }
+                }));
+            }
         }
 
-        final ComputerLauncher launcher = template.getLauncher().getPreparedLauncher(getDisplayName(), template, ir);
+        return CompletableFuture.allOf(pulls.toArray(new CompletableFuture[pulls.size()]));
+    }
 
-        return new DockerSlave(slaveName, nodeDescription, launcher, containerId, template, getDisplayName());
+    /**
+     * Removes least recently used images of cloud templates from hosts whose images take more than
+     * {@link DockerConnector#getImageBudgetGb()}. Pinned images, images of running or stopped containers,
+     * recently used images and images that don't belong to cloud templates are kept. Usage is measured with daemon
+     * disk usage that counts layers shared by images once, so hosts reachable only with unix socket or with
+     * docker older than 1.13 are skipped. Runs in background.
+     */
+    public void collectImages() {
+        final Set<String> templateImages = new HashSet<>();
+        final Set<String> pinnedImages = new HashSet<>();
+        for (DockerSlaveTemplate template : getTemplates()) {
+            final DockerContainerLifecycle dockerContainerLifecycle = template.getDockerContainerLifecycle();
+            if (StringUtils.isBlank(dockerContainerLifecycle.getImage())) {
+                continue;
+            }
+            final String normalized = DockerImageCache.normalize(dockerContainerLifecycle.getImage());
+            templateImages.add(normalized);
+            if (dockerContainerLifecycle.isPinImage()) {
+                pinnedImages.add(normalized);
+            }
+        }
+
+        for (DockerConnector hostConnector : getConnectors()) {
+            final String host = hostConnector.getServerUrl();
+            final HostImages hostImages = getImageCache().forHost(host);
+            if (hostConnector.getImageBudgetGb() <= 0 || isNull(hostImages) || !getHostBreaker().isAvailable(host)) {
+                continue;
+            }
+
+            try {
+                collectImages(hostConnector, hostImages, hostConnector.getImageBudgetGb() * 1024L * 1024L * 1024L,
+                        templateImages, pinnedImages);
+            } catch (Exception ex) {
+                LOG.warn("Can't collect images on '{}' for cloud '{}'", host, getDisplayName(), ex);
+            }
+        }
+    }
+
+    private void collectImages(DockerConnector hostConnector, HostImages hostImages, long budget,
+                               Set<String> templateImages, Set<String> pinnedImages) throws IOException {
+        final String host = hostConnector.getServerUrl();
+        final DockerClient client = getClient(host);
+
+        DockerDiskUsage diskUsage = DockerDiskUsage.fetch(hostConnector);
+        if (isNull(diskUsage)) {
+            LOG.debug("Image budget of '{}' needs disk usage API of docker 1.13+ over tcp", host);
+            return;
+        }
+
+        // removal of several images frees layers shared only between them, next round sees them as unique
+        for (int round = 0; round < IMAGE_GC_ROUNDS && diskUsage.getLayersSize() > budget; round++) {
+            final Map<String, List<String>> tags = new HashMap<>();
+            final List<DockerImageGc.Candidate> candidates = imageCandidates(client, hostImages, diskUsage,
+                    templateImages, pinnedImages, tags);
+
+            int removed = 0;
+            for (DockerImageGc.Candidate candidate : DockerImageGc.select(candidates, diskUsage.getLayersSize(),
+                    budget, System.currentTimeMillis())) {
+                try {
+                    client.removeImageCmd(candidate.getName()).withForce(true).exec();
+                    tags.get(candidate.getName()).forEach(hostImages::evicted);
+                    removed++;
+                    LOG.info("Removed image {} {} from '{}'", candidate.getName(), tags.get(candidate.getName()),
+                            host);
+                } catch (Exception ex) {
+                    // i.e. container was created from image right now
+                    LOG.debug("Can't remove image {} from '{}'", candidate.getName(), host, ex);
+                }
+            }
+            if (removed == 0) {
+                return;
+            }
+
+            diskUsage = DockerDiskUsage.fetch(hostConnector);
+            if (isNull(diskUsage)) {
+                return;
+            }
+            LOG.info("Images take {} of {} bytes budget on '{}'", diskUsage.getLayersSize(), budget, host);
+        }
     }
 
     /**
-     * Counts the number of instances in Docker currently running that are using the specified template.
-     *
-     * @param template If null, then all instances are counted.
+     * @param tags filled with repo tags of every candidate image id
+     * @return images whose every tag is own not pinned image and that no container uses, sized by disk that
+     * removal frees.
+     */
+    private static List<DockerImageGc.Candidate> imageCandidates(DockerClient client, HostImages hostImages,
+                                                                 DockerDiskUsage diskUsage, Set<String> templateImages,
+                                                                 Set<String> pinnedImages,
+                                                                 Map<String, List<String>> tags) {
+        final Set<String> usedIds = new HashSet<>();
+        final Set<String> usedNames = new HashSet<>();
+        for (Container container : client.listContainersCmd().withShowAll(true).exec()) {
+            if (nonNull(container.getImageId())) {
+                usedIds.add(container.getImageId());
+            }
+            if (nonNull(container.getImage())) {
+                usedNames.add(DockerImageCache.normalize(container.getImage()));
+            }
+        }
+
+        final Set<String> ownImages = new HashSet<>(templateImages);
+        ownImages.addAll(hostImages.getUsedImages());
+
+        final List<DockerImageGc.Candidate> candidates = new ArrayList<>();
+        for (Image image : client.listImagesCmd().exec()) {
+            final String[] repoTags = image.getRepoTags();
+            if (isNull(repoTags) || repoTags.length == 0 || usedIds.contains(image.getId())) {
+                continue;
+            }
+
+            // other tags of image belong to someone else
+            long lastUsed = 0;
+            boolean removable = true;
+            for (String repoTag : repoTags) {
+                final String normalized = DockerImageCache.normalize(repoTag);
+                if (!ownImages.contains(normalized) || pinnedImages.contains(normalized)
+                        || usedNames.contains(normalized)) {
+                    removable = false;
+                    break;
+                }
+                lastUsed = Math.max(lastUsed, hostImages.getLastUsed(normalized));
+            }
+
+            if (removable) {
+                tags.put(image.getId(), Arrays.asList(repoTags));
+                candidates.add(new DockerImageGc.Candidate(image.getId(), diskUsage.getUniqueSize(image.getId()),
+                        lastUsed));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Tops up warm pools of templates, trims extra and removes dead pooled containers.
+     * Runs in background and may do remote calls.
+     */
+    public void refillWarmPool() {
+        final DockerContainerInventory containerInventory = getInventory();
+        final DockerWarmPool pool = getWarmPool();
+        if (!containerInventory.isSeeded() || !pool.startRefill()) {
+            return;
+        }
+
+        try {
+            if (pool.startAdoption()) {
+                adoptWarmContainers(pool);
+            }
+
+            for (WarmContainer dead : pool.prune(getTemplates(), containerInventory::isRunning)) {
+                removeContainerQuietly(dead.getContainerId(), dead.getHost());
+            }
+
+            // the same gates as provisioning, failing template or hosts must not be refilled every period
+            final boolean hostAvailable = getInventory().getHosts().stream()
+                    .anyMatch(host -> getHostBreaker().isAvailable(host) && getHostHealth().isAvailable(host));
+
+            for (DockerSlaveTemplate template : getTemplates()) {
+                for (WarmContainer extra : pool.trim(template)) {
+                    removeContainerQuietly(extra.getContainerId(), extra.getHost());
+                }
+
+                if (!hostAvailable || !getTemplateBreaker().isAvailable(template.getId())) {
+                    continue;
+                }
+
+                // creations hold reservation, ready containers are counted by inventory as running
+                final int missing = pool.missing(template);
+                for (int i = 0; i < missing; i++) {
+                    if (!getTemplateBreaker().tryAcquire(template.getId())) {
+                        break;
+                    }
+
+                    final Reservation reservation = addProvisionedSlave(template);
+                    if (isNull(reservation)) {
+                        getTemplateBreaker().release(template.getId());
+                        break;
+                    }
+
+                    pool.creating(template).incrementAndGet();
+                    final String host = reservation.getHost();
+                    final CompletableFuture<InspectContainerResponse> creation = startContainerAsync(template, host, true,
+                            reservation);
+                    creation.whenComplete((ir, ex) -> {
+                        if (isNull(ex)) {
+                            pool.add(template, new WarmContainer(ir, host));
+                            provisioningSucceeded(template, host);
+                        } else {
+                            LOG.warn("Can't start ready container for '{}' in cloud '{}'",
+                                    template.getDockerContainerLifecycle().getImage(), getDisplayName(), ex);
+                            provisioningFailed(template, host, ex);
+                        }
+                        pool.creating(template).decrementAndGet();
+                        reservation.release();
+                    });
+                    reservation.attach(creation);
+                }
+            }
+        } finally {
+            pool.finishRefill();
+        }
+    }
+
+    /**
+     * Picks up pooled containers left by previous cloud instance (i.e. after configuration save or restart).
      */
-    public int countCurrentDockerSlaves(final DockerSlaveTemplate template) throws Exception {
-        int count = 0;
-        List<Container> containers = getClient().listContainersCmd().exec();
+    private void adoptWarmContainers(DockerWarmPool pool) {
+        final Map<String, String> filter = new HashMap<>();
+        filter.put(DOCKER_CLOUD_LABEL, getDisplayName());
+        filter.put(DOCKER_WARM_LABEL, Boolean.TRUE.toString());
+
+        final Set<String> owned = Jenkins.getActiveInstance().getNodes().stream()
+                .filter(DockerSlave.class::isInstance)
+                .map(node -> ((DockerSlave) node).getContainerId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        for (String host : getInventory().getHosts()) {
+            final List<Container> containers;
+            try {
+                containers = getClient(host).listContainersCmd().withLabelFilter(filter).exec();
+            } catch (Exception ex) {
+                LOG.warn("Can't list pooled containers of cloud '{}' on '{}'", getDisplayName(), host, ex);
+                continue;
+            }
 
-        for (Container container : containers) {
-            final Map<String, String> labels = container.getLabels();
+            for (Container container : containers) {
+                final String containerId = container.getId();
+                final DockerSlaveTemplate template = getTemplateById(container.getLabels().get(DOCKER_TEMPLATE_LABEL));
+                final DockerWarmPool.Adoption adoption = pool.adoption(containerId, template, owned);
+                if (adoption == DockerWarmPool.Adoption.SKIP) {
+                    continue;
+                }
+                if (adoption == DockerWarmPool.Adoption.REMOVE) {
+                    removeContainerQuietly(containerId, host);
+                    continue;
+                }
 
-            if (labels.containsKey(DOCKER_CLOUD_LABEL) && labels.get(DOCKER_CLOUD_LABEL).equals(getDisplayName())) {
-                if (template == null) {
-                    // count only total cloud capacity
-                    count++;
-                } else if (labels.containsKey(DOCKER_TEMPLATE_LABEL) &&
-                        labels.get(DOCKER_TEMPLATE_LABEL).equals(template.getId())) {
-                    count++;
+                try {
+                    pool.add(template, new WarmContainer(getClient(host).inspectContainerCmd(containerId).exec(), host));
+                    LOG.info("Adopted ready container '{}' into pool of cloud '{}'", containerId, getDisplayName());
+                } catch (Exception ex) {
+                    LOG.warn("Can't adopt container '{}' in cloud '{}'", containerId, getDisplayName(), ex);
                 }
             }
         }
+    }
 
-        return count;
+    private void removeContainerQuietly(String containerId, String host) {
+        try {
+            getClient(host).removeContainerCmd(containerId)
+                    .withForce(true)
+                    .exec();
+            LOG.info("Removed container '{}' in cloud '{}'", containerId, getDisplayName());
+        } catch (Exception ex) {
+            LOG.warn("Can't remove container '{}' in cloud '{}'", containerId, getDisplayName(), ex);
+        }
+        getInventory().containerRemoved(containerId);
     }
 
     /**
-     * Check not too many already running.
+     * Counts the number of instances in Docker currently running that are using the specified template.
+     * Answered from {@link DockerContainerInventory} without any remote call.
+     *
+     * @param template If null, then all instances are counted.
      */
-    private synchronized boolean addProvisionedSlave(DockerSlaveTemplate template) throws Exception {
+    public int countCurrentDockerSlaves(final DockerSlaveTemplate template) {
+        if (template == null) {
+            // count only total cloud capacity
+            return getInventory().countContainers();
+        }
+
+        return getInventory().countContainers(template.getId());
+    }
+
+    /**
+     * Check not too many already running and reserve slot for new one.
+     * Uses only local lock-free counters, must not do remote calls.
+     *
+     * @return reservation that must be released after provisioning or null when capacity reached.
+     */
+    @CheckForNull
+    private Reservation addProvisionedSlave(DockerSlaveTemplate template) {
         final DockerContainerLifecycle dockerCreateContainer = template.getDockerContainerLifecycle();
         String dockerImageName = dockerCreateContainer.getImage();
         int templateCapacity = template.getMaxCapacity();
 
-        int estimatedTotalSlaves = countCurrentDockerSlaves(null);
-        int estimatedAmiSlaves = countCurrentDockerSlaves(template);
+        int runningTotal = countCurrentDockerSlaves(null);
+        int runningTemplate = countCurrentDockerSlaves(template);
 
-        synchronized (provisionedImages) {
-            int currentProvisioning = 0;
-            if (provisionedImages.containsKey(template)) {
-                currentProvisioning = provisionedImages.get(template);
-            }
+        final ProvisioningReservations reservations = getReservations();
+        final Reservation reservation = reservations.tryAcquire(template.getId(), getContainerCap(), templateCapacity,
+                runningTotal, runningTemplate);
 
-            for (int amiCount : provisionedImages.values()) {
-                estimatedTotalSlaves += amiCount;
-            }
+        if (isNull(reservation)) {
+            LOG.info("Not Provisioning '{}'; Server '{}' full with '{}' container(s) or instance limit of '{}' " +
+                            "reached. Running: '{}', provisioning: '{}'",
+                    dockerImageName, name, getContainerCap(), templateCapacity, runningTotal, reservations.reserved());
+            return null;      // maxed out
+        }
 
-            estimatedAmiSlaves += currentProvisioning;
+        if (!placeOnHost(reservation, ContainerResources.of(template))) {
+            reservation.release();
+            LOG.info("Not Provisioning '{}'; All hosts of '{}' are full or not available", dockerImageName, name);
+            return null;
+        }
+
+        LOG.info("Provisioning '{}' number '{}' on '{}' ('{}'); Total containers: '{}'",
+                dockerImageName, runningTemplate + reservations.reserved(template.getId()), name,
+                reservation.getHost(), runningTotal + reservations.reserved());
 
-            if (estimatedTotalSlaves >= getContainerCap()) {
-                LOG.info("Not Provisioning '{}'; Server '{}' full with '{}' container(s)",
-                        dockerImageName, name, getContainerCap());
-                return false;      // maxed out
+        return reservation;
+    }
+
+    /**
+     * Places reservation on seeded host with most free capacity, see {@link DockerHostPlacement}.
+     * Host is skipped when container doesn't fit into its cap or resource budget or when it is unavailable,
+     * degraded hosts are tried after healthy ones.
+     * Uses only inventory counters, host info cached by inventory resync and host health.
+     */
+    private boolean placeOnHost(Reservation reservation, ContainerResources resources) {
+        final DockerContainerInventory containerInventory = getInventory();
+        final ProvisioningReservations reservations = getReservations();
+
+        final ProvisioningCircuitBreaker breaker = getHostBreaker();
+        final DockerHostHealth health = getHostHealth();
+
+        final List<HostLoad> loads = new ArrayList<>();
+        for (String host : containerInventory.getHosts()) {
+            if (containerInventory.isSeeded(host) && breaker.isAvailable(host) && health.isAvailable(host)) {
+                loads.add(new HostLoad(host, getConnector(host).getContainerCap(),
+                        containerInventory.countContainersOnHost(host) + reservations.reservedOnHost(host),
+                        containerInventory.getCpus(host), containerInventory.getMemory(host)));
             }
+        }
+
+        final List<String> ranked = new ArrayList<>(DockerHostPlacement.rank(loads));
+        // stable, so degraded hosts keep their rank among themselves
+        ranked.sort(Comparator.comparing(host -> health.getState(host) == DockerHostHealth.State.DEGRADED));
 
-            if (templateCapacity != 0 && estimatedAmiSlaves >= templateCapacity) {
-                LOG.info("Not Provisioning '{}'. Instance limit of '{}' reached on server '{}'",
-                        dockerImageName, templateCapacity, name);
-                return false;      // maxed out
+        for (String host : ranked) {
+            if (!breaker.tryAcquire(host)) {
+                continue;
+            }
+            if (reservation.placeOn(host, hostBudget(host), resources)) {
+                return true;
             }
+            breaker.release(host);
+        }
 
-            LOG.info("Provisioning '{}' number '{}' on '{}'; Total containers: '{}'",
-                    dockerImageName, estimatedAmiSlaves, name, estimatedTotalSlaves);
+        return false;
+    }
 
-            provisionedImages.put(template, currentProvisioning + 1);
-            return true;
+    /**
+     * Budget from connector settings and host info of last resync. Unknown host info disables resource check.
+     */
+    private HostBudget hostBudget(String host) {
+        final DockerContainerInventory containerInventory = getInventory();
+        final DockerConnector hostConnector = getConnector(host);
+
+        final long memory = containerInventory.getMemory(host) * hostConnector.getMemoryBudgetPercent() / 100;
+        final long cpuShares = containerInventory.getCpus(host) * ContainerResources.CPU_SHARES_PER_CPU
+                * hostConnector.getCpuBudgetPercent() / 100;
+
+        return new HostBudget(hostConnector.getContainerCap(), containerInventory.countContainersOnHost(host),
+                memory, containerInventory.getUsedMemory(host),
+                cpuShares, containerInventory.getUsedCpuShares(host));
+    }
+
+    private void provisioningSucceeded(DockerSlaveTemplate template, @CheckForNull String host) {
+        getTemplateBreaker().success(template.getId());
+        if (nonNull(host)) {
+            getHostBreaker().success(host);
+        }
+    }
+
+    /**
+     * Blames host for connection problems and template for everything else.
+     */
+    private void provisioningFailed(DockerSlaveTemplate template, @CheckForNull String host, Throwable failure) {
+        final boolean hostFailure = isHostFailure(failure);
+        if (hostFailure) {
+            getTemplateBreaker().release(template.getId());
+        } else {
+            getTemplateBreaker().failure(template.getId());
+        }
+
+        if (nonNull(host)) {
+            if (hostFailure) {
+                getHostBreaker().failure(host);
+            } else {
+                getHostBreaker().release(host);
+            }
         }
     }
 
+    private static boolean isHostFailure(Throwable failure) {
+        for (Throwable cause : Throwables.getCausalChain(failure)) {
+            if (cause instanceof ProcessingException || cause instanceof SocketException ||
+                    cause instanceof SocketTimeoutException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //    @CheckForNull
     public static DockerCloud getCloudByName(String name) {
         final Cloud cloud = Jenkins.getActiveInstance().getCloud(name);
@@ -316,6 +1117,9 @@ public class DockerCloud extends AbstractCloud implements Serializable {
         if (isNull(templates)) {
             templates = Collections.emptyList();
         }
+        if (isNull(additionalConnectors)) {
+            additionalConnectors = Collections.emptyList();
+        }
         //Xstream is not calling readResolve() for nested Describable's
         for (DockerSlaveTemplate template : getTemplates()) {
             template.readResolve();
@@ -337,6 +1141,7 @@ public class DockerCloud extends AbstractCloud implements Serializable {
         if (!name.equals(that.name)) return false;
         if (containerCap != that.containerCap) return false;
         if (!templates.equals(that.templates)) return false;
+        if (!getAdditionalConnectors().equals(that.getAdditionalConnectors())) return false;
         return !(connector != null ? !connector.equals(that.connector) : that.connector != null);
     }
 
@@ -10,6 +10,8 @@ import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.DefaultDo
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.RemoteApiVersion;
 import com.github.kostyasha.yad_docker_java.com.google.common.base.Preconditions;
 import com.github.kostyasha.yad_docker_java.org.apache.commons.lang.StringUtils;
+import com.github.kostyasha.yad.client.DockerClientRegistry;
+import com.github.kostyasha.yad.client.DockerClientRegistry.ClientHandle;
 import com.github.kostyasha.yad.other.ConnectorType;
 import com.github.kostyasha.yad.utils.CredentialsListBoxModel;
 import com.google.common.base.Throwables;
@@ -40,6 +42,8 @@ import static com.github.kostyasha.yad.client.ClientBuilderForConnector.newClien
 import static com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.RemoteApiVersion.parseConfig;
 import static com.github.kostyasha.yad.other.ConnectorType.NETTY;
 import static hudson.util.FormValidation.ok;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
 import static hudson.util.FormValidation.warning;
 import static org.apache.commons.lang.builder.ToStringBuilder.reflectionToString;
 import static org.apache.commons.lang.builder.ToStringStyle.MULTI_LINE_STYLE;
@@ -50,6 +54,15 @@ import static org.apache.commons.lang.builder.ToStringStyle.MULTI_LINE_STYLE;
  * @author Kanstantsin Shautsou
  */
 public class DockerConnector implements Describable<DockerConnector> {
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 100;
+
+    /**
+     * docker-java allows only 2 connections per route that serializes burst provisioning.
+     */
+    public static final int DEFAULT_MAX_PER_ROUTE_CONNECTIONS = 20;
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final int DEFAULT_RETRY_DEADLINE_SECONDS = 60;
 
     @CheckForNull
     private String serverUrl;
@@ -62,10 +75,67 @@ public class DockerConnector implements Describable<DockerConnector> {
     @CheckForNull
     private String credentialsId = null;
 
+    private ConnectorType connectorType = NETTY;
+
+    /**
+     * Max containers of cloud on this host, 0 means unlimited.
+     */
+    private int containerCap = 0;
+
+    /**
+     * Percent of host memory that memory limits of cloud containers may take, 0 disables check.
+     * Over 100 allows overcommit.
+     */
+    private int memoryBudgetPercent = 0;
+
+    /**
+     * Percent of host CPUs that cpu shares of cloud containers may take, 0 disables check.
+     */
+    private int cpuBudgetPercent = 0;
+
+    /**
+     * Disk space that images may take on host before unused images of cloud are removed, 0 disables removal.
+     */
+    private int imageBudgetGb = 0;
+
+    /**
+     * Seconds, 0 is infinity.
+     */
+    private int connectTimeout = 0;
+
+    /**
+     * Seconds, 0 is infinity.
+     */
+    private int readTimeout = 0;
+
+    /**
+     * Pooled connections to host, used by {@link ConnectorType#JERSEY}.
+     */
+    private int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+
+    /**
+     * Pooled connections to host per route, used by {@link ConnectorType#JERSEY}.
+     */
+    private int maxPerRouteConnections = DEFAULT_MAX_PER_ROUTE_CONNECTIONS;
+
+    /**
+     * Retries of idempotent commands after transient failure, 0 disables retries.
+     * Null in configs saved before retries appeared.
+     */
     @CheckForNull
-    private transient DockerClient client = null;
+    private Integer maxRetries = DEFAULT_MAX_RETRIES;
 
-    private ConnectorType connectorType = NETTY;
+    /**
+     * Time for all attempts of one command. Null in configs saved before retries appeared.
+     */
+    @CheckForNull
+    private Integer retryDeadlineSeconds = DEFAULT_RETRY_DEADLINE_SECONDS;
+
+    /**
+     * Published only by {@link #rebuildClient()}, read without lock.
+     */
+    @CheckForNull
+    private transient volatile ClientHandle clientHandle;
 
     @DataBoundConstructor
     public DockerConnector(String serverUrl) {
@@ -113,18 +183,140 @@ public class DockerConnector implements Describable<DockerConnector> {
         this.connectorType = connectorType;
     }
 
+    public int getContainerCap() {
+        return containerCap;
+    }
+
+    @DataBoundSetter
+    public void setContainerCap(int containerCap) {
+        this.containerCap = containerCap;
+    }
+
+    public int getMemoryBudgetPercent() {
+        return memoryBudgetPercent;
+    }
+
+    @DataBoundSetter
+    public void setMemoryBudgetPercent(int memoryBudgetPercent) {
+        this.memoryBudgetPercent = memoryBudgetPercent;
+    }
+
+    public int getCpuBudgetPercent() {
+        return cpuBudgetPercent;
+    }
+
+    @DataBoundSetter
+    public void setCpuBudgetPercent(int cpuBudgetPercent) {
+        this.cpuBudgetPercent = cpuBudgetPercent;
+    }
+
+    public int getImageBudgetGb() {
+        return imageBudgetGb;
+    }
+
+    @DataBoundSetter
+    public void setImageBudgetGb(int imageBudgetGb) {
+        this.imageBudgetGb = imageBudgetGb;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @DataBoundSetter
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    @DataBoundSetter
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    @DataBoundSetter
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    public int getMaxPerRouteConnections() {
+        return maxPerRouteConnections;
+    }
+
+    @DataBoundSetter
+    public void setMaxPerRouteConnections(int maxPerRouteConnections) {
+        this.maxPerRouteConnections = maxPerRouteConnections;
+    }
+
+    public int getMaxRetries() {
+        return isNull(maxRetries) ? DEFAULT_MAX_RETRIES : maxRetries;
+    }
+
+    @DataBoundSetter
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getRetryDeadlineSeconds() {
+        return isNull(retryDeadlineSeconds) ? DEFAULT_RETRY_DEADLINE_SECONDS : retryDeadlineSeconds;
+    }
+
+    @DataBoundSetter
+    public void setRetryDeadlineSeconds(int retryDeadlineSeconds) {
+        this.retryDeadlineSeconds = retryDeadlineSeconds;
+    }
+
+    /**
+     * Wait-free unless client must be resolved again (first call, closed client, changed credentials).
+     *
+     * @return client shared by connectors with the same settings, see {@link DockerClientRegistry}.
+     */
     public DockerClient getClient() {
-        if (client == null) {
+        final ClientHandle handle = clientHandle;
+        if (nonNull(handle) && handle.isValid()) {
+            return handle.getClient();
+        }
+        return rebuildClient();
+    }
+
+    /**
+     * Only one thread per connector resolves client, others reuse its result.
+     */
+    private synchronized DockerClient rebuildClient() {
+        ClientHandle handle = clientHandle;
+        if (isNull(handle) || !handle.isValid()) {
             try {
-                client = newClientBuilderForConnector()
-                        .withDockerConnector(this)
-                        .build();
+                handle = DockerClientRegistry.acquire(this);
             } catch (GeneralSecurityException e) {
-                Throwables.propagate(e);
+                throw Throwables.propagate(e);
             }
+            clientHandle = handle;
         }
+        return handle.getClient();
+    }
 
-        return client;
+    /**
+     * Connector of the same host for health probes. Pooled connector (netty one has no read timeout) with short
+     * timeouts and without retries, so hung daemon fails probe instead of holding its thread.
+     */
+    public DockerConnector forProbes(int timeoutSeconds) {
+        final DockerConnector probes = new DockerConnector(serverUrl);
+        probes.setApiVersion(apiVersion);
+        probes.setCredentialsId(credentialsId);
+        probes.setConnectorType(ConnectorType.JERSEY);
+        probes.setConnectTimeout(timeoutSeconds);
+        probes.setReadTimeout(timeoutSeconds);
+        probes.setMaxTotalConnections(2);
+        probes.setMaxPerRouteConnections(2);
+        probes.setMaxRetries(0);
+        return probes;
     }
 
     public void testConnection() {
@@ -142,6 +334,21 @@ public class DockerConnector implements Describable<DockerConnector> {
             }
         }
 
+        // configs saved before pool settings appeared
+        if (maxTotalConnections == 0) {
+            maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+        }
+        if (maxPerRouteConnections == 0) {
+            maxPerRouteConnections = DEFAULT_MAX_PER_ROUTE_CONNECTIONS;
+        }
+        // 0 is valid value for retries, so absent ones are null
+        if (isNull(maxRetries)) {
+            maxRetries = DEFAULT_MAX_RETRIES;
+        }
+        if (isNull(retryDeadlineSeconds)) {
+            retryDeadlineSeconds = DEFAULT_RETRY_DEADLINE_SECONDS;
+        }
+
         return this;
     }
 
@@ -159,6 +366,16 @@ public class DockerConnector implements Describable<DockerConnector> {
                 .append(credentialsId, that.credentialsId)
                 .append(tlsVerify, that.tlsVerify)
                 .append(connectorType, that.connectorType)
+                .append(containerCap, that.containerCap)
+                .append(memoryBudgetPercent, that.memoryBudgetPercent)
+                .append(cpuBudgetPercent, that.cpuBudgetPercent)
+                .append(imageBudgetGb, that.imageBudgetGb)
+                .append(connectTimeout, that.connectTimeout)
+                .append(readTimeout, that.readTimeout)
+                .append(maxTotalConnections, that.maxTotalConnections)
+                .append(maxPerRouteConnections, that.maxPerRouteConnections)
+                .append(maxRetries, that.maxRetries)
+                .append(retryDeadlineSeconds, that.retryDeadlineSeconds)
                 .isEquals();
     }
 
@@ -170,6 +387,16 @@ public class DockerConnector implements Describable<DockerConnector> {
                 .append(credentialsId)
                 .append(tlsVerify)
                 .append(connectorType)
+                .append(containerCap)
+                .append(memoryBudgetPercent)
+                .append(cpuBudgetPercent)
+                .append(imageBudgetGb)
+                .append(connectTimeout)
+                .append(readTimeout)
+                .append(maxTotalConnections)
+                .append(maxPerRouteConnections)
+                .append(maxRetries)
+                .append(retryDeadlineSeconds)
                 .toHashCode();
     }
 
@@ -1,5 +1,6 @@
 package com.github.kostyasha.yad;
 
+import com.github.kostyasha.yad.commons.AbstractCloud;
 import com.github.kostyasha.yad.commons.DockerCreateContainer;
 import com.github.kostyasha.yad.commons.DockerPullImage;
 import com.github.kostyasha.yad.commons.DockerRemoveContainer;
@@ -29,6 +30,11 @@ public class DockerContainerLifecycle extends AbstractDescribableImpl<DockerCont
 
     private String image = "";
 
+    /**
+     * Pinned image is never removed by image garbage collection.
+     */
+    private boolean pinImage = false;
+
     private DockerPullImage pullImage = new DockerPullImage();
 
     private DockerCreateContainer createContainer = new DockerCreateContainer();
@@ -49,6 +55,16 @@ public class DockerContainerLifecycle extends AbstractDescribableImpl<DockerCont
     @DataBoundSetter
     public void setImage(String image) {
         this.image = image;
+        AbstractCloud.templatesChanged();
+    }
+
+    public boolean isPinImage() {
+        return pinImage;
+    }
+
+    @DataBoundSetter
+    public void setPinImage(boolean pinImage) {
+        this.pinImage = pinImage;
     }
 
     // pull image
@@ -93,6 +109,7 @@ public class DockerContainerLifecycle extends AbstractDescribableImpl<DockerCont
 
     public Object readResolve() {
         if (nonNull(createContainer)) createContainer.readResolve();
+        if (nonNull(pullImage)) pullImage.readResolve();
 
         return this;
     }
@@ -112,6 +129,7 @@ public class DockerContainerLifecycle extends AbstractDescribableImpl<DockerCont
 
         return new EqualsBuilder()
                 .append(image, that.image)
+                .append(pinImage, that.pinImage)
                 .append(pullImage, that.pullImage)
                 .append(createContainer, that.createContainer)
                 .append(stopContainer, that.stopContainer)
@@ -123,6 +141,7 @@ public class DockerContainerLifecycle extends AbstractDescribableImpl<DockerCont
     public int hashCode() {
         return new HashCodeBuilder(17, 37)
                 .append(image)
+                .append(pinImage)
                 .append(pullImage)
                 .append(createContainer)
                 .append(stopContainer)
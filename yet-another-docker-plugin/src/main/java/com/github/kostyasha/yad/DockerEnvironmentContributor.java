@@ -39,7 +39,9 @@ public class DockerEnvironmentContributor extends EnvironmentContributor {
                 //replace http:// and https:// from docker-java to tcp://
                 final DockerCloud cloud = dockerComputer.getCloud(); // checkfornull
                 if (cloud != null && cloud.getConnector() != null) {
-                    final URIBuilder uriBuilder = new URIBuilder(cloud.getConnector().getServerUrl());
+                    final DockerSlave node = dockerComputer.getNode();
+                    final String dockerHost = node != null ? node.getDockerHost() : null;
+                    final URIBuilder uriBuilder = new URIBuilder(cloud.getConnector(dockerHost).getServerUrl());
                     if (!uriBuilder.getScheme().equals("unix")) {
                         uriBuilder.setScheme("tcp");
                     }
@@ -1,15 +1,18 @@
 package com.github.kostyasha.yad;
 
-import com.github.kostyasha.yad.strategy.DockerOnceRetentionStrategy;
+import com.github.kostyasha.yad.provisioning.QueueTrend;
 import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.model.Label;
+import hudson.model.LoadStatistics;
 import hudson.model.LoadStatistics.LoadStatisticsSnapshot;
 import hudson.slaves.NodeProvisioner;
 import hudson.slaves.NodeProvisioner.PlannedNode;
+import jenkins.model.Jenkins;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.util.Collection;
 
@@ -26,6 +29,24 @@ import static java.util.Objects.isNull;
 public class DockerProvisioningStrategy extends NodeProvisioner.Strategy {
     private static final Logger LOG = LoggerFactory.getLogger(DockerProvisioningStrategy.class);
 
+    /**
+     * Provision ahead of demand when queue grows, see {@link #setPredictive(boolean)}.
+     */
+    private static volatile boolean predictive = Boolean.getBoolean(DockerProvisioningStrategy.class.getName() + ".predictive");
+
+    public static boolean isPredictive() {
+        return predictive;
+    }
+
+    /**
+     * For groovy. In predictive mode demand is queue length that trend of last minute reaches
+     * after template's observed provisioning time, so containers start before queue actually grows.
+     * Disabled by default, may be enabled with {@code -Dcom.github.kostyasha.yad.DockerProvisioningStrategy.predictive=true}.
+     */
+    public static void setPredictive(boolean predictive) {
+        DockerProvisioningStrategy.predictive = predictive;
+    }
+
     /**
      * For groovy.
      */
@@ -46,8 +67,10 @@ public class DockerProvisioningStrategy extends NodeProvisioner.Strategy {
     }
 
     /**
-     * Do asap provisioning for OnceRetention with one executor.
-     * Some other configuration may also want such behaviour?
+     * Do asap provisioning for any YAD template.
+     * Capacity is counted in executors: idle executors of online agents (reusable agents of
+     * {@link com.github.kostyasha.yad.strategy.DockerCloudRetentionStrategy} included), connecting ones and
+     * executors of planned nodes, so multi-executor containers are not over provisioned.
      */
     @Nonnull
     @Override
@@ -58,29 +81,30 @@ public class DockerProvisioningStrategy extends NodeProvisioner.Strategy {
 
         for (DockerCloud dockerCloud : getDockerClouds()) {
             for (DockerSlaveTemplate template : dockerCloud.getTemplates(label)) {
-                // exclude unknown mix of configuration
-                if (template == null ||
-                        !(template.getRetentionStrategy() instanceof DockerOnceRetentionStrategy) ||
-                        template.getNumExecutors() != 1) {
-                    LOG.info("Skipping unknown mix of YAD configuration for {}", template);
+                if (template == null) {
                     continue;
                 }
 
                 int availableCapacity = snapshot.getAvailableExecutors() +
                         snapshot.getConnectingExecutors() +
+                        strategyState.getPlannedCapacitySnapshot() +
                         strategyState.getAdditionalPlannedCapacity();
 
                 int currentDemand = snapshot.getQueueLength();
+                if (isPredictive()) {
+                    currentDemand = predictDemand(label, dockerCloud, template, currentDemand);
+                }
 
                 LOG.debug("Available capacity={}, currentDemand={}", availableCapacity, currentDemand);
 
                 if (availableCapacity < currentDemand) {
                     // may happen that would be provisioned with other template
                     Collection<PlannedNode> plannedNodes = dockerCloud.provision(label, currentDemand - availableCapacity);
-                    LOG.debug("Planned {} new nodes", plannedNodes.size());
+                    final int plannedExecutors = plannedNodes.stream().mapToInt(node -> node.numExecutors).sum();
+                    LOG.debug("Planned {} new nodes with {} executors", plannedNodes.size(), plannedExecutors);
 
                     strategyState.recordPendingLaunches(plannedNodes);
-                    availableCapacity += plannedNodes.size();
+                    availableCapacity += plannedExecutors;
                     LOG.debug("After '{}' provisioning, available capacity={}, currentDemand={}",
                             dockerCloud, availableCapacity, currentDemand);
                 }
@@ -99,4 +123,27 @@ public class DockerProvisioningStrategy extends NodeProvisioner.Strategy {
         LOG.debug("Provisioning not complete, consulting remaining strategies");
         return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
     }
+
+    /**
+     * @return queue length expected when container provisioned now becomes online.
+     */
+    private static int predictDemand(@CheckForNull Label label, DockerCloud dockerCloud, DockerSlaveTemplate template,
+                                     int currentDemand) {
+        final long latency = dockerCloud.getProvisioningLatency().get(template.getId());
+        if (latency <= 0) {
+            // nothing to predict with until first container was provisioned
+            return currentDemand;
+        }
+
+        final LoadStatistics loadStatistics = isNull(label) ?
+                Jenkins.getActiveInstance().unlabeledLoad :
+                label.loadStatistics;
+
+        final int predicted = QueueTrend.forecast(currentDemand, loadStatistics.queueLength.sec10.getHistory(), latency);
+        if (predicted > currentDemand) {
+            LOG.debug("Queue for '{}' grows, predicted demand={} in {} ms, currentDemand={}",
+                    label, predicted, latency, currentDemand);
+        }
+        return predicted;
+    }
 }
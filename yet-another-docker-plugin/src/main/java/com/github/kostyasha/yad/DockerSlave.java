@@ -2,6 +2,7 @@ package com.github.kostyasha.yad;
 
 import com.github.kostyasha.yad.action.DockerTerminateCmdAction;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotModifiedException;
 import com.github.kostyasha.yad_docker_java.com.google.common.base.MoreObjects;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -50,6 +51,12 @@ public class DockerSlave extends AbstractCloudSlave {
     @CheckForNull
     private final String cloudId;
 
+    /**
+     * Server url of docker host that runs container. Null for slaves created before cloud had many hosts.
+     */
+    @CheckForNull
+    private String dockerHost;
+
     private String displayName;
 
     public DockerSlave(String slaveName, String nodeDescription, ComputerLauncher launcher, String containerId,
@@ -79,6 +86,15 @@ public class DockerSlave extends AbstractCloudSlave {
         return cloudId;
     }
 
+    @CheckForNull
+    public String getDockerHost() {
+        return dockerHost;
+    }
+
+    public void setDockerHost(String dockerHost) {
+        this.dockerHost = dockerHost;
+    }
+
     public DockerSlaveTemplate getDockerSlaveTemplate() {
         return dockerSlaveTemplate;
     }
@@ -148,8 +164,10 @@ public class DockerSlave extends AbstractCloudSlave {
             try {
                 dockerContainerLifecycle.getStopContainer().exec(getClient(), containerId);
                 LOG.info("Stopped container {}", getContainerId());
+                getCloud().getInventory().containerRemoved(containerId);
             } catch (NotModifiedException ex) {
                 LOG.info("Container '{}' is already stopped.", getContainerId());
+                getCloud().getInventory().containerRemoved(containerId);
             } catch (Exception ex) {
                 LOG.error("Failed to stop instance '{}' for slave '{}' due to exception: {}",
                         getContainerId(), name, ex.getMessage());
@@ -168,6 +186,8 @@ public class DockerSlave extends AbstractCloudSlave {
             try {
                 dockerContainerLifecycle.getRemoveContainer().exec(getClient(), containerId);
                 LOG.info("Removed container {}", getContainerId());
+            } catch (NotFoundException ex) {
+                LOG.info("Container '{}' is already removed.", getContainerId());
             } catch (Exception ex) {
                 LOG.error("Failed to remove instance '{}' for slave '{}' due to exception: {}",
                         getContainerId(), name, ex.getMessage());
@@ -178,7 +198,7 @@ public class DockerSlave extends AbstractCloudSlave {
     }
 
     public DockerClient getClient() {
-        return getCloud().getClient();
+        return getCloud().getClient(dockerHost);
     }
 
     @Override
@@ -186,6 +206,7 @@ public class DockerSlave extends AbstractCloudSlave {
         return MoreObjects.toStringHelper(this)
                 .add("name", name)
                 .add("containerId", containerId)
+                .add("dockerHost", dockerHost)
                 .add("template", dockerSlaveTemplate)
                 .toString();
     }
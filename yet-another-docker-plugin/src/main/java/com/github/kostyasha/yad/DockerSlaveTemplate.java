@@ -1,5 +1,6 @@
 package com.github.kostyasha.yad;
 
+import com.github.kostyasha.yad.commons.AbstractCloud;
 import com.github.kostyasha.yad.commons.DockerCreateContainer;
 import com.github.kostyasha.yad_docker_java.com.google.common.base.MoreObjects;
 import com.github.kostyasha.yad_docker_java.com.google.common.base.Strings;
@@ -73,6 +74,16 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
 
     private int numExecutors = 1;
 
+    /**
+     * Number of started and ready for launch containers kept in advance. 0 disables pool.
+     */
+    private int poolMinIdle = 0;
+
+    /**
+     * Pool may grow up to this size when it was drained since last refill.
+     */
+    private int poolMaxIdle = 0;
+
     /**
      * Bundle class that contains all docker related actions/configs
      */
@@ -116,6 +127,7 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
     @DataBoundSetter
     public void setDockerContainerLifecycle(DockerContainerLifecycle dockerContainerLifecycle) {
         this.dockerContainerLifecycle = dockerContainerLifecycle;
+        AbstractCloud.templatesChanged();
     }
 
     public String getLabelString() {
@@ -126,11 +138,13 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
     public void setLabelString(String labelString) {
         this.labelString = Util.fixNull(labelString);
         this.labelSet = Label.parse(labelString);
+        AbstractCloud.templatesChanged();
     }
 
     @DataBoundSetter
     public void setMode(Node.Mode mode) {
         this.mode = mode;
+        AbstractCloud.templatesChanged();
     }
 
     public Node.Mode getMode() {
@@ -201,6 +215,27 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
         this.maxCapacity = maxCapacity;
     }
 
+    public int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    @DataBoundSetter
+    public void setPoolMinIdle(int poolMinIdle) {
+        this.poolMinIdle = poolMinIdle;
+    }
+
+    /**
+     * @return configured max idle, but never less than min idle.
+     */
+    public int getPoolMaxIdle() {
+        return Math.max(poolMinIdle, poolMaxIdle);
+    }
+
+    @DataBoundSetter
+    public void setPoolMaxIdle(int poolMaxIdle) {
+        this.poolMaxIdle = poolMaxIdle;
+    }
+
     @Nonnull
     public Set<LabelAtom> getLabelSet() {
         return labelSet != null ? labelSet : Collections.<LabelAtom>emptySet();
@@ -244,6 +279,7 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
         } catch (Throwable t) {
             LOG.error("Can't parse labels: {}", t);
         }
+        AbstractCloud.templatesChanged();
 
         return this;
     }
@@ -271,6 +307,8 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
         return new EqualsBuilder()
                 .append(maxCapacity, that.maxCapacity)
                 .append(numExecutors, that.numExecutors)
+                .append(poolMinIdle, that.poolMinIdle)
+                .append(poolMaxIdle, that.poolMaxIdle)
                 .append(id, that.id)
                 .append(labelString, that.labelString)
                 .append(launcher, that.launcher)
@@ -307,6 +345,13 @@ public class DockerSlaveTemplate implements Describable<DockerSlaveTemplate> {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckPoolMaxIdle(@QueryParameter int poolMinIdle, @QueryParameter int poolMaxIdle) {
+            if (poolMaxIdle != 0 && poolMaxIdle < poolMinIdle) {
+                return FormValidation.warning("Less than min idle, min idle will be used");
+            }
+            return FormValidation.ok();
+        }
+
         public FormValidation doCheckNumExecutors(@QueryParameter int numExecutors) {
             if (numExecutors > 1) {
                 return FormValidation.warning("Experimental, see help");
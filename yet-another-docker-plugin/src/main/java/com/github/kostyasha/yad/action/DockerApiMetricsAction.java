@@ -0,0 +1,64 @@
+package com.github.kostyasha.yad.action;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad.client.DockerApiMetrics;
+import com.github.kostyasha.yad.commons.DockerPullImage;
+import com.github.kostyasha.yad.commons.PullMetrics;
+import com.github.kostyasha.yad.provisioning.ProvisioningPipeline;
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+
+/**
+ * Docker API latency, errors and in-flight commands per docker host, provisioning stages per cloud and image pulls.
+ * Page for administrators, machine readable form is available with remote API,
+ * i.e. {@code /yad-docker-api/api/json?depth=2}.
+ */
+@Extension
+@ExportedBean
+public class DockerApiMetricsAction implements RootAction {
+    @Override
+    public String getIconFileName() {
+        return Jenkins.getActiveInstance().hasPermission(Jenkins.ADMINISTER) ? "graph.png" : null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Docker API Metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "yad-docker-api";
+    }
+
+    @Exported
+    public List<DockerApiMetrics> getHosts() {
+        return DockerApiMetrics.getAll();
+    }
+
+    @Exported
+    public List<ProvisioningPipeline> getPipelines() {
+        return getDockerClouds().stream()
+                .map(DockerCloud::getPipeline)
+                .collect(Collectors.toList());
+    }
+
+    @Exported(inline = true)
+    public PullMetrics getPulls() {
+        return DockerPullImage.getMetrics();
+    }
+
+    public Api getApi() {
+        Jenkins.getActiveInstance().checkPermission(Jenkins.ADMINISTER);
+        return new Api(this);
+    }
+}
@@ -3,24 +3,19 @@ package com.github.kostyasha.yad.client;
 import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.common.CertificateCredentials;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.credentials.DockerCredentialsCache;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.DockerCmdExecFactory;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.DefaultDockerClientConfig.Builder;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.DockerClientConfig;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.DockerClientImpl;
-import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.KeystoreSSLConfig;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.SSLConfig;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.netty.NettyDockerCmdExecFactory;
 import com.github.kostyasha.yad.other.ConnectorType;
-import com.github.kostyasha.yad.other.VariableSSLConfig;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import hudson.security.ACL;
-import jenkins.model.Jenkins;
 import org.apache.commons.lang.Validate;
-import org.jenkinsci.plugins.docker.commons.credentials.DockerServerCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +25,10 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
-import java.util.Collections;
 
-import static com.cloudbees.plugins.credentials.CredentialsMatchers.firstOrNull;
-import static com.cloudbees.plugins.credentials.CredentialsMatchers.withId;
-import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 
 /**
@@ -53,6 +46,19 @@ public class ClientBuilderForConnector {
 
     private ConnectorType connectorType = null;
 
+    /**
+     * Seconds, 0 keeps docker-java default.
+     */
+    private int connectTimeout = 0;
+
+    private int readTimeout = 0;
+
+    private int maxTotalConnections = 0;
+
+    private int maxPerRouteConnections = 0;
+
+    private DockerRetryPolicy retryPolicy = DockerRetryPolicy.NONE;
+
     private ClientBuilderForConnector() {
     }
 
@@ -84,6 +90,10 @@ public class ClientBuilderForConnector {
         LOG.debug("Building connection to docker host '{}'", connector.getServerUrl());
         withCredentials(connector.getCredentialsId());
         withConnectorType(connector.getConnectorType());
+        withTimeouts(connector.getConnectTimeout(), connector.getReadTimeout());
+        withConnectionPool(connector.getMaxTotalConnections(), connector.getMaxPerRouteConnections());
+        withRetryPolicy(new DockerRetryPolicy(connector.getMaxRetries(),
+                SECONDS.toMillis(connector.getRetryDeadlineSeconds())));
 
         return forServer(connector.getServerUrl(), connector.getApiVersion());
     }
@@ -93,6 +103,33 @@ public class ClientBuilderForConnector {
         return this;
     }
 
+    /**
+     * @param connectTimeout seconds, 0 keeps default
+     * @param readTimeout    seconds, 0 keeps default
+     */
+    public ClientBuilderForConnector withTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * Pool sizes for connector that pools connections, 0 keeps default.
+     */
+    public ClientBuilderForConnector withConnectionPool(int maxTotalConnections, int maxPerRouteConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+        this.maxPerRouteConnections = maxPerRouteConnections;
+        return this;
+    }
+
+    /**
+     * Retries of idempotent commands, none by default.
+     */
+    public ClientBuilderForConnector withRetryPolicy(DockerRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
     /**
      * Method to setup url and docker-api version. Convenient for test-connection purposes and quick requests
      *
@@ -115,29 +152,9 @@ public class ClientBuilderForConnector {
     public ClientBuilderForConnector withCredentials(String credentialsId)
             throws UnrecoverableKeyException, NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
         if (isNotBlank(credentialsId)) {
-            Credentials credentials = lookupSystemCredentials(credentialsId);
-
-            if (credentials instanceof CertificateCredentials) {
-                CertificateCredentials certificateCredentials = (CertificateCredentials) credentials;
-                withSslConfig(new KeystoreSSLConfig(
-                        certificateCredentials.getKeyStore(),
-                        certificateCredentials.getPassword().getPlainText()
-                ));
-//            } else if (credentials instanceof StandardUsernamePasswordCredentials) {
-//                StandardUsernamePasswordCredentials usernamePasswordCredentials =
-//                        ((StandardUsernamePasswordCredentials) credentials);
-//
-//                dockerClientConfigBuilder.withRegistryUsername(usernamePasswordCredentials.getUsername());
-//                dockerClientConfigBuilder.withRegistryPassword(usernamePasswordCredentials.getPassword().getPlainText());
-//
-            } else if (credentials instanceof DockerServerCredentials) {
-                final DockerServerCredentials dockerCreds = (DockerServerCredentials) credentials;
-
-                withSslConfig(new VariableSSLConfig(
-                        dockerCreds.getClientKey(),
-                        dockerCreds.getClientCertificate(),
-                        dockerCreds.getServerCaCertificate()
-                ));
+            final SSLConfig sslConfig = DockerCredentialsCache.getSSLConfig(credentialsId);
+            if (nonNull(sslConfig)) {
+                withSslConfig(sslConfig);
             }
         } else {
             withSslConfig(null);
@@ -168,9 +185,9 @@ public class ClientBuilderForConnector {
 
         if (isNull(dockerCmdExecFactory)) {
             if (connectorType == ConnectorType.JERSEY) {
-                dockerCmdExecFactory = new JerseyDockerCmdExecFactory();
+                dockerCmdExecFactory = jerseyFactory();
             } else {
-                dockerCmdExecFactory = new NettyDockerCmdExecFactory();
+                dockerCmdExecFactory = nettyFactory();
             }
         }
 
@@ -181,27 +198,49 @@ public class ClientBuilderForConnector {
             Validate.notNull(clientConfig, "clientConfig must be defined");
         }
 
+        // every attempt of retried command is measured
+        final DockerApiMetrics metrics = DockerApiMetrics.forHost(clientConfig.getDockerHost().toString());
+        final DockerCmdExecFactory instrumented = InstrumentedDockerCmdExecFactory.wrap(dockerCmdExecFactory, metrics);
         return DockerClientImpl.getInstance(clientConfig)
-                .withDockerCmdExecFactory(dockerCmdExecFactory);
+                .withDockerCmdExecFactory(RetryingDockerCmdExecFactory.wrap(instrumented, retryPolicy));
+    }
+
+    private JerseyDockerCmdExecFactory jerseyFactory() {
+        final JerseyDockerCmdExecFactory factory = new JerseyDockerCmdExecFactory();
+        if (connectTimeout > 0) {
+            factory.withConnectTimeout((int) SECONDS.toMillis(connectTimeout));
+        }
+        if (readTimeout > 0) {
+            factory.withReadTimeout((int) SECONDS.toMillis(readTimeout));
+        }
+        if (maxTotalConnections > 0) {
+            factory.withMaxTotalConnections(maxTotalConnections);
+        }
+        if (maxPerRouteConnections > 0) {
+            factory.withMaxPerRouteConnections(maxPerRouteConnections);
+        }
+        return factory;
     }
 
+    /**
+     * Netty connector opens channel per command, so there is no pool to size.
+     */
+    private NettyDockerCmdExecFactory nettyFactory() {
+        final NettyDockerCmdExecFactory factory = new NettyDockerCmdExecFactory();
+        if (connectTimeout > 0) {
+            factory.withConnectTimeout((int) SECONDS.toMillis(connectTimeout));
+        }
+        return factory;
+    }
 
     /**
-     * Util method to find credential by id in jenkins
+     * Util method to find credential by id in jenkins, served from {@link DockerCredentialsCache}
      *
      * @param credentialsId credentials to find in jenkins
      * @return {@link CertificateCredentials} or {@link StandardUsernamePasswordCredentials} expected
      */
     public static Credentials lookupSystemCredentials(String credentialsId) {
-        return firstOrNull(
-                lookupCredentials(
-                        Credentials.class,
-                        Jenkins.getActiveInstance(),
-                        ACL.SYSTEM,
-                        Collections.<DomainRequirement>emptyList()
-                ),
-                withId(credentialsId)
-        );
+        return DockerCredentialsCache.get(credentialsId);
     }
 
     /**
@@ -0,0 +1,120 @@
+package com.github.kostyasha.yad.client;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram, error count and in-flight gauge of one docker command on one docker host.
+ * Async commands (i.e. pull) are measured until their stream completes, fails or is closed. Streaming commands
+ * (events, attach, logs, stats) are measured until response starts.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class CommandMetrics {
+    /**
+     * Upper bounds of histogram buckets in ms, the last bucket counts everything slower.
+     */
+    private static final long[] BOUNDS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final String command;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+    public CommandMetrics(@Nonnull String command) {
+        this.command = command;
+    }
+
+    void started() {
+        inFlight.incrementAndGet();
+    }
+
+    void finished(long millis, boolean failed) {
+        inFlight.decrementAndGet();
+        count.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        totalMillis.addAndGet(millis);
+        maxMillis.accumulateAndGet(millis, Math::max);
+        buckets.incrementAndGet(bucketOf(millis));
+    }
+
+    static int bucketOf(long millis) {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (millis <= BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS.length;
+    }
+
+    @Exported
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return commands that were started and didn't finish yet.
+     */
+    @Exported
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return finished commands including failed ones.
+     */
+    @Exported
+    public long getCount() {
+        return count.get();
+    }
+
+    @Exported
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Exported
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    @Exported
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    @Exported
+    public long getAverageMillis() {
+        final long finished = count.get();
+        return finished == 0 ? 0 : totalMillis.get() / finished;
+    }
+
+    /**
+     * @return upper bounds in ms of all buckets except the last one.
+     */
+    @Exported
+    public long[] getBucketBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * @return commands per bucket, one more than {@link #getBucketBounds()}.
+     */
+    @Exported
+    public long[] getBucketCounts() {
+        final long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.kostyasha.yad.client;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Docker API command metrics of one docker host, filled by {@link InstrumentedDockerCmdExecFactory}.
+ * Shared by all clients of the same host.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class DockerApiMetrics {
+    /**
+     * docker host -> metrics
+     */
+    private static final ConcurrentHashMap<String, DockerApiMetrics> HOSTS = new ConcurrentHashMap<>();
+
+    private final String host;
+
+    /**
+     * command -> metrics
+     */
+    private final ConcurrentHashMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+
+    public DockerApiMetrics(@Nonnull String host) {
+        this.host = host;
+    }
+
+    @Nonnull
+    public static DockerApiMetrics forHost(@Nonnull String host) {
+        return HOSTS.computeIfAbsent(host, DockerApiMetrics::new);
+    }
+
+    /**
+     * @return metrics of every docker host that was called, sorted by host.
+     */
+    @Nonnull
+    public static List<DockerApiMetrics> getAll() {
+        final List<DockerApiMetrics> all = new ArrayList<>(HOSTS.values());
+        all.sort(Comparator.comparing(DockerApiMetrics::getHost));
+        return all;
+    }
+
+    @Nonnull
+    CommandMetrics forCommand(@Nonnull String command) {
+        return commands.computeIfAbsent(command, CommandMetrics::new);
+    }
+
+    @Exported
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return metrics of every command that was called, sorted by command.
+     */
+    @Exported(inline = true)
+    public List<CommandMetrics> getCommands() {
+        final List<CommandMetrics> all = new ArrayList<>(commands.values());
+        all.sort(Comparator.comparing(CommandMetrics::getCommand));
+        return all;
+    }
+}
@@ -0,0 +1,226 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.credentials.DockerCredentialsCache;
+import com.github.kostyasha.yad.other.ConnectorType;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static com.github.kostyasha.yad.client.ClientBuilderForConnector.newClientBuilderForConnector;
+import static java.util.Objects.isNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+
+/**
+ * Docker clients shared by connectors with the same effective settings, so configuration save that produces
+ * new {@link DockerConnector} instances keeps live clients with their SSL context and warm connections.
+ * <p>
+ * Client whose settings no live connector has and that wasn't acquired during {@link #GRACE} is closed by
+ * {@link #evictAllExcept(Collection)}. Grace lets in-flight operations of replaced connectors finish,
+ * their {@link ClientHandle}s become invalid after close.
+ */
+public final class DockerClientRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerClientRegistry.class);
+
+    public static final long GRACE = MINUTES.toMillis(5);
+
+    private static final ConcurrentHashMap<ClientKey, Entry> CLIENTS = new ConcurrentHashMap<>();
+
+    private static volatile LongSupplier clock = System::currentTimeMillis;
+
+    private DockerClientRegistry() {
+    }
+
+    /**
+     * Resolves live client for connector settings, so caller may keep it until handle becomes invalid.
+     */
+    @Nonnull
+    public static ClientHandle acquire(@Nonnull DockerConnector connector) throws GeneralSecurityException {
+        final long generation = DockerCredentialsCache.getGeneration();
+        final ClientKey key = ClientKey.of(connector);
+        Entry entry = CLIENTS.get(key);
+        if (isNull(entry)) {
+            synchronized (CLIENTS) {
+                entry = CLIENTS.get(key);
+                if (isNull(entry)) {
+                    LOG.debug("Building docker client for '{}'", connector.getServerUrl());
+                    entry = new Entry(newClientBuilderForConnector()
+                            .withDockerConnector(connector)
+                            .build(), clock.getAsLong());
+                    CLIENTS.put(key, entry);
+                }
+            }
+        }
+        entry.lastUsed = clock.getAsLong();
+        return new ClientHandle(entry, generation);
+    }
+
+    /**
+     * Closes clients that no live connector needs and that weren't acquired during {@link #GRACE}.
+     *
+     * @return number of closed clients
+     */
+    public static int evictAllExcept(@Nonnull Collection<DockerConnector> live) {
+        final Set<ClientKey> liveKeys = new HashSet<>();
+        for (DockerConnector connector : live) {
+            liveKeys.add(ClientKey.of(connector));
+        }
+
+        final long now = clock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<ClientKey, Entry> mapEntry : CLIENTS.entrySet()) {
+            final ClientKey key = mapEntry.getKey();
+            final Entry entry = mapEntry.getValue();
+            if (liveKeys.contains(key) || now - entry.lastUsed < GRACE) {
+                continue;
+            }
+            if (CLIENTS.remove(key, entry)) {
+                LOG.debug("Closing unused docker client for '{}'", key.serverUrl);
+                entry.closed = true;
+                close(entry.client);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Replaces time source of {@link #GRACE}, for tests.
+     */
+    static void setClock(@Nonnull LongSupplier clock) {
+        DockerClientRegistry.clock = clock;
+    }
+
+    private static void close(DockerClient client) {
+        try {
+            client.close();
+        } catch (IOException ex) {
+            LOG.warn("Can't close docker client", ex);
+        }
+    }
+
+    private static final class Entry {
+        private final DockerClient client;
+        private volatile long lastUsed;
+        private volatile boolean closed = false;
+
+        private Entry(DockerClient client, long lastUsed) {
+            this.client = client;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    /**
+     * Immutable reference to registry client. Becomes invalid when client is closed or credentials change.
+     */
+    public static final class ClientHandle {
+        private final Entry entry;
+        private final long generation;
+
+        private ClientHandle(Entry entry, long generation) {
+            this.entry = entry;
+            this.generation = generation;
+        }
+
+        @Nonnull
+        public DockerClient getClient() {
+            return entry.client;
+        }
+
+        public boolean isValid() {
+            return !entry.closed && generation == DockerCredentialsCache.getGeneration();
+        }
+    }
+
+    /**
+     * Connector settings that make client. Credentials are identified by id and fingerprint,
+     * so client is rebuilt when certificates change under the same id.
+     */
+    static final class ClientKey {
+        private final String serverUrl;
+        private final String apiVersion;
+        private final String credentialsId;
+        private final String credentialsFingerprint;
+        private final ConnectorType connectorType;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final int maxTotalConnections;
+        private final int maxPerRouteConnections;
+        private final int maxRetries;
+        private final int retryDeadlineSeconds;
+
+        private ClientKey(DockerConnector connector, @CheckForNull String credentialsFingerprint) {
+            this.serverUrl = connector.getServerUrl();
+            this.apiVersion = connector.getApiVersion();
+            this.credentialsId = connector.getCredentialsId();
+            this.credentialsFingerprint = credentialsFingerprint;
+            this.connectorType = connector.getConnectorType();
+            this.connectTimeout = connector.getConnectTimeout();
+            this.readTimeout = connector.getReadTimeout();
+            this.maxTotalConnections = connector.getMaxTotalConnections();
+            this.maxPerRouteConnections = connector.getMaxPerRouteConnections();
+            this.maxRetries = connector.getMaxRetries();
+            this.retryDeadlineSeconds = connector.getRetryDeadlineSeconds();
+        }
+
+        static ClientKey of(DockerConnector connector) {
+            final String credentialsId = connector.getCredentialsId();
+            return new ClientKey(connector,
+                    isNotBlank(credentialsId) ? DockerCredentialsCache.getFingerprint(credentialsId) : null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ClientKey that = (ClientKey) o;
+
+            return new EqualsBuilder()
+                    .append(serverUrl, that.serverUrl)
+                    .append(apiVersion, that.apiVersion)
+                    .append(credentialsId, that.credentialsId)
+                    .append(credentialsFingerprint, that.credentialsFingerprint)
+                    .append(connectorType, that.connectorType)
+                    .append(connectTimeout, that.connectTimeout)
+                    .append(readTimeout, that.readTimeout)
+                    .append(maxTotalConnections, that.maxTotalConnections)
+                    .append(maxPerRouteConnections, that.maxPerRouteConnections)
+                    .append(maxRetries, that.maxRetries)
+                    .append(retryDeadlineSeconds, that.retryDeadlineSeconds)
+                    .isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(17, 37)
+                    .append(serverUrl)
+                    .append(apiVersion)
+                    .append(credentialsId)
+                    .append(credentialsFingerprint)
+                    .append(connectorType)
+                    .append(connectTimeout)
+                    .append(readTimeout)
+                    .append(maxTotalConnections)
+                    .append(maxPerRouteConnections)
+                    .append(maxRetries)
+                    .append(retryDeadlineSeconds)
+                    .toHashCode();
+        }
+    }
+}
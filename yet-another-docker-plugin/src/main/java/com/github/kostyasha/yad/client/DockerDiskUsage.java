@@ -0,0 +1,135 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.credentials.DockerCredentialsCache;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.SSLConfig;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Disk taken by images of docker host from {@code GET /system/df} (docker 1.13+) that shaded docker-java
+ * has no command for. Unlike sum of image sizes, layers shared by several images are counted once.
+ */
+public final class DockerDiskUsage {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerDiskUsage.class);
+
+    private static final String API_VERSION = "v1.25";
+
+    private static final int CONNECT_TIMEOUT = (int) SECONDS.toMillis(10);
+
+    /**
+     * Daemon walks all layers to compute sizes.
+     */
+    private static final int READ_TIMEOUT = (int) MINUTES.toMillis(2);
+
+    private final long layersSize;
+    private final Map<String, Long> uniqueSizes;
+
+    DockerDiskUsage(long layersSize, @Nonnull Map<String, Long> uniqueSizes) {
+        this.layersSize = layersSize;
+        this.uniqueSizes = uniqueSizes;
+    }
+
+    /**
+     * @return disk usage or null when daemon is older than 1.13 or is reachable only with unix socket.
+     */
+    @CheckForNull
+    public static DockerDiskUsage fetch(@Nonnull DockerConnector connector) throws IOException {
+        final URI uri = URI.create(connector.getServerUrl());
+        if (!"tcp".equals(uri.getScheme())) {
+            LOG.debug("Can't get disk usage of '{}' over {}", connector.getServerUrl(), uri.getScheme());
+            return null;
+        }
+
+        final String credentialsId = connector.getCredentialsId();
+        final SSLConfig sslConfig = isNull(credentialsId) ? null : DockerCredentialsCache.getSSLConfig(credentialsId);
+        final URL url = new URL((nonNull(sslConfig) ? "https" : "http"), uri.getHost(), uri.getPort(),
+                "/" + API_VERSION + "/system/df");
+
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (nonNull(sslConfig)) {
+            try {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(sslConfig.getSSLContext().getSocketFactory());
+            } catch (GeneralSecurityException ex) {
+                throw new IOException("Can't init TLS for " + url, ex);
+            }
+        }
+
+        try {
+            final int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_BAD_REQUEST) {
+                LOG.debug("Docker on '{}' doesn't support {}: {}", connector.getServerUrl(), url, code);
+                return null;
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Docker returned " + code + " for " + url);
+            }
+            try (InputStream is = connection.getInputStream()) {
+                return parse(IOUtils.toString(is, StandardCharsets.UTF_8));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Nonnull
+    static DockerDiskUsage parse(@Nonnull String json) {
+        final JSONObject df = JSONObject.fromObject(json);
+        final Map<String, Long> uniqueSizes = new HashMap<>();
+        final JSONArray images = df.optJSONArray("Images");
+        if (nonNull(images)) {
+            for (int i = 0; i < images.size(); i++) {
+                final JSONObject image = images.getJSONObject(i);
+                // -1 when daemon didn't compute shared size, then nothing is known to be unique
+                final long sharedSize = image.optLong("SharedSize", -1);
+                final long size = image.optLong("Size", 0);
+                uniqueSizes.put(image.getString("Id"), sharedSize < 0 ? 0 : Math.max(size - sharedSize, 0));
+            }
+        }
+        return new DockerDiskUsage(df.optLong("LayersSize", 0), Collections.unmodifiableMap(uniqueSizes));
+    }
+
+    /**
+     * @return disk taken by layers of all images, shared layers counted once.
+     */
+    public long getLayersSize() {
+        return layersSize;
+    }
+
+    /**
+     * @return disk freed when image is removed, 0 for unknown image.
+     */
+    public long getUniqueSize(@Nonnull String imageId) {
+        final Long size = uniqueSizes.get(imageId);
+        return isNull(size) ? 0 : size;
+    }
+
+    @Override
+    public String toString() {
+        return "DockerDiskUsage{layersSize=" + layersSize + ", images=" + uniqueSizes.size() + "}";
+    }
+}
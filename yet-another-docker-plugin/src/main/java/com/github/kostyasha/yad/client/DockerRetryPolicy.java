@@ -0,0 +1,143 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.DockerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Retries docker command that failed with transient error (connection reset, timeout, daemon 5xx) with capped
+ * exponential backoff and full jitter, as long as attempts and command deadline allow.
+ * Client errors (4xx like not found, conflict, not modified) are never retried.
+ */
+public class DockerRetryPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerRetryPolicy.class);
+
+    public static final DockerRetryPolicy NONE = new DockerRetryPolicy(0, 0);
+
+    public static final long BASE_BACKOFF = MILLISECONDS.toMillis(200);
+
+    public static final long MAX_BACKOFF = SECONDS.toMillis(10);
+
+    private final int maxRetries;
+
+    private final long deadlineMillis;
+
+    private final Sleeper sleeper;
+
+    /**
+     * @param maxRetries     retries after first attempt, 0 disables retries
+     * @param deadlineMillis time for all attempts of one command, retry that can't start before it isn't done
+     */
+    public DockerRetryPolicy(int maxRetries, long deadlineMillis) {
+        this(maxRetries, deadlineMillis, Thread::sleep);
+    }
+
+    DockerRetryPolicy(int maxRetries, long deadlineMillis, @Nonnull Sleeper sleeper) {
+        this.maxRetries = maxRetries;
+        this.deadlineMillis = deadlineMillis;
+        this.sleeper = sleeper;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Runs command, retrying transient failures. The last failure is rethrown when retries are exhausted.
+     *
+     * @param description command for logging
+     */
+    public <T> T call(@Nonnull String description, @Nonnull Supplier<T> command) {
+        return call(description, command, ex -> false);
+    }
+
+    /**
+     * Runs command, retrying transient failures. Failed attempt could be done by daemon before connection broke,
+     * so failure of repeated attempt that means command is already done (i.e. not modified for repeated stop)
+     * is success and null is returned.
+     *
+     * @param description command for logging
+     * @param alreadyDone failures that mean command is already done when they come from repeated attempt
+     */
+    public <T> T call(@Nonnull String description, @Nonnull Supplier<T> command,
+                      @Nonnull Predicate<RuntimeException> alreadyDone) {
+        final long startedAt = System.currentTimeMillis();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return command.get();
+            } catch (RuntimeException ex) {
+                if (attempt > 0 && alreadyDone.test(ex)) {
+                    LOG.debug("Retried {} was already done by previous attempt: {}", description, ex.toString());
+                    return null;
+                }
+                if (attempt >= maxRetries || !isTransient(ex)) {
+                    throw ex;
+                }
+
+                final long backoff = backoffMillis(attempt, ThreadLocalRandom.current().nextDouble());
+                if (System.currentTimeMillis() - startedAt + backoff > deadlineMillis) {
+                    throw ex;
+                }
+
+                LOG.debug("Retrying {} in {} ms after transient failure: {}", description, backoff, ex.toString());
+                try {
+                    sleeper.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Full jitter: random delay up to exponentially growing cap.
+     *
+     * @param attempt failed attempt, starting from 0
+     * @param random  value in [0, 1)
+     */
+    static long backoffMillis(int attempt, double random) {
+        final long cap = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+        return (long) (cap * random);
+    }
+
+    /**
+     * @return true for daemon 5xx and for errors caused by connection failures.
+     */
+    public static boolean isTransient(@Nonnull Throwable ex) {
+        if (ex instanceof DockerException) {
+            return ((DockerException) ex).getHttpStatus() >= 500;
+        }
+
+        for (Throwable t = ex; t != null; t = t.getCause()) {
+            if (t instanceof IOException) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sleep that tests may replace.
+     */
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.async.ResultCallback;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.DockerCmdExecFactory;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Decorates every {@code create*CmdExec()} of {@link DockerCmdExecFactory}, so each command execution is
+ * recorded in {@link DockerApiMetrics}. Decoration uses dynamic proxies, so it covers every command
+ * docker-java has without listing them. Long-lived streams are measured until response starts, their lifetime
+ * is not latency.
+ */
+public final class InstrumentedDockerCmdExecFactory {
+    private static final String PREFIX = "create";
+    private static final String SUFFIX = "CmdExec";
+
+    /**
+     * Commands whose stream stays open until caller closes it (or container exits).
+     */
+    private static final Set<String> STREAMING = new HashSet<>(Arrays.asList(
+            "events", "attachContainer", "logContainer", "stats"));
+
+    private InstrumentedDockerCmdExecFactory() {
+    }
+
+    @Nonnull
+    public static DockerCmdExecFactory wrap(@Nonnull DockerCmdExecFactory factory, @Nonnull DockerApiMetrics metrics) {
+        return proxy(DockerCmdExecFactory.class, (proxy, method, args) -> {
+            final Object result = invoke(factory, method, args);
+            final String name = method.getName();
+            if (nonNull(result) && method.getReturnType().isInterface()
+                    && name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                return wrapExec(method.getReturnType(), result, metrics.forCommand(commandName(name)));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @return {@code startContainer} for {@code createStartContainerCmdExec}.
+     */
+    static String commandName(String factoryMethod) {
+        final String name = factoryMethod.substring(PREFIX.length(), factoryMethod.length() - SUFFIX.length());
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Object wrapExec(Class<?> type, Object exec, CommandMetrics metrics) {
+        return proxy(type, (proxy, method, args) -> {
+            if (!"exec".equals(method.getName()) || isNullOrEmpty(args)) {
+                return invoke(exec, method, args);
+            }
+
+            final Tracker tracker = new Tracker(metrics);
+            if (args.length > 1 && args[1] instanceof ResultCallback) {
+                // async command, finishes with its stream or when streaming response starts
+                final Object[] tracked = args.clone();
+                tracked[1] = trackCallback((ResultCallback<?>) args[1], tracker,
+                        STREAMING.contains(metrics.getCommand()));
+                try {
+                    return invoke(exec, method, tracked);
+                } catch (Throwable t) {
+                    tracker.finish(true);
+                    throw t;
+                }
+            }
+
+            boolean failed = true;
+            try {
+                final Object result = invoke(exec, method, args);
+                failed = false;
+                return result;
+            } finally {
+                tracker.finish(failed);
+            }
+        });
+    }
+
+    private static ResultCallback<?> trackCallback(ResultCallback<?> callback, Tracker tracker, boolean streaming) {
+        return proxy(ResultCallback.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "onStart":
+                    if (streaming) {
+                        tracker.finish(false);
+                        break;
+                    }
+                    final Closeable stream = (Closeable) args[0];
+                    return invoke(callback, method, new Object[]{(Closeable) () -> {
+                        tracker.finish(false);
+                        stream.close();
+                    }});
+                case "onError":
+                    tracker.finish(true);
+                    break;
+                case "onComplete":
+                case "close":
+                    tracker.finish(false);
+                    break;
+                default:
+                    break;
+            }
+            return invoke(callback, method, args);
+        });
+    }
+
+    private static boolean isNullOrEmpty(Object[] args) {
+        return args == null || args.length == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InstrumentedDockerCmdExecFactory.class.getClassLoader(),
+                new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Records one command execution once, whichever of stream callbacks comes first.
+     */
+    private static final class Tracker {
+        private final CommandMetrics metrics;
+        private final long startedAt = System.currentTimeMillis();
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+
+        private Tracker(CommandMetrics metrics) {
+            this.metrics = metrics;
+            metrics.started();
+        }
+
+        private void finish(boolean failed) {
+            if (finished.compareAndSet(false, true)) {
+                metrics.finished(System.currentTimeMillis() - startedAt, failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.DockerCmdExecFactory;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotModifiedException;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static java.util.Objects.nonNull;
+
+/**
+ * Applies {@link DockerRetryPolicy} to synchronous execution of idempotent docker commands.
+ * Repeating them is safe: repeated stop or start gives not modified, repeated remove gives not found,
+ * such failures of repeated attempt are success.
+ * Create and exec commands are never retried, docker may have done them before connection failed.
+ */
+public final class RetryingDockerCmdExecFactory {
+    /**
+     * {@code create<Command>CmdExec} methods of idempotent commands.
+     */
+    static final Set<String> IDEMPOTENT = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "createVersionCmdExec",
+            "createInfoCmdExec",
+            "createInspectContainerCmdExec",
+            "createInspectImageCmdExec",
+            "createListContainersCmdExec",
+            "createListImagesCmdExec",
+            "createStartContainerCmdExec",
+            "createStopContainerCmdExec",
+            "createKillContainerCmdExec",
+            "createRemoveContainerCmdExec"
+    )));
+
+    private static final Predicate<RuntimeException> NOT_MODIFIED = ex -> ex instanceof NotModifiedException;
+
+    private static final Predicate<RuntimeException> NOT_FOUND = ex -> ex instanceof NotFoundException;
+
+    private static final Predicate<RuntimeException> NEVER = ex -> false;
+
+    private RetryingDockerCmdExecFactory() {
+    }
+
+    /**
+     * @param factoryMethod {@code create<Command>CmdExec} method
+     * @return failures of repeated attempt that mean previous attempt did command.
+     */
+    @Nonnull
+    static Predicate<RuntimeException> alreadyDone(@Nonnull String factoryMethod) {
+        switch (factoryMethod) {
+            case "createStartContainerCmdExec":
+            case "createStopContainerCmdExec":
+                return NOT_MODIFIED;
+            case "createRemoveContainerCmdExec":
+                return NOT_FOUND;
+            default:
+                return NEVER;
+        }
+    }
+
+    @Nonnull
+    public static DockerCmdExecFactory wrap(@Nonnull DockerCmdExecFactory factory, @Nonnull DockerRetryPolicy policy) {
+        if (policy.getMaxRetries() <= 0) {
+            return factory;
+        }
+
+        return proxy(DockerCmdExecFactory.class, (proxy, method, args) -> {
+            final Object result = invoke(factory, method, args);
+            if (nonNull(result) && method.getReturnType().isInterface() && IDEMPOTENT.contains(method.getName())) {
+                return wrapExec(method.getReturnType(), result, policy, alreadyDone(method.getName()));
+            }
+            return result;
+        });
+    }
+
+    private static Object wrapExec(Class<?> type, Object exec, DockerRetryPolicy policy,
+                                   Predicate<RuntimeException> alreadyDone) {
+        return proxy(type, (proxy, method, args) -> {
+            if (!"exec".equals(method.getName()) || args == null || args.length != 1) {
+                return invoke(exec, method, args);
+            }
+
+            return policy.call(String.valueOf(args[0]), () -> {
+                try {
+                    return invoke(exec, method, args);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            }, alreadyDone);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(RetryingDockerCmdExecFactory.class.getClassLoader(),
+                new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
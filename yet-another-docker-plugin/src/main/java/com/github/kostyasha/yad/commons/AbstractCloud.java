@@ -1,6 +1,7 @@
 package com.github.kostyasha.yad.commons;
 
 import com.github.kostyasha.yad.DockerSlaveTemplate;
+import com.github.kostyasha.yad.provisioning.ProvisioningReservations;
 import hudson.model.Label;
 import hudson.model.Node;
 import hudson.slaves.Cloud;
@@ -11,6 +12,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * (Very) Pure abstraction to clean up docker specific implementation.
@@ -21,14 +25,29 @@ import java.util.List;
  */
 public abstract class AbstractCloud extends Cloud {
     /**
-     * Track the count per image name for images currently being
+     * Track the count per template for containers currently being
      * provisioned, but not necessarily reported yet by docker.
      */
-    protected final HashMap<DockerSlaveTemplate, Integer> provisionedImages = new HashMap<>();
+    @CheckForNull
+    private transient volatile ProvisioningReservations reservations;
 
+    /**
+     * Copy-on-write, never modified in place. Mutators replace it with new list.
+     */
     @Nonnull
     protected List<DockerSlaveTemplate> templates = Collections.emptyList();
 
+    /**
+     * Lookup index over {@link #templates}, rebuilt when list is replaced or any template changed in place.
+     */
+    @CheckForNull
+    private transient volatile TemplatesIndex templatesIndex;
+
+    /**
+     * Bumped when label, mode or image of any template is changed in place, see {@link #templatesChanged()}.
+     */
+    private static final AtomicLong TEMPLATES_VERSION = new AtomicLong();
+
     /**
      * Total max allowed number of containers
      */
@@ -38,6 +57,21 @@ public abstract class AbstractCloud extends Cloud {
         super(name);
     }
 
+    @Nonnull
+    public ProvisioningReservations getReservations() {
+        ProvisioningReservations result = reservations;
+        if (result == null) {
+            synchronized (this) {
+                result = reservations;
+                if (result == null) {
+                    result = new ProvisioningReservations();
+                    reservations = result;
+                }
+            }
+        }
+        return result;
+    }
+
     public int getContainerCap() {
         return containerCap;
     }
@@ -53,12 +87,12 @@ public abstract class AbstractCloud extends Cloud {
 
     @CheckForNull
     public DockerSlaveTemplate getTemplate(String template) {
-        for (DockerSlaveTemplate t : templates) {
-            if (t.getDockerContainerLifecycle().getImage().equals(template)) {
-                return t;
-            }
-        }
-        return null;
+        return getTemplatesIndex().byImage.get(template);
+    }
+
+    @CheckForNull
+    public DockerSlaveTemplate getTemplateById(@CheckForNull String id) {
+        return getTemplatesIndex().byId.get(id);
     }
 
     /**
@@ -78,7 +112,9 @@ public abstract class AbstractCloud extends Cloud {
      * Add a new template to the cloud
      */
     public synchronized void addTemplate(DockerSlaveTemplate t) {
-        templates.add(t);
+        final List<DockerSlaveTemplate> replace = new ArrayList<>(templates);
+        replace.add(t);
+        templates = replace;
     }
 
     public List<DockerSlaveTemplate> getTemplates() {
@@ -87,24 +123,50 @@ public abstract class AbstractCloud extends Cloud {
 
     /**
      * Multiple templates may have the same label.
+     * Result is memoized per label expression until templates are changed.
      *
-     * @return Templates matched to requested label assuming slave Mode
+     * @return unmodifiable list of templates matched to requested label assuming slave Mode
      */
     @Nonnull
     public List<DockerSlaveTemplate> getTemplates(Label label) {
-        List<DockerSlaveTemplate> dockerSlaveTemplates = new ArrayList<>();
+        final TemplatesIndex index = getTemplatesIndex();
+        if (label == null) {
+            return index.unlabeled;
+        }
 
-        for (DockerSlaveTemplate t : templates) {
-            if (label == null && t.getMode() == Node.Mode.NORMAL) {
-                dockerSlaveTemplates.add(t);
+        return index.byLabel.computeIfAbsent(label.getExpression(), k -> {
+            List<DockerSlaveTemplate> dockerSlaveTemplates = new ArrayList<>();
+            for (DockerSlaveTemplate t : index.source) {
+                if (label.matches(t.getLabelSet())) {
+                    dockerSlaveTemplates.add(t);
+                }
             }
+            return Collections.unmodifiableList(dockerSlaveTemplates);
+        });
+    }
 
-            if (label != null && label.matches(t.getLabelSet())) {
-                dockerSlaveTemplates.add(t);
-            }
+    /**
+     * Index follows {@link #templates} by reference, so it also catches list assigned by XStream,
+     * and {@link #TEMPLATES_VERSION}, so it catches templates modified in place.
+     */
+    @Nonnull
+    private TemplatesIndex getTemplatesIndex() {
+        final List<DockerSlaveTemplate> current = templates;
+        // read before building, change during build makes next lookup rebuild again
+        final long version = TEMPLATES_VERSION.get();
+        TemplatesIndex index = templatesIndex;
+        if (index == null || index.source != current || index.version != version) {
+            index = new TemplatesIndex(current, version);
+            templatesIndex = index;
         }
+        return index;
+    }
 
-        return dockerSlaveTemplates;
+    /**
+     * Invalidates template indexes of all clouds. Called by template setters of indexed attributes.
+     */
+    public static void templatesChanged() {
+        TEMPLATES_VERSION.incrementAndGet();
     }
 
     /**
@@ -122,20 +184,44 @@ public abstract class AbstractCloud extends Cloud {
      * Remove slave template
      */
     public synchronized void removeTemplate(DockerSlaveTemplate t) {
-        templates.remove(t);
+        final List<DockerSlaveTemplate> replace = new ArrayList<>(templates);
+        replace.remove(t);
+        templates = replace;
     }
 
     /**
-     * Decrease the count of slaves being "provisioned".
+     * Immutable snapshot of lookups for one templates list. Label matches are computed on first request.
      */
-    protected void decrementAmiSlaveProvision(DockerSlaveTemplate container) {
-        synchronized (provisionedImages) {
-            int currentProvisioning = 0;
-            if (provisionedImages.containsKey(container)) {
-                currentProvisioning = provisionedImages.get(container);
+    private static final class TemplatesIndex {
+        private final List<DockerSlaveTemplate> source;
+
+        private final long version;
+
+        private final Map<String, DockerSlaveTemplate> byImage = new HashMap<>();
+
+        private final Map<String, DockerSlaveTemplate> byId = new HashMap<>();
+
+        private final List<DockerSlaveTemplate> unlabeled;
+
+        /**
+         * label expression -> matched templates
+         */
+        private final ConcurrentHashMap<String, List<DockerSlaveTemplate>> byLabel = new ConcurrentHashMap<>();
+
+        private TemplatesIndex(List<DockerSlaveTemplate> source, long version) {
+            this.source = source;
+            this.version = version;
+
+            final List<DockerSlaveTemplate> normal = new ArrayList<>();
+            for (DockerSlaveTemplate t : source) {
+                // first template wins, like linear search did
+                byImage.putIfAbsent(t.getDockerContainerLifecycle().getImage(), t);
+                byId.putIfAbsent(t.getId(), t);
+                if (t.getMode() == Node.Mode.NORMAL) {
+                    normal.add(t);
+                }
             }
-            provisionedImages.put(container, Math.max(currentProvisioning - 1, 0));
+            unlabeled = Collections.unmodifiableList(normal);
         }
     }
-
 }
@@ -0,0 +1,74 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Remembers registry digests for TTL, so provisioning of many containers asks registry once.
+ * Failures are not cached.
+ */
+public class CachingDockerRegistryClient implements DockerRegistryClient {
+    private final DockerRegistryClient delegate;
+
+    private final long ttlMillis;
+
+    private final LongSupplier clock;
+
+    /**
+     * image name and user -> digest
+     */
+    private final ConcurrentHashMap<String, CachedDigest> digests = new ConcurrentHashMap<>();
+
+    public CachingDockerRegistryClient(@Nonnull DockerRegistryClient delegate, long ttlMillis) {
+        this(delegate, ttlMillis, System::currentTimeMillis);
+    }
+
+    public CachingDockerRegistryClient(@Nonnull DockerRegistryClient delegate, long ttlMillis,
+                                       @Nonnull LongSupplier clock) {
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    @CheckForNull
+    @Override
+    public String getDigest(@Nonnull String imageName, @CheckForNull AuthConfig authConfig) throws IOException {
+        final String key = imageName + "|" + (isNull(authConfig) ? "" : authConfig.getUsername());
+        final long now = clock.getAsLong();
+
+        final CachedDigest cached = digests.get(key);
+        if (nonNull(cached) && now - cached.at < ttlMillis) {
+            return cached.digest;
+        }
+
+        final String digest = delegate.getDigest(imageName, authConfig);
+        digests.put(key, new CachedDigest(digest, now));
+        return digest;
+    }
+
+    /**
+     * Forgets all digests, i.e. when image was pushed.
+     */
+    public void invalidateAll() {
+        digests.clear();
+    }
+
+    private static final class CachedDigest {
+        @CheckForNull
+        private final String digest;
+        private final long at;
+
+        private CachedDigest(@CheckForNull String digest, long at) {
+            this.digest = digest;
+            this.at = at;
+        }
+    }
+}
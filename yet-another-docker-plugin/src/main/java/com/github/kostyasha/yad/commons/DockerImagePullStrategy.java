@@ -40,6 +40,26 @@ public enum DockerImagePullStrategy {
             return imageName.endsWith(":latest");
         }
     },
+    /**
+     * Present image is pulled only when its registry manifest digest differs from local repo digests,
+     * see {@link DockerPullImage}.
+     */
+    PULL_DIGEST("Pull once and update when registry digest changes") {
+        @Override
+        public boolean pullIfNotExists(String imageName) {
+            return true;
+        }
+
+        @Override
+        public boolean pullIfExists(String imageName) {
+            return true;
+        }
+
+        @Override
+        public boolean isDigestAware() {
+            return true;
+        }
+    },
     PULL_NEVER("Pull never") {
         @Override
         public boolean pullIfNotExists(String imageName) {
@@ -66,4 +86,11 @@ public enum DockerImagePullStrategy {
     public abstract boolean pullIfNotExists(String imageName);
 
     public abstract boolean pullIfExists(String imageName);
+
+    /**
+     * @return true when present image should be pulled only if registry has different digest.
+     */
+    public boolean isDigestAware() {
+        return false;
+    }
 }
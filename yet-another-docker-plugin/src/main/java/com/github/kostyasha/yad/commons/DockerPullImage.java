@@ -1,16 +1,20 @@
 package com.github.kostyasha.yad.commons;
 
-import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.github.kostyasha.yad.commons.HttpDockerRegistryClient.ImageReference;
+import com.github.kostyasha.yad.credentials.DockerCredentialsCache;
 import com.github.kostyasha.yad.credentials.DockerRegistryAuthCredentials;
+import com.github.kostyasha.yad.provisioning.DockerImageCache;
+import com.github.kostyasha.yad.provisioning.DockerImageCache.HostImages;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.PullImageCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Image;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.NameParser;
-import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.PullImageResultCallback;
 import com.github.kostyasha.yad_docker_java.com.google.common.collect.Iterables;
 import com.github.kostyasha.yad_docker_java.org.apache.commons.lang.StringUtils;
 import hudson.Extension;
@@ -34,7 +38,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static com.github.kostyasha.yad.client.ClientBuilderForConnector.lookupSystemCredentials;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * Contains docker pull image related settings:
@@ -44,12 +51,35 @@ import static com.github.kostyasha.yad.client.ClientBuilderForConnector.lookupSy
 public class DockerPullImage extends AbstractDescribableImpl<DockerPullImage> {
     private static final Logger LOG = LoggerFactory.getLogger(DockerPullImage.class);
 
+    /**
+     * Used by digest aware strategies.
+     */
+    private static volatile DockerRegistryClient registryClient =
+            new CachingDockerRegistryClient(new HttpDockerRegistryClient(), MINUTES.toMillis(1));
+
+    private static final PullMetrics METRICS = new PullMetrics();
+
+    public static final int DEFAULT_PULL_TIMEOUT_MINUTES = 30;
+    public static final int DEFAULT_STALL_TIMEOUT_SECONDS = 180;
+
     @CheckForNull
     private DockerImagePullStrategy pullStrategy = DockerImagePullStrategy.PULL_LATEST;
 
     @CheckForNull
     private String credentialsId;
 
+    /**
+     * Max duration of pull, 0 means unlimited. Null in configs saved before it existed.
+     */
+    @CheckForNull
+    private Integer pullTimeoutMinutes = DEFAULT_PULL_TIMEOUT_MINUTES;
+
+    /**
+     * Max time without pull progress, 0 means unlimited. Null in configs saved before it existed.
+     */
+    @CheckForNull
+    private Integer stallTimeoutSeconds = DEFAULT_STALL_TIMEOUT_SECONDS;
+
     @DataBoundConstructor
     public DockerPullImage() {
     }
@@ -72,46 +102,193 @@ public class DockerPullImage extends AbstractDescribableImpl<DockerPullImage> {
         this.credentialsId = credentialsId;
     }
 
+    public int getPullTimeoutMinutes() {
+        return isNull(pullTimeoutMinutes) ? DEFAULT_PULL_TIMEOUT_MINUTES : pullTimeoutMinutes;
+    }
+
+    @DataBoundSetter
+    public void setPullTimeoutMinutes(int pullTimeoutMinutes) {
+        this.pullTimeoutMinutes = pullTimeoutMinutes;
+    }
+
+    public int getStallTimeoutSeconds() {
+        return isNull(stallTimeoutSeconds) ? DEFAULT_STALL_TIMEOUT_SECONDS : stallTimeoutSeconds;
+    }
+
+    @DataBoundSetter
+    public void setStallTimeoutSeconds(int stallTimeoutSeconds) {
+        this.stallTimeoutSeconds = stallTimeoutSeconds;
+    }
+
+    /**
+     * @return counters of all pulls.
+     */
+    @Nonnull
+    public static PullMetrics getMetrics() {
+        return METRICS;
+    }
+
+    @Nonnull
+    public static DockerRegistryClient getRegistryClient() {
+        return registryClient;
+    }
+
+    /**
+     * Replaces client used to get registry digests, i.e. with one for local registry.
+     */
+    public static void setRegistryClient(@Nonnull DockerRegistryClient registryClient) {
+        DockerPullImage.registryClient = registryClient;
+    }
+
     /**
      * Action around image with defined configuration
      */
     public void exec(@Nonnull final DockerClient client, @Nonnull final String imageName)
             throws IOException {
-        List<Image> images = client.listImagesCmd().exec();
+        exec(client, imageName, null);
+    }
 
-        NameParser.ReposTag repostag = NameParser.parseRepositoryTag(imageName);
-        // if image was specified without tag, then treat as latest
-        final String fullImageName = repostag.repos + ":" + (repostag.tag.isEmpty() ? "latest" : repostag.tag);
+    /**
+     * Action around image with defined configuration.
+     *
+     * @param hostImages image cache of client's host, when null all host images are listed
+     */
+    public void exec(@Nonnull final DockerClient client, @Nonnull final String imageName,
+                     @CheckForNull HostImages hostImages) throws IOException {
+        exec(client, imageName, hostImages, false);
+    }
 
-        boolean hasImage = Iterables.any(images, image ->
-                image.getRepoTags() != null && Arrays.asList(image.getRepoTags()).contains(fullImageName));
+    /**
+     * Background pull with the same strategy. Present image refreshed here is not pulled again by
+     * provisioning during {@link DockerImageCache#REFRESH_WINDOW}.
+     */
+    public void refresh(@Nonnull final DockerClient client, @Nonnull final String imageName,
+                        @Nonnull HostImages hostImages) throws IOException {
+        if (hostImages.wasEvicted(imageName)) {
+            LOG.debug("Not refreshing image '{}' removed by garbage collection on '{}'", imageName, hostImages.getHost());
+            return;
+        }
+        exec(client, imageName, hostImages, true);
+        hostImages.refreshed(imageName);
+    }
+
+    private void exec(DockerClient client, String imageName, @CheckForNull HostImages hostImages, boolean background)
+            throws IOException {
+        final boolean pullIfExists = getPullStrategy().pullIfExists(imageName);
+        final boolean pullIfNotExists = getPullStrategy().pullIfNotExists(imageName);
+        if (!pullIfExists && !pullIfNotExists) {
+            // i.e. PULL_NEVER, image presence doesn't matter
+            return;
+        }
+
+        if (getPullStrategy().isDigestAware() && isUpToDate(client, imageName)) {
+            LOG.debug("Image '{}' is up to date with registry", imageName);
+            if (nonNull(hostImages)) {
+                hostImages.imagePulled(imageName);
+            }
+            return;
+        }
+
+        final boolean hasImage;
+        if (pullIfExists == pullIfNotExists) {
+            hasImage = false;
+        } else if (nonNull(hostImages)) {
+            hasImage = hostImages.isPresent(imageName);
+        } else {
+            hasImage = listHasImage(client, imageName);
+        }
+
+        if (hasImage && !background && nonNull(hostImages) && hostImages.isRefreshed(imageName)) {
+            LOG.debug("Image '{}' was refreshed in background on '{}'", imageName, hostImages.getHost());
+            return;
+        }
 
-        boolean pull = hasImage ?
-                getPullStrategy().pullIfExists(imageName) :
-                getPullStrategy().pullIfNotExists(imageName);
+        boolean pull = hasImage ? pullIfExists : pullIfNotExists;
 
         if (pull) {
             LOG.info("Pulling image '{}' {}. This may take awhile...", imageName,
-                    hasImage ? "again" : "since one wasn't pulled before.");
-
-            long startTime = System.currentTimeMillis();
-            //Identifier amiId = Identifier.fromCompoundString(ami);
-            final PullImageCmd pullImageCmd = client.pullImageCmd(imageName);
-            if (StringUtils.isNotBlank(credentialsId)) {
-                // hostname requirements?
-                Credentials credentials = lookupSystemCredentials(credentialsId);
-                if (credentials instanceof DockerRegistryAuthCredentials) {
-                    final DockerRegistryAuthCredentials authCredentials = (DockerRegistryAuthCredentials) credentials;
-//                    final DockerRegistryToken token = AuthenticationTokens.convert(DockerRegistryToken.class, authCredentials);
-                    pullImageCmd.withAuthConfig(authCredentials.getAuthConfig());
-                }
+                    hasImage ? "again" : pullIfExists ? "by pull strategy" : "since one wasn't pulled before.");
+
+            if (isNull(hostImages)) {
+                pull(client, imageName);
+            } else if (!hostImages.pull(imageName, () -> pull(client, imageName))) {
+                LOG.info("Image '{}' was pulled by concurrent or recent pull on '{}'", imageName, hostImages.getHost());
             }
+        }
+    }
+
+    /**
+     * @return true when image is present and one of its repo digests is the registry's digest.
+     */
+    private boolean isUpToDate(DockerClient client, String imageName) {
+        final List<String> localDigests;
+        try {
+            localDigests = client.inspectImageCmd(imageName).exec().getRepoDigests();
+        } catch (NotFoundException ex) {
+            return false;
+        }
+
+        if (ImageReference.parse(imageName).isDigest()) {
+            // pulled by digest, can't change
+            return true;
+        }
+        if (isNull(localDigests) || localDigests.isEmpty()) {
+            // built or loaded locally, nothing to compare
+            return false;
+        }
 
-            pullImageCmd.exec(new PullImageResultCallback())
-                    .awaitSuccess();
-            long pullTime = System.currentTimeMillis() - startTime;
-            LOG.info("Finished pulling image '{}', took {} ms", imageName, pullTime);
+        final String remoteDigest;
+        try {
+            remoteDigest = registryClient.getDigest(imageName, getAuthConfig());
+        } catch (IOException ex) {
+            LOG.warn("Can't get registry digest of '{}', pulling it", imageName, ex);
+            return false;
         }
+
+        return nonNull(remoteDigest) && localDigests.stream().anyMatch(digest -> digest.endsWith("@" + remoteDigest));
+    }
+
+    @CheckForNull
+    private AuthConfig getAuthConfig() {
+        if (StringUtils.isNotBlank(credentialsId)) {
+            // hostname requirements?
+            return DockerCredentialsCache.getAuthConfig(credentialsId);
+        }
+        return null;
+    }
+
+    private void pull(DockerClient client, String imageName) throws IOException {
+        long startTime = System.currentTimeMillis();
+        //Identifier amiId = Identifier.fromCompoundString(ami);
+        final PullImageCmd pullImageCmd = client.pullImageCmd(imageName);
+        final AuthConfig authConfig = getAuthConfig();
+        if (nonNull(authConfig)) {
+            pullImageCmd.withAuthConfig(authConfig);
+        }
+
+        final PullProgressCallback progress = pullImageCmd.exec(new PullProgressCallback(imageName, METRICS));
+        progress.awaitSuccess(MINUTES.toMillis(getPullTimeoutMinutes()), SECONDS.toMillis(getStallTimeoutSeconds()));
+        long pullTime = System.currentTimeMillis() - startTime;
+        LOG.info("Finished pulling image '{}', took {} ms: {}", imageName, pullTime, progress.getSummary());
+    }
+
+    private static boolean listHasImage(DockerClient client, String imageName) {
+        List<Image> images = client.listImagesCmd().exec();
+
+        NameParser.ReposTag repostag = NameParser.parseRepositoryTag(imageName);
+        // if image was specified without tag, then treat as latest
+        final String fullImageName = repostag.repos + ":" + (repostag.tag.isEmpty() ? "latest" : repostag.tag);
+
+        return Iterables.any(images, image ->
+                image.getRepoTags() != null && Arrays.asList(image.getRepoTags()).contains(fullImageName));
+    }
+
+    public Object readResolve() {
+        // configs saved before timeouts existed
+        if (isNull(pullTimeoutMinutes)) pullTimeoutMinutes = DEFAULT_PULL_TIMEOUT_MINUTES;
+        if (isNull(stallTimeoutSeconds)) stallTimeoutSeconds = DEFAULT_STALL_TIMEOUT_SECONDS;
+
+        return this;
     }
 
     @Override
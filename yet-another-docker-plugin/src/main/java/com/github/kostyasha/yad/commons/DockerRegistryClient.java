@@ -0,0 +1,24 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Asks docker registry about images without pulling them.
+ *
+ * @see HttpDockerRegistryClient
+ * @see CachingDockerRegistryClient
+ */
+public interface DockerRegistryClient {
+    /**
+     * @param imageName  image name as for docker pull
+     * @param authConfig registry credentials or null for anonymous access
+     * @return manifest digest ({@code sha256:...}) of image in registry or null when registry doesn't report it.
+     * @throws IOException when registry can't be reached or doesn't know image
+     */
+    @CheckForNull
+    String getDigest(@Nonnull String imageName, @CheckForNull AuthConfig authConfig) throws IOException;
+}
@@ -0,0 +1,216 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Registry API v2 client that gets manifest digest with {@code HEAD /v2/<name>/manifests/<tag>}.
+ * Supports anonymous, basic and bearer token (i.e. Docker Hub) authentication.
+ * Loopback registries are accessed with plain http, the same way docker daemon does by default.
+ */
+public class HttpDockerRegistryClient implements DockerRegistryClient {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpDockerRegistryClient.class);
+
+    public static final String DEFAULT_REGISTRY = "registry-1.docker.io";
+
+    private static final String MANIFEST_TYPES = "application/vnd.docker.distribution.manifest.v2+json, "
+            + "application/vnd.docker.distribution.manifest.list.v2+json, "
+            + "application/vnd.docker.distribution.manifest.v1+prettyjws";
+
+    private static final String DIGEST_HEADER = "Docker-Content-Digest";
+
+    private static final Pattern CHALLENGE_PARAM = Pattern.compile("(\\w+)=\"([^\"]*)\"");
+
+    private static final Pattern TOKEN = Pattern.compile("\"(?:token|access_token)\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static final int TIMEOUT = (int) SECONDS.toMillis(10);
+
+    @CheckForNull
+    @Override
+    public String getDigest(@Nonnull String imageName, @CheckForNull AuthConfig authConfig) throws IOException {
+        final ImageReference reference = ImageReference.parse(imageName);
+        final URL url = new URL(reference.getBaseUrl() + "/v2/" + reference.getRepository()
+                + "/manifests/" + reference.getReference());
+
+        HttpURLConnection connection = open(url, "HEAD", basicAuth(authConfig));
+        connection.setRequestProperty("Accept", MANIFEST_TYPES);
+        int code = connection.getResponseCode();
+
+        if (code == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            final String challenge = connection.getHeaderField("WWW-Authenticate");
+            connection.disconnect();
+            if (isNull(challenge) || !challenge.startsWith("Bearer ")) {
+                throw new IOException("Registry denied access to " + url);
+            }
+
+            connection = open(url, "HEAD", "Bearer " + fetchToken(challenge, authConfig));
+            connection.setRequestProperty("Accept", MANIFEST_TYPES);
+            code = connection.getResponseCode();
+        }
+
+        try {
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Registry returned " + code + " for " + url);
+            }
+            final String digest = connection.getHeaderField(DIGEST_HEADER);
+            LOG.debug("Registry digest of '{}' is {}", imageName, digest);
+            return digest;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String fetchToken(String challenge, @CheckForNull AuthConfig authConfig) throws IOException {
+        final Map<String, String> params = new HashMap<>();
+        final Matcher matcher = CHALLENGE_PARAM.matcher(challenge);
+        while (matcher.find()) {
+            params.put(matcher.group(1), matcher.group(2));
+        }
+
+        final String realm = params.get("realm");
+        if (isNull(realm)) {
+            throw new IOException("No realm in registry challenge: " + challenge);
+        }
+
+        final StringBuilder tokenUrl = new StringBuilder(realm);
+        String separator = realm.contains("?") ? "&" : "?";
+        for (String param : new String[]{"service", "scope"}) {
+            if (params.containsKey(param)) {
+                tokenUrl.append(separator).append(param).append('=')
+                        .append(URLEncoder.encode(params.get(param), "UTF-8"));
+                separator = "&";
+            }
+        }
+
+        final HttpURLConnection connection = open(new URL(tokenUrl.toString()), "GET", basicAuth(authConfig));
+        try (InputStream is = connection.getInputStream()) {
+            final String body = IOUtils.toString(is, StandardCharsets.UTF_8);
+            final Matcher token = TOKEN.matcher(body);
+            if (!token.find()) {
+                throw new IOException("No token in response of " + realm);
+            }
+            return token.group(1);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(URL url, String method, @CheckForNull String authorization)
+            throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT);
+        connection.setReadTimeout(TIMEOUT);
+        connection.setInstanceFollowRedirects(true);
+        if (nonNull(authorization)) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        return connection;
+    }
+
+    @CheckForNull
+    private static String basicAuth(@CheckForNull AuthConfig authConfig) {
+        if (isNull(authConfig) || isNull(authConfig.getUsername())) {
+            return null;
+        }
+        final String userPass = authConfig.getUsername() + ":" + authConfig.getPassword();
+        return "Basic " + Base64.getEncoder().encodeToString(userPass.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Registry, repository and tag (or digest) of image name as docker resolves them.
+     */
+    public static final class ImageReference {
+        private final String registry;
+        private final String repository;
+        private final String reference;
+
+        private ImageReference(String registry, String repository, String reference) {
+            this.registry = registry;
+            this.repository = repository;
+            this.reference = reference;
+        }
+
+        @Nonnull
+        public static ImageReference parse(@Nonnull String imageName) {
+            String name = imageName;
+            String reference = "latest";
+
+            final int at = name.indexOf('@');
+            if (at >= 0) {
+                reference = name.substring(at + 1);
+                name = name.substring(0, at);
+            } else {
+                final int colon = name.lastIndexOf(':');
+                if (colon > name.lastIndexOf('/')) {
+                    reference = name.substring(colon + 1);
+                    name = name.substring(0, colon);
+                }
+            }
+
+            String registry = DEFAULT_REGISTRY;
+            final int slash = name.indexOf('/');
+            if (slash > 0) {
+                final String first = name.substring(0, slash);
+                if (first.contains(".") || first.contains(":") || "localhost".equals(first)) {
+                    registry = first;
+                    name = name.substring(slash + 1);
+                }
+            }
+
+            if ("docker.io".equals(registry) || "index.docker.io".equals(registry)) {
+                registry = DEFAULT_REGISTRY;
+            }
+            if (DEFAULT_REGISTRY.equals(registry) && !name.contains("/")) {
+                name = "library/" + name;
+            }
+
+            return new ImageReference(registry, name, reference);
+        }
+
+        public String getRegistry() {
+            return registry;
+        }
+
+        public String getRepository() {
+            return repository;
+        }
+
+        /**
+         * @return tag or digest.
+         */
+        public String getReference() {
+            return reference;
+        }
+
+        public boolean isDigest() {
+            return reference.contains(":");
+        }
+
+        public String getBaseUrl() {
+            final String host = registry.contains(":") ? registry.substring(0, registry.indexOf(':')) : registry;
+            final boolean loopback = "localhost".equals(host) || host.startsWith("127.");
+            return (loopback ? "http://" : "https://") + registry;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.kostyasha.yad.commons;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of image pulls done by {@link DockerPullImage}, filled by {@link PullProgressCallback}.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class PullMetrics {
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong stalled = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong layers = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong layerMillis = new AtomicLong();
+    private final AtomicLong maxLayerMillis = new AtomicLong();
+
+    void finished(PullProgressCallback pull, Outcome outcome) {
+        bytes.addAndGet(pull.getBytes());
+        layers.addAndGet(pull.getDownloadedLayers());
+        totalMillis.addAndGet(pull.getElapsedMillis());
+        layerMillis.addAndGet(pull.getLayerMillis());
+        maxLayerMillis.accumulateAndGet(pull.getMaxLayerMillis(), Math::max);
+        switch (outcome) {
+            case SUCCEEDED:
+                succeeded.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            case STALLED:
+                stalled.incrementAndGet();
+                break;
+            default:
+                timedOut.incrementAndGet();
+                break;
+        }
+    }
+
+    @Exported
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    @Exported
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return pulls cancelled by overall deadline.
+     */
+    @Exported
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return pulls cancelled because no progress came during stall deadline.
+     */
+    @Exported
+    public long getStalled() {
+        return stalled.get();
+    }
+
+    /**
+     * @return downloaded bytes of all pulls.
+     */
+    @Exported
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return downloaded (not already existing) layers of all pulls.
+     */
+    @Exported
+    public long getLayers() {
+        return layers.get();
+    }
+
+    /**
+     * @return average download throughput in bytes per second or 0.
+     */
+    @Exported
+    public long getBytesPerSecond() {
+        final long millis = totalMillis.get();
+        return millis == 0 ? 0 : bytes.get() * 1000 / millis;
+    }
+
+    /**
+     * @return average time from first progress to completion of downloaded layer or 0.
+     */
+    @Exported
+    public long getAverageLayerMillis() {
+        final long count = layers.get();
+        return count == 0 ? 0 : layerMillis.get() / count;
+    }
+
+    @Exported
+    public long getMaxLayerMillis() {
+        return maxLayerMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "succeeded=" + getSucceeded() + ", failed=" + getFailed() + ", timedOut=" + getTimedOut() +
+                ", stalled=" + getStalled() + ", bytes=" + getBytes() + ", layers=" + getLayers() +
+                ", bytesPerSecond=" + getBytesPerSecond() + ", avgLayerMillis=" + getAverageLayerMillis() +
+                ", maxLayerMillis=" + getMaxLayerMillis();
+    }
+
+    enum Outcome {
+        SUCCEEDED, FAILED, TIMED_OUT, STALLED
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad.commons.PullMetrics.Outcome;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.DockerClientException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.PullResponseItem;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.ResponseItem.ProgressDetail;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.PullImageResultCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Pull callback that follows per-layer progress, enforces overall and stall deadlines and records
+ * {@link PullMetrics}. Pull that trips a deadline or whose waiting thread is interrupted is cancelled by
+ * closing response stream.
+ */
+public class PullProgressCallback extends PullImageResultCallback {
+    private static final Logger LOG = LoggerFactory.getLogger(PullProgressCallback.class);
+
+    private static final long CHECK_PERIOD = SECONDS.toMillis(1);
+
+    private final String imageName;
+
+    private final PullMetrics metrics;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile long lastProgressAt = startedAt;
+
+    private volatile long finishedAt = 0;
+
+    private final AtomicBoolean recorded = new AtomicBoolean(false);
+
+    /**
+     * layer id -> progress
+     */
+    private final Map<String, Layer> layers = new ConcurrentHashMap<>();
+
+    public PullProgressCallback(@Nonnull String imageName, @Nonnull PullMetrics metrics) {
+        this.imageName = imageName;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onNext(PullResponseItem item) {
+        lastProgressAt = System.currentTimeMillis();
+        try {
+            track(item);
+        } catch (Exception ex) {
+            LOG.debug("Can't track pull progress of '{}' for {}", imageName, item, ex);
+        }
+        super.onNext(item);
+    }
+
+    private void track(PullResponseItem item) {
+        final String id = item.getId();
+        final String status = item.getStatus();
+        if (isNull(id) || isNull(status)) {
+            return;
+        }
+
+        final Layer layer = layers.computeIfAbsent(id, k -> new Layer());
+        final long now = System.currentTimeMillis();
+        switch (status) {
+            case "Downloading":
+                if (layer.startedAt == 0) {
+                    layer.startedAt = now;
+                }
+                final ProgressDetail progress = item.getProgressDetail();
+                if (nonNull(progress) && nonNull(progress.getCurrent())) {
+                    layer.bytes = Math.max(layer.bytes, progress.getCurrent());
+                }
+                if (nonNull(progress) && nonNull(progress.getTotal()) && progress.getTotal() > 0) {
+                    layer.total = progress.getTotal();
+                }
+                break;
+            case "Download complete":
+                layer.bytes = Math.max(layer.bytes, layer.total);
+                break;
+            case "Pull complete":
+                layer.completedAt = now;
+                break;
+            case "Already exists":
+                layer.existed = true;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Waits for pull end and throws when pull failed.
+     *
+     * @param deadlineMillis max pull duration, 0 means unlimited
+     * @param stallMillis    max time without any progress message, 0 means unlimited
+     */
+    public void awaitSuccess(long deadlineMillis, long stallMillis) throws IOException {
+        try {
+            while (!awaitCompletion(CHECK_PERIOD, MILLISECONDS)) {
+                final long now = System.currentTimeMillis();
+                if (deadlineMillis > 0 && now - startedAt > deadlineMillis) {
+                    cancel(Outcome.TIMED_OUT);
+                    throw new DockerClientException("Pull of '" + imageName + "' didn't finish in " +
+                            deadlineMillis + " ms, " + getSummary());
+                }
+                if (stallMillis > 0 && now - lastProgressAt > stallMillis) {
+                    cancel(Outcome.STALLED);
+                    throw new DockerClientException("Pull of '" + imageName + "' stalled for " +
+                            (now - lastProgressAt) + " ms, " + getSummary());
+                }
+            }
+
+            finishedAt = System.currentTimeMillis();
+            super.awaitSuccess();
+        } catch (InterruptedException e) {
+            cancel(Outcome.TIMED_OUT);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pull of '" + imageName + "' was interrupted");
+        } catch (RuntimeException ex) {
+            record(Outcome.FAILED);
+            throw ex;
+        }
+        record(Outcome.SUCCEEDED);
+    }
+
+    /**
+     * Only first outcome counts, i.e. failure after cancel is still timeout.
+     */
+    private void record(Outcome outcome) {
+        if (recorded.compareAndSet(false, true)) {
+            if (finishedAt == 0) {
+                finishedAt = System.currentTimeMillis();
+            }
+            metrics.finished(this, outcome);
+        }
+    }
+
+    private void cancel(Outcome outcome) {
+        record(outcome);
+        try {
+            close();
+        } catch (IOException e) {
+            LOG.debug("Can't close pull stream of '{}'", imageName, e);
+        }
+    }
+
+    public long getElapsedMillis() {
+        return (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    /**
+     * @return bytes downloaded so far.
+     */
+    public long getBytes() {
+        return layers.values().stream().mapToLong(layer -> layer.bytes).sum();
+    }
+
+    /**
+     * @return layers that had to be downloaded.
+     */
+    public int getDownloadedLayers() {
+        return (int) layers.values().stream().filter(layer -> layer.startedAt != 0).count();
+    }
+
+    /**
+     * @return layers that host already had.
+     */
+    public int getExistingLayers() {
+        return (int) layers.values().stream().filter(layer -> layer.existed).count();
+    }
+
+    /**
+     * @return summary time from first progress to completion of completed layers.
+     */
+    public long getLayerMillis() {
+        return layers.values().stream().filter(Layer::isCompleted).mapToLong(Layer::getMillis).sum();
+    }
+
+    public long getMaxLayerMillis() {
+        return layers.values().stream().filter(Layer::isCompleted).mapToLong(Layer::getMillis).max().orElse(0);
+    }
+
+    public String getSummary() {
+        final long elapsed = getElapsedMillis();
+        return getBytes() + " bytes in " + getDownloadedLayers() + " layer(s) (" + getExistingLayers() +
+                " existed), " + elapsed + " ms, " + (elapsed == 0 ? 0 : getBytes() * 1000 / elapsed) + " bytes/s";
+    }
+
+    private static final class Layer {
+        private volatile long startedAt = 0;
+        private volatile long completedAt = 0;
+        private volatile long bytes = 0;
+        private volatile long total = 0;
+        private volatile boolean existed = false;
+
+        private boolean isCompleted() {
+            return startedAt != 0 && completedAt != 0;
+        }
+
+        private long getMillis() {
+            return completedAt - startedAt;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.github.kostyasha.yad.credentials;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.CertificateCredentials;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.github.kostyasha.yad.other.VariableSSLConfig;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.KeystoreSSLConfig;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.SSLConfig;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jenkinsci.plugins.docker.commons.credentials.DockerServerCredentials;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.net.ssl.SSLContext;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * System credentials indexed by id together with what plugin derives from them: registry {@link AuthConfig},
+ * docker host {@link SSLConfig} and fingerprint. Index is built with one credentials lookup and dropped when system
+ * credentials are saved. Credentials providers that don't persist through {@link Saveable} are picked up
+ * after {@link #MAX_AGE}.
+ */
+public final class DockerCredentialsCache {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerCredentialsCache.class);
+
+    public static final long MAX_AGE = MINUTES.toMillis(5);
+
+    @CheckForNull
+    private static volatile Index index;
+
+    /**
+     * Incremented when credentials change, so holders of derived objects know that they must resolve them again.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static volatile LongSupplier clock = System::currentTimeMillis;
+
+    private DockerCredentialsCache() {
+    }
+
+    /**
+     * @return system credentials with id or null.
+     */
+    @CheckForNull
+    public static Credentials get(@Nonnull String credentialsId) {
+        return index().credentials.get(credentialsId);
+    }
+
+    /**
+     * Commands keep auth config they were given, so every caller gets own copy of cached one.
+     *
+     * @return auth config of {@link DockerRegistryAuthCredentials} with id or null for other credentials.
+     */
+    @CheckForNull
+    public static AuthConfig getAuthConfig(@Nonnull String credentialsId) {
+        final Index current = index();
+        return current.authConfigs.computeIfAbsent(credentialsId, id -> {
+            final Credentials credentials = current.credentials.get(id);
+            if (credentials instanceof DockerRegistryAuthCredentials) {
+                return Optional.of(((DockerRegistryAuthCredentials) credentials).getAuthConfig());
+            }
+            return Optional.empty();
+        }).map(DockerCredentialsCache::copyOf).orElse(null);
+    }
+
+    /**
+     * Keystore and pem material is parsed once, {@link SSLContext} is created on first use.
+     *
+     * @return ssl config of certificate or docker server credentials with id or null for other credentials.
+     */
+    @CheckForNull
+    public static SSLConfig getSSLConfig(@Nonnull String credentialsId) {
+        final Index current = index();
+        return current.sslConfigs.computeIfAbsent(credentialsId, id -> {
+            final Credentials credentials = current.credentials.get(id);
+            if (credentials instanceof CertificateCredentials) {
+                final CertificateCredentials certificateCredentials = (CertificateCredentials) credentials;
+                return Optional.of(new MemoizedSSLConfig(new KeystoreSSLConfig(
+                        certificateCredentials.getKeyStore(),
+                        certificateCredentials.getPassword().getPlainText()
+                )));
+            } else if (credentials instanceof DockerServerCredentials) {
+                final DockerServerCredentials dockerCreds = (DockerServerCredentials) credentials;
+                return Optional.of(new MemoizedSSLConfig(new VariableSSLConfig(
+                        dockerCreds.getClientKey(),
+                        dockerCreds.getClientCertificate(),
+                        dockerCreds.getServerCaCertificate()
+                )));
+            }
+            return Optional.empty();
+        }).orElse(null);
+    }
+
+    /**
+     * Digest of id, type and material that plugin derives client settings from. Secrets are hashed in plain text,
+     * their stored form is encrypted with random iv and differs after every save.
+     *
+     * @return fingerprint of credentials with id or null when there are no such credentials.
+     */
+    @CheckForNull
+    public static String getFingerprint(@Nonnull String credentialsId) {
+        final Index current = index();
+        return current.fingerprints.computeIfAbsent(credentialsId, id -> {
+            final Credentials credentials = current.credentials.get(id);
+            if (isNull(credentials)) {
+                return Optional.empty();
+            }
+            return Optional.of(fingerprintOf(id, credentials));
+        }).orElse(null);
+    }
+
+    public static void invalidateAll() {
+        index = null;
+        GENERATION.incrementAndGet();
+    }
+
+    public static long getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * Replaces time source of {@link #MAX_AGE} expiry, for tests.
+     */
+    static void setClock(@Nonnull LongSupplier clock) {
+        DockerCredentialsCache.clock = clock;
+    }
+
+    private static Index index() {
+        Index current = index;
+        final long now = clock.getAsLong();
+        if (isNull(current) || current.isExpired(now)) {
+            synchronized (DockerCredentialsCache.class) {
+                current = index;
+                if (isNull(current) || current.isExpired(now)) {
+                    if (nonNull(current)) {
+                        // credentials could change without save, derived objects must be resolved again
+                        GENERATION.incrementAndGet();
+                    }
+                    current = new Index(lookupAll(), now);
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static String fingerprintOf(String id, Credentials credentials) {
+        final MessageDigest digest = DigestUtils.getSha256Digest();
+        update(digest, id);
+        update(digest, credentials.getClass().getName());
+        if (credentials instanceof DockerServerCredentials) {
+            final DockerServerCredentials dockerCreds = (DockerServerCredentials) credentials;
+            update(digest, dockerCreds.getClientKey());
+            update(digest, dockerCreds.getClientCertificate());
+            update(digest, dockerCreds.getServerCaCertificate());
+        } else if (credentials instanceof CertificateCredentials) {
+            final CertificateCredentials certificateCredentials = (CertificateCredentials) credentials;
+            final String password = certificateCredentials.getPassword().getPlainText();
+            update(digest, password);
+            updateKeyStore(digest, certificateCredentials.getKeyStore(), password);
+        } else if (credentials instanceof UsernamePasswordCredentials) {
+            final UsernamePasswordCredentials usernamePassword = (UsernamePasswordCredentials) credentials;
+            update(digest, usernamePassword.getUsername());
+            update(digest, usernamePassword.getPassword().getPlainText());
+            if (credentials instanceof DockerRegistryAuthCredentials) {
+                update(digest, ((DockerRegistryAuthCredentials) credentials).getEmail());
+            }
+        }
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, @CheckForNull String value) {
+        if (nonNull(value)) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // separator, so moving characters between values changes digest
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Stored keystore form could be salted, so digest takes encoded keys and certificates.
+     */
+    private static void updateKeyStore(MessageDigest digest, KeyStore keyStore, String password) {
+        try {
+            for (String alias : Collections.list(keyStore.aliases())) {
+                update(digest, alias);
+                final Key key = keyStore.getKey(alias, password.toCharArray());
+                if (nonNull(key) && nonNull(key.getEncoded())) {
+                    digest.update(key.getEncoded());
+                }
+                final Certificate certificate = keyStore.getCertificate(alias);
+                if (nonNull(certificate)) {
+                    digest.update(certificate.getEncoded());
+                }
+            }
+        } catch (GeneralSecurityException ex) {
+            // keystore can't be used for client either, fingerprint of the rest is enough
+            LOG.debug("Can't read keystore for fingerprint", ex);
+        }
+    }
+
+    private static AuthConfig copyOf(AuthConfig authConfig) {
+        return new AuthConfig()
+                .withEmail(authConfig.getEmail())
+                .withUsername(authConfig.getUsername())
+                .withPassword(authConfig.getPassword())
+                .withRegistryAddress(authConfig.getRegistryAddress());
+    }
+
+    private static Map<String, Credentials> lookupAll() {
+        final Map<String, Credentials> byId = new HashMap<>();
+        for (IdCredentials credentials : CredentialsProvider.lookupCredentials(
+                IdCredentials.class,
+                Jenkins.getActiveInstance(),
+                ACL.SYSTEM,
+                Collections.<DomainRequirement>emptyList())) {
+            // first provider wins, the same way as firstOrNull(withId()) does
+            byId.putIfAbsent(credentials.getId(), credentials);
+        }
+        LOG.debug("Indexed {} system credentials", byId.size());
+        return byId;
+    }
+
+    /**
+     * Immutable snapshot of credentials with lazily derived configs.
+     */
+    private static final class Index {
+        private final long createdAt;
+        private final Map<String, Credentials> credentials;
+        private final ConcurrentHashMap<String, Optional<AuthConfig>> authConfigs = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Optional<SSLConfig>> sslConfigs = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Optional<String>> fingerprints = new ConcurrentHashMap<>();
+
+        private Index(Map<String, Credentials> credentials, long createdAt) {
+            this.credentials = credentials;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt > MAX_AGE;
+        }
+    }
+
+    /**
+     * Keeps {@link SSLContext} after first successful creation.
+     */
+    private static final class MemoizedSSLConfig implements SSLConfig {
+        private final SSLConfig delegate;
+
+        @CheckForNull
+        private volatile SSLContext sslContext;
+
+        private MemoizedSSLConfig(SSLConfig delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SSLContext getSSLContext() throws KeyManagementException, UnrecoverableKeyException,
+                NoSuchAlgorithmException, KeyStoreException {
+            SSLContext context = sslContext;
+            if (isNull(context)) {
+                synchronized (this) {
+                    context = sslContext;
+                    if (isNull(context)) {
+                        context = delegate.getSSLContext();
+                        sslContext = context;
+                    }
+                }
+            }
+            return context;
+        }
+    }
+
+    /**
+     * Drops index when system credentials (including their domains) are saved.
+     */
+    @Extension
+    public static class CredentialsChangeListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                LOG.debug("System credentials changed, dropping credentials cache");
+                invalidateAll();
+            }
+        }
+    }
+}
@@ -13,13 +13,15 @@ import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.E
 import com.github.kostyasha.yad_docker_java.com.google.common.annotations.Beta;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Extension;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.TaskListener;
 import hudson.slaves.ComputerLauncher;
+import hudson.slaves.ComputerListener;
 import hudson.slaves.JNLPLauncher;
 import hudson.slaves.SlaveComputer;
-import hudson.util.TimeUnit2;
 import jenkins.model.Jenkins;
+import jenkins.util.Timer;
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.builder.EqualsBuilder;
@@ -29,13 +31,20 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
 
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 /**
  * JNLP launcher. Doesn't require open ports on docker host.
@@ -43,6 +52,7 @@ import static java.util.Objects.isNull;
  * Steps:
  * - runs container with nop command
  * - as launch action executes jnlp connection to master
+ * - launch returns without waiting, slave is terminated when it doesn't connect within launch timeout
  *
  * @author Kanstantsin Shautsou
  */
@@ -62,6 +72,18 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
 
     protected String user = "jenkins";
 
+    /**
+     * computer -> completes when computer goes online. Keyed by instance (computers don't override equals),
+     * so computer recreated with the same name can't complete launch of previous one.
+     */
+    private static final ConcurrentHashMap<Computer, CompletableFuture<Void>> PENDING = new ConcurrentHashMap<>();
+
+    /**
+     * Launch that waits for connection, core must not relaunch computer meanwhile.
+     */
+    @CheckForNull
+    private transient volatile CompletableFuture<Void> pendingLaunch;
+
     public DockerComputerJNLPLauncher() {
     }
 
@@ -94,7 +116,8 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
 
     @Override
     public boolean isLaunchSupported() {
-        return true;
+        final CompletableFuture<Void> pending = pendingLaunch;
+        return isNull(pending) || pending.isDone();
     }
 
     @SuppressFBWarnings(value = "REC_CATCH_EXCEPTION")
@@ -120,13 +143,16 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
         if (isNull(dockerCloud)) {
             throw new NullPointerException("Cloud not found for computer " + computer.getName());
         }
-        final DockerClient connect = dockerCloud.getClient();
         final DockerSlave node = dockerComputer.getNode();
         if (isNull(node)) {
             throw new NullPointerException("Node can't be null");
         }
+        final DockerClient connect = node.getClient();
         final DockerSlaveTemplate dockerSlaveTemplate = node.getDockerSlaveTemplate();
 
+        // before connection command, so fast connection can't be missed
+        final CompletableFuture<Void> online = expectOnline(dockerComputer);
+
         // exec jnlp connection in running container
         // TODO implement PID 1 replacement
         String startCmd =
@@ -165,31 +191,64 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
         } catch (Exception ex) {
             listener.error("Can't execute command: " + ex.getMessage().trim());
             LOG.error("Can't execute jnlp connection command: '{}'", ex.getMessage().trim());
+            PENDING.remove(dockerComputer, online);
+            online.cancel(false);
             node.terminate();
             throw ex;
         }
 
         LOG.info("Successfully executed jnlp connection for '{}'", containerId);
-        logger.println("Successfully executed jnlp connection for " + containerId);
-
-        // TODO better strategy
-        final long launchTime = System.currentTimeMillis();
-        while (!dockerComputer.isOnline() &&
-                TimeUnit2.SECONDS.toMillis(launchTimeout) > System.currentTimeMillis() - launchTime) {
-            logger.println("Waiting slave connection...");
-            Thread.sleep(1000);
-        }
+        logger.println("Successfully executed jnlp connection for " + containerId
+                + ", waiting " + launchTimeout + " seconds for slave connection");
+
+        awaitOnline(dockerComputer, online, listener, () -> {
+            try {
+                node.terminate();
+            } catch (Exception e) {
+                listener.error("Can't terminate slave: " + e.getMessage());
+                LOG.error("Can't terminate slave '{}'", dockerComputer.getName(), e);
+            }
+        });
+    }
 
-        if (!dockerComputer.isOnline()) {
-            LOG.info("Launch timeout, termintaing slave based on '{}'", containerId);
-            logger.println("Launch timeout, termintaing slave.");
-            node.terminate();
-            throw new IOException("Can't connect slave to jenkins");
+    /**
+     * Registers launch that completes when computer goes online.
+     */
+    @Nonnull
+    CompletableFuture<Void> expectOnline(@Nonnull SlaveComputer computer) {
+        final CompletableFuture<Void> online = new CompletableFuture<>();
+        PENDING.put(computer, online);
+        pendingLaunch = online;
+        return online;
+    }
+
+    /**
+     * Completes launch when computer is or goes online, otherwise terminates it after launch timeout.
+     *
+     * @param terminate called from remoting pool, timer thread must not wait for docker
+     */
+    void awaitOnline(@Nonnull SlaveComputer computer, @Nonnull CompletableFuture<Void> online,
+                     @Nonnull TaskListener listener, @Nonnull Runnable terminate) {
+        if (computer.isOnline()) {
+            online.complete(null);
         }
 
-        LOG.info("Launched slave '{}' '{}' based on '{}'",
-                dockerComputer.getSlaveVersion(), dockerComputer.getName(), containerId);
-        logger.println("Launched slave for " + containerId);
+        final ScheduledFuture<?> timeout = Timer.get().schedule(
+                () -> online.completeExceptionally(new TimeoutException("Slave didn't connect in time")),
+                launchTimeout, SECONDS);
+
+        online.whenComplete((ignore, ex) -> {
+            PENDING.remove(computer, online);
+            timeout.cancel(false);
+            if (isNull(ex)) {
+                LOG.info("Launched slave '{}' '{}'", computer.getSlaveVersion(), computer.getName());
+                return;
+            }
+
+            listener.error("Slave didn't connect in " + launchTimeout + " seconds, terminating it");
+            LOG.warn("Launch timeout of '{}', terminating slave", computer.getName());
+            Computer.threadPoolForRemoting.submit(terminate);
+        });
     }
 
     @Override
@@ -201,7 +260,7 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
     }
 
     @Override
-    public ComputerLauncher getPreparedLauncher(String cloudId, DockerSlaveTemplate template,
+    public ComputerLauncher getPreparedLauncher(String cloudId, String dockerHost, DockerSlaveTemplate template,
                                                 InspectContainerResponse containerInspectResponse) {
         final DockerComputerJNLPLauncher cloneJNLPlauncher = new DockerComputerJNLPLauncher(getJnlpLauncher());
 
@@ -244,8 +303,9 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
     }
 
     @Override
-    public boolean waitUp(String cloudId, DockerSlaveTemplate dockerSlaveTemplate, InspectContainerResponse ir) {
-        return super.waitUp(cloudId, dockerSlaveTemplate, ir);
+    public boolean waitUp(String cloudId, String dockerHost, DockerSlaveTemplate dockerSlaveTemplate,
+                          InspectContainerResponse ir) {
+        return super.waitUp(cloudId, dockerHost, dockerSlaveTemplate, ir);
     }
 
     @Override
@@ -273,6 +333,20 @@ public class DockerComputerJNLPLauncher extends DockerComputerLauncher {
                 .toHashCode();
     }
 
+    /**
+     * Completes pending launch of computer that connected.
+     */
+    @Extension
+    public static class OnlineListener extends ComputerListener {
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            final CompletableFuture<Void> online = PENDING.get(c);
+            if (nonNull(online)) {
+                online.complete(null);
+            }
+        }
+    }
+
     @Extension
     public static class DescriptorImpl extends Descriptor<ComputerLauncher> {
         public Class getJNLPLauncher() {
@@ -28,8 +28,11 @@ public abstract class DockerComputerLauncher extends ComputerLauncher {
 
     /**
      * Return valid configured launcher that will be used for launching slave
+     *
+     * @param dockerHost server url of docker host where container runs
      */
     public abstract ComputerLauncher getPreparedLauncher(String cloudId,
+                                                         String dockerHost,
                                                          DockerSlaveTemplate dockerSlaveTemplate,
                                                          InspectContainerResponse ir);
 
@@ -42,8 +45,10 @@ public abstract class DockerComputerLauncher extends ComputerLauncher {
 
     /**
      * Wait until slave is up and ready for connection.
+     *
+     * @param dockerHost server url of docker host where container runs
      */
-    public boolean waitUp(String cloudId, DockerSlaveTemplate dockerSlaveTemplate,
+    public boolean waitUp(String cloudId, String dockerHost, DockerSlaveTemplate dockerSlaveTemplate,
                           InspectContainerResponse containerInspect) {
         if (isFalse(containerInspect.getState().getRunning())) {
             throw new IllegalStateException("Container '" + containerInspect.getId() + "' is not running!");
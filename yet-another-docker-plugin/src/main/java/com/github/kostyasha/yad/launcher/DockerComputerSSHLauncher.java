@@ -1,6 +1,5 @@
 package com.github.kostyasha.yad.launcher;
 
-import com.github.kostyasha.yad.DockerCloud;
 import com.github.kostyasha.yad.DockerSlaveTemplate;
 import com.github.kostyasha.yad.commons.DockerCreateContainer;
 import com.github.kostyasha.yad.utils.HostAndPortChecker;
@@ -50,12 +49,13 @@ public class DockerComputerSSHLauncher extends DockerComputerLauncher {
         return sshConnector;
     }
 
-    public ComputerLauncher getPreparedLauncher(String cloudId, DockerSlaveTemplate dockerSlaveTemplate,
+    public ComputerLauncher getPreparedLauncher(String cloudId, String dockerHost,
+                                                DockerSlaveTemplate dockerSlaveTemplate,
                                                 InspectContainerResponse inspect) {
         // don't care, we need only launcher
         final DockerComputerSSHLauncher prepLauncher = new DockerComputerSSHLauncher(null);
 
-        prepLauncher.setLauncher(getSSHLauncher(cloudId, dockerSlaveTemplate, inspect));
+        prepLauncher.setLauncher(getSSHLauncher(cloudId, dockerHost, dockerSlaveTemplate, inspect));
 
         return prepLauncher;
     }
@@ -76,11 +76,11 @@ public class DockerComputerSSHLauncher extends DockerComputerLauncher {
     }
 
     @Override
-    public boolean waitUp(String cloudId, DockerSlaveTemplate dockerSlaveTemplate,
+    public boolean waitUp(String cloudId, String dockerHost, DockerSlaveTemplate dockerSlaveTemplate,
                           InspectContainerResponse containerInspect) {
-        super.waitUp(cloudId, dockerSlaveTemplate, containerInspect);
+        super.waitUp(cloudId, dockerHost, dockerSlaveTemplate, containerInspect);
 
-        final HostAndPort hostAndPort = getHostAndPort(cloudId, containerInspect);
+        final HostAndPort hostAndPort = getHostAndPort(cloudId, dockerHost, containerInspect);
         HostAndPortChecker hostAndPortChecker = HostAndPortChecker.create(hostAndPort);
         if (!hostAndPortChecker.withRetries(60).withEveryRetryWaitFor(2, TimeUnit.SECONDS)) {
             LOG.debug("TCP connection attempt failed 60 retries with 2 second interval for {}", hostAndPort);
@@ -96,12 +96,13 @@ public class DockerComputerSSHLauncher extends DockerComputerLauncher {
         return true;
     }
 
-    private SSHLauncher getSSHLauncher(String cloudId, DockerSlaveTemplate template, InspectContainerResponse inspect) {
+    private SSHLauncher getSSHLauncher(String cloudId, String dockerHost, DockerSlaveTemplate template,
+                                       InspectContainerResponse inspect) {
         Preconditions.checkNotNull(template);
         Preconditions.checkNotNull(inspect);
 
         try {
-            final HostAndPort hostAndPort = getHostAndPort(cloudId, inspect);
+            final HostAndPort hostAndPort = getHostAndPort(cloudId, dockerHost, inspect);
             LOG.info("Creating slave SSH launcher for '{}:{}'", hostAndPort.getHostText(), hostAndPort.getPort());
             return new SSHLauncher(hostAndPort.getHostText(), hostAndPort.getPort(), sshConnector.getCredentials(),
                     sshConnector.jvmOptions, sshConnector.javaPath, sshConnector.prefixStartSlaveCmd,
@@ -112,7 +113,12 @@ public class DockerComputerSSHLauncher extends DockerComputerLauncher {
         }
     }
 
-    public HostAndPort getHostAndPort(String cloudId, InspectContainerResponse ir) {
+    /**
+     * Address of container ssh port. Port bound to all interfaces is reached via address of docker host.
+     *
+     * @param dockerHost server url of docker host where container runs
+     */
+    public HostAndPort getHostAndPort(String cloudId, String dockerHost, InspectContainerResponse ir) {
         // get exposed port
         ExposedPort sshPort = new ExposedPort(sshConnector.port);
         String host = null;
@@ -135,9 +141,11 @@ public class DockerComputerSSHLauncher extends DockerComputerLauncher {
 
         //get address, if docker on localhost, then use local?
         if (host == null || host.equals("0.0.0.0")) {
-            final DockerCloud dockerCloud = DockerCloud.getCloudByName(cloudId);
-            Preconditions.checkNotNull(dockerCloud, "Can't get cloud '" + cloudId + "'. Cloud was renamed?");
-            host = URI.create(dockerCloud.getConnector().getServerUrl()).getHost();
+            if (isNull(dockerHost)) {
+                throw new IllegalStateException("Docker host of container " + ir.getId() + " in cloud '" + cloudId +
+                        "' is unknown, can't resolve address of ssh port bound to all interfaces");
+            }
+            host = URI.create(dockerHost).getHost();
         }
 
         return HostAndPort.fromParts(host, port);
@@ -0,0 +1,60 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerSlaveTemplate;
+import com.github.kostyasha.yad.commons.DockerCreateContainer;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Memory and CPU that container of template may take from docker host.
+ * Template without memory limit or cpu shares doesn't take that resource from budget.
+ */
+public final class ContainerResources {
+    public static final ContainerResources NONE = new ContainerResources(0, 0);
+
+    /**
+     * Docker's default cpu shares weight, treated as one CPU of host.
+     */
+    public static final long CPU_SHARES_PER_CPU = 1024;
+
+    private final long memory;
+    private final long cpuShares;
+
+    public ContainerResources(long memory, long cpuShares) {
+        this.memory = memory;
+        this.cpuShares = cpuShares;
+    }
+
+    @Nonnull
+    public static ContainerResources of(@CheckForNull DockerSlaveTemplate template) {
+        if (isNull(template) || isNull(template.getDockerContainerLifecycle())) {
+            return NONE;
+        }
+
+        final DockerCreateContainer createContainer = template.getDockerContainerLifecycle().getCreateContainer();
+        if (isNull(createContainer)) {
+            return NONE;
+        }
+
+        final Long memoryLimit = createContainer.getMemoryLimit();
+        final Integer cpuShares = createContainer.getCpuShares();
+        return new ContainerResources(
+                isNull(memoryLimit) || memoryLimit <= 0 ? 0 : memoryLimit * 1024 * 1024,
+                isNull(cpuShares) || cpuShares <= 0 ? 0 : cpuShares
+        );
+    }
+
+    /**
+     * @return memory limit in bytes.
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    public long getCpuShares() {
+        return cpuShares;
+    }
+}
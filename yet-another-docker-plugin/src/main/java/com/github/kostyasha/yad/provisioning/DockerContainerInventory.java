@@ -0,0 +1,613 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Container;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Event;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Info;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.EventsResultCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static com.github.kostyasha.yad.DockerCloud.DOCKER_CLOUD_LABEL;
+import static com.github.kostyasha.yad.DockerCloud.DOCKER_TEMPLATE_LABEL;
+import static com.github.kostyasha.yad_docker_java.com.google.common.base.MoreObjects.firstNonNull;
+import static java.util.Collections.singletonMap;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * In-memory view of running containers that belong to one {@link DockerCloud}.
+ * <p>
+ * Every docker host of cloud is seeded once with a container listing, then kept current from docker
+ * {@code /events} stream filtered by cloud label. {@link DockerInventoryResyncWork} resyncs hosts periodically,
+ * so lost events can't drift counters forever. Counting cloud, template and host containers is O(1) map lookup.
+ * Host that failed to seed keeps its last known containers, but is not offered for placement.
+ * Memory limits and cpu shares of running containers are summed per host for resource-aware placement.
+ */
+public class DockerContainerInventory {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerContainerInventory.class);
+
+    /**
+     * All inventories that may hold opened event stream. Used to close streams of replaced clouds.
+     */
+    private static final Set<DockerContainerInventory> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private final String cloudName;
+
+    /**
+     * serverUrl -> host state
+     */
+    private final Map<String, HostInventory> hosts;
+
+    /**
+     * containerId -> container
+     */
+    private final ConcurrentHashMap<String, RunningContainer> containers = new ConcurrentHashMap<>();
+
+    /**
+     * templateId -> number of running containers
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> templateCounters = new ConcurrentHashMap<>();
+
+    /**
+     * serverUrl -> number of running containers
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> hostCounters = new ConcurrentHashMap<>();
+
+    /**
+     * serverUrl -> memory limits of running containers
+     */
+    private final ConcurrentHashMap<String, AtomicLong> hostMemory = new ConcurrentHashMap<>();
+
+    /**
+     * serverUrl -> cpu shares of running containers
+     */
+    private final ConcurrentHashMap<String, AtomicLong> hostCpuShares = new ConcurrentHashMap<>();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final Function<String, ContainerResources> resources;
+
+    public DockerContainerInventory(@Nonnull String cloudName, @Nonnull Map<String, Supplier<DockerClient>> clients) {
+        this(cloudName, clients, templateId -> ContainerResources.NONE);
+    }
+
+    /**
+     * @param clients   serverUrl -> client for every docker host of cloud
+     * @param resources templateId -> resources that container of template takes
+     */
+    public DockerContainerInventory(@Nonnull String cloudName, @Nonnull Map<String, Supplier<DockerClient>> clients,
+                                    @Nonnull Function<String, ContainerResources> resources) {
+        this.cloudName = cloudName;
+        this.resources = resources;
+        final Map<String, HostInventory> hostMap = new LinkedHashMap<>();
+        clients.forEach((host, client) -> hostMap.put(host, new HostInventory(host, client)));
+        this.hosts = Collections.unmodifiableMap(hostMap);
+    }
+
+    /**
+     * @return true when at least one host is seeded and may be used for placement.
+     */
+    public boolean isSeeded() {
+        return hosts.values().stream().anyMatch(h -> h.seeded);
+    }
+
+    public boolean isSeeded(@Nonnull String host) {
+        final HostInventory hostInventory = hosts.get(host);
+        return nonNull(hostInventory) && hostInventory.seeded;
+    }
+
+    /**
+     * @return server urls of all hosts in configuration order.
+     */
+    @Nonnull
+    public Set<String> getHosts() {
+        return hosts.keySet();
+    }
+
+    /**
+     * @return number of running containers of this cloud.
+     */
+    public int countContainers() {
+        return total.get();
+    }
+
+    /**
+     * @return number of running containers created from template with this id.
+     */
+    public int countContainers(@Nonnull String templateId) {
+        final AtomicInteger counter = templateCounters.get(templateId);
+        return isNull(counter) ? 0 : counter.get();
+    }
+
+    /**
+     * @return number of running containers on docker host.
+     */
+    public int countContainersOnHost(@Nonnull String host) {
+        final AtomicInteger counter = hostCounters.get(host);
+        return isNull(counter) ? 0 : counter.get();
+    }
+
+    /**
+     * @return true when container is known as running.
+     */
+    public boolean isRunning(@Nonnull String containerId) {
+        return containers.containsKey(containerId);
+    }
+
+    /**
+     * @return server url of host that runs container or null when container is unknown.
+     */
+    @CheckForNull
+    public String hostOf(@Nonnull String containerId) {
+        final RunningContainer container = containers.get(containerId);
+        return isNull(container) ? null : container.host;
+    }
+
+    /**
+     * @return sum of memory limits in bytes of containers running on docker host.
+     */
+    public long getUsedMemory(@Nonnull String host) {
+        final AtomicLong counter = hostMemory.get(host);
+        return isNull(counter) ? 0 : counter.get();
+    }
+
+    /**
+     * @return sum of cpu shares of containers running on docker host.
+     */
+    public long getUsedCpuShares(@Nonnull String host) {
+        final AtomicLong counter = hostCpuShares.get(host);
+        return isNull(counter) ? 0 : counter.get();
+    }
+
+    /**
+     * @return number of CPUs reported by host on last resync or 0 if unknown.
+     */
+    public int getCpus(@Nonnull String host) {
+        final HostInventory hostInventory = hosts.get(host);
+        return isNull(hostInventory) ? 0 : hostInventory.cpus;
+    }
+
+    /**
+     * @return total memory in bytes reported by host on last resync or 0 if unknown.
+     */
+    public long getMemory(@Nonnull String host) {
+        final HostInventory hostInventory = hosts.get(host);
+        return isNull(hostInventory) ? 0 : hostInventory.memory;
+    }
+
+    /**
+     * Seeds inventory if it wasn't done yet.
+     */
+    public void ensureSeeded() {
+        for (HostInventory hostInventory : hosts.values()) {
+            if (!hostInventory.seeded) {
+                resync(hostInventory);
+            }
+        }
+    }
+
+    /**
+     * Seeds not seeded hosts in background. Callers that must not block on docker
+     * (i.e. provisioning) use it and treat not seeded host as unknown capacity.
+     */
+    public void seedAsync(@Nonnull Executor executor) {
+        for (HostInventory hostInventory : hosts.values()) {
+            if (hostInventory.seeded || !hostInventory.seeding.compareAndSet(false, true)) {
+                continue;
+            }
+
+            executor.execute(() -> {
+                try {
+                    resync(hostInventory);
+                } catch (Exception ex) {
+                    LOG.warn("Can't seed container inventory for cloud '{}' on '{}'", cloudName, hostInventory.host, ex);
+                } finally {
+                    hostInventory.seeding.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Resyncs every host. Failure of one host doesn't prevent resync of others.
+     */
+    public void resync() {
+        ACTIVE.add(this);
+        for (HostInventory hostInventory : hosts.values()) {
+            try {
+                resync(hostInventory);
+            } catch (Exception ex) {
+                hostInventory.seeded = false;
+                LOG.warn("Can't resync container inventory for cloud '{}' on '{}'", cloudName, hostInventory.host, ex);
+            }
+        }
+    }
+
+    /**
+     * (Re)opens event stream when it is not alive and replaces host content with fresh container listing.
+     * Stream is opened before listing and events that come while listing runs are journaled and applied
+     * over listing, so containers started or stopped during listing are not lost.
+     */
+    private void resync(HostInventory hostInventory) {
+        ACTIVE.add(this);
+        hostInventory.ensureEventsStream();
+
+        final Map<String, String> journal = startJournal(hostInventory);
+        try {
+            final DockerClient client = hostInventory.clientSupplier.get();
+            final List<Container> list = client.listContainersCmd()
+                    .withLabelFilter(singletonMap(DOCKER_CLOUD_LABEL, cloudName))
+                    .exec();
+
+            final Map<String, String> fresh = new HashMap<>(list.size());
+            for (Container container : list) {
+                final Map<String, String> labels = container.getLabels();
+                if (nonNull(labels) && cloudName.equals(labels.get(DOCKER_CLOUD_LABEL))) {
+                    fresh.put(container.getId(), String.valueOf(labels.get(DOCKER_TEMPLATE_LABEL)));
+                }
+            }
+
+            final Info info = client.infoCmd().exec();
+            hostInventory.cpus = firstNonNull(info.getNCPU(), 0);
+            hostInventory.memory = firstNonNull(info.getMemTotal(), 0L);
+
+            replace(hostInventory, fresh, journal);
+            hostInventory.seeded = true;
+            LOG.debug("Resynced inventory for cloud '{}' on '{}', {} running container(s)",
+                    cloudName, hostInventory.host, fresh.size());
+        } finally {
+            stopJournal(hostInventory, journal);
+        }
+    }
+
+    /**
+     * @return containerId -> templateId of started or null for stopped container, filled until
+     * {@link #stopJournal(HostInventory, Map)}.
+     */
+    private synchronized Map<String, String> startJournal(HostInventory hostInventory) {
+        final Map<String, String> journal = new HashMap<>();
+        hostInventory.journals.add(journal);
+        return journal;
+    }
+
+    private synchronized void stopJournal(HostInventory hostInventory, Map<String, String> journal) {
+        hostInventory.journals.remove(journal);
+    }
+
+    /**
+     * Container started by this cloud. Idempotent, the same event may come from stream later.
+     */
+    public synchronized void containerStarted(@Nonnull String containerId, @Nonnull String templateId,
+                                              @Nonnull String host) {
+        final HostInventory hostInventory = hosts.get(host);
+        if (nonNull(hostInventory)) {
+            hostInventory.journals.forEach(journal -> journal.put(containerId, templateId));
+        }
+
+        final RunningContainer container = runningContainer(templateId, host);
+        if (isNull(containers.putIfAbsent(containerId, container))) {
+            counterFor(templateCounters, templateId).incrementAndGet();
+            counterFor(hostCounters, host).incrementAndGet();
+            longCounterFor(hostMemory, host).addAndGet(container.resources.getMemory());
+            longCounterFor(hostCpuShares, host).addAndGet(container.resources.getCpuShares());
+            total.incrementAndGet();
+        }
+    }
+
+    /**
+     * Container stopped or removed. Idempotent.
+     */
+    public synchronized void containerRemoved(@Nonnull String containerId) {
+        // host may be unknown, removing unknown container from listing of other host is harmless
+        hosts.values().forEach(h -> h.journals.forEach(journal -> journal.put(containerId, null)));
+
+        final RunningContainer container = containers.remove(containerId);
+        if (nonNull(container)) {
+            counterFor(templateCounters, container.templateId).decrementAndGet();
+            counterFor(hostCounters, container.host).decrementAndGet();
+            longCounterFor(hostMemory, container.host).addAndGet(-container.resources.getMemory());
+            longCounterFor(hostCpuShares, container.host).addAndGet(-container.resources.getCpuShares());
+            total.decrementAndGet();
+        }
+    }
+
+    private synchronized void replace(HostInventory hostInventory, Map<String, String> fresh,
+                                      Map<String, String> journal) {
+        final String host = hostInventory.host;
+        journal.forEach((containerId, templateId) -> {
+            if (isNull(templateId)) {
+                fresh.remove(containerId);
+            } else {
+                fresh.put(containerId, templateId);
+            }
+        });
+
+        containers.values().removeIf(container -> container.host.equals(host));
+        fresh.forEach((containerId, templateId) -> containers.put(containerId, runningContainer(templateId, host)));
+
+        final Map<String, Integer> templateCounts = new HashMap<>();
+        final Map<String, Integer> hostCounts = new HashMap<>();
+        final Map<String, Long> memoryCounts = new HashMap<>();
+        final Map<String, Long> cpuCounts = new HashMap<>();
+        for (RunningContainer container : containers.values()) {
+            templateCounts.merge(container.templateId, 1, Integer::sum);
+            hostCounts.merge(container.host, 1, Integer::sum);
+            memoryCounts.merge(container.host, container.resources.getMemory(), Long::sum);
+            cpuCounts.merge(container.host, container.resources.getCpuShares(), Long::sum);
+        }
+
+        setCounters(templateCounters, templateCounts);
+        setCounters(hostCounters, hostCounts);
+        setLongCounters(hostMemory, memoryCounts);
+        setLongCounters(hostCpuShares, cpuCounts);
+        total.set(containers.size());
+    }
+
+    private RunningContainer runningContainer(String templateId, String host) {
+        return new RunningContainer(templateId, host, resources.apply(templateId));
+    }
+
+    private static void setCounters(ConcurrentHashMap<String, AtomicInteger> counters, Map<String, Integer> counts) {
+        counters.forEach((key, counter) -> counter.set(counts.getOrDefault(key, 0)));
+        counts.forEach((key, count) -> counterFor(counters, key).set(count));
+    }
+
+    private static void setLongCounters(ConcurrentHashMap<String, AtomicLong> counters, Map<String, Long> counts) {
+        counters.forEach((key, counter) -> counter.set(counts.getOrDefault(key, 0L)));
+        counts.forEach((key, count) -> longCounterFor(counters, key).set(count));
+    }
+
+    private static AtomicInteger counterFor(ConcurrentHashMap<String, AtomicInteger> counters, String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicInteger());
+    }
+
+    private static AtomicLong longCounterFor(ConcurrentHashMap<String, AtomicLong> counters, String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicLong());
+    }
+
+    /**
+     * Closes events streams. Inventory stays usable and will reopen streams on next resync.
+     */
+    public void close() {
+        ACTIVE.remove(this);
+        for (HostInventory hostInventory : hosts.values()) {
+            hostInventory.close();
+        }
+    }
+
+    /**
+     * Closes streams of inventories that doesn't belong to live clouds (i.e. after configuration save).
+     */
+    public static void closeAllExcept(@Nonnull Collection<DockerContainerInventory> live) {
+        for (DockerContainerInventory inventory : ACTIVE) {
+            if (!live.contains(inventory)) {
+                LOG.debug("Closing inventory of removed cloud '{}'", inventory.cloudName);
+                inventory.close();
+            }
+        }
+    }
+
+    private void onEvent(String host, Event event) {
+        final String containerId = event.getId();
+        final String status = event.getStatus();
+        if (isNull(containerId) || isNull(status)) {
+            return;
+        }
+
+        switch (status) {
+            case "start":
+                final String templateId = templateIdOf(event);
+                if (isNull(templateId)) {
+                    // old daemons don't send labels in events, listing will fix it
+                    hosts.get(host).seeded = false;
+                } else {
+                    containerStarted(containerId, templateId, host);
+                }
+                break;
+            case "die":
+            case "destroy":
+                containerRemoved(containerId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @CheckForNull
+    private static String templateIdOf(Event event) {
+        if (isNull(event.getActor()) || isNull(event.getActor().getAttributes())) {
+            return null;
+        }
+        return event.getActor().getAttributes().get(DOCKER_TEMPLATE_LABEL);
+    }
+
+    private static final class RunningContainer {
+        private final String templateId;
+        private final String host;
+        private final ContainerResources resources;
+
+        private RunningContainer(String templateId, String host, ContainerResources resources) {
+            this.templateId = templateId;
+            this.host = host;
+            this.resources = resources;
+        }
+    }
+
+    /**
+     * Seeding state, events stream and resources of one docker host.
+     */
+    private final class HostInventory {
+        private final String host;
+
+        private final Supplier<DockerClient> clientSupplier;
+
+        private volatile boolean seeded = false;
+
+        private final AtomicBoolean seeding = new AtomicBoolean(false);
+
+        private volatile int cpus = 0;
+
+        private volatile long memory = 0;
+
+        /**
+         * Events of running resyncs, guarded by inventory monitor.
+         */
+        private final List<Map<String, String>> journals = new ArrayList<>();
+
+        /**
+         * Guards stream state only, remote call that opens stream is done outside of it.
+         */
+        private final Object streamLock = new Object();
+
+        @CheckForNull
+        private EventsResultCallback eventsCallback = null;
+
+        /**
+         * Stream is being opened by other thread.
+         */
+        private boolean opening = false;
+
+        /**
+         * Incremented on close, so stream opened concurrently with close is closed too.
+         */
+        private long closeCount = 0;
+
+        private HostInventory(String host, Supplier<DockerClient> clientSupplier) {
+            this.host = host;
+            this.clientSupplier = clientSupplier;
+        }
+
+        /**
+         * Opens stream unless it is opened or being opened. Hung daemon blocks only the opening thread.
+         */
+        private void ensureEventsStream() {
+            final long closeCountBefore;
+            synchronized (streamLock) {
+                if (nonNull(eventsCallback) || opening) {
+                    return;
+                }
+                opening = true;
+                closeCountBefore = closeCount;
+            }
+
+            InventoryEventsCallback callback = null;
+            try {
+                final String since = String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+                callback = clientSupplier.get().eventsCmd()
+                        .withSince(since)
+                        .withLabelFilter(singletonMap(DOCKER_CLOUD_LABEL, cloudName))
+                        .withEventFilter("start", "die", "destroy")
+                        .exec(new InventoryEventsCallback(this));
+            } finally {
+                final boolean installed;
+                synchronized (streamLock) {
+                    opening = false;
+                    installed = nonNull(callback) && !callback.finished && closeCount == closeCountBefore;
+                    if (installed) {
+                        eventsCallback = callback;
+                    }
+                }
+
+                if (installed) {
+                    LOG.debug("Opened events stream for cloud '{}' on '{}'", cloudName, host);
+                } else if (nonNull(callback)) {
+                    closeQuietly(callback);
+                }
+            }
+        }
+
+        private void streamClosed(EventsResultCallback callback) {
+            synchronized (streamLock) {
+                if (eventsCallback == callback) {
+                    eventsCallback = null;
+                }
+            }
+        }
+
+        private void close() {
+            seeded = false;
+
+            final EventsResultCallback callback;
+            synchronized (streamLock) {
+                callback = eventsCallback;
+                eventsCallback = null;
+                closeCount++;
+            }
+
+            if (nonNull(callback)) {
+                closeQuietly(callback);
+            }
+        }
+
+        private void closeQuietly(EventsResultCallback callback) {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                LOG.debug("Can't close events stream for cloud '{}' on '{}'", cloudName, host, e);
+            }
+        }
+    }
+
+    private class InventoryEventsCallback extends EventsResultCallback {
+        private final HostInventory hostInventory;
+
+        /**
+         * Set before stream state is cleared, so stream that ended while being opened is not installed.
+         */
+        private volatile boolean finished = false;
+
+        InventoryEventsCallback(HostInventory hostInventory) {
+            this.hostInventory = hostInventory;
+        }
+
+        @Override
+        public void onNext(Event event) {
+            try {
+                onEvent(hostInventory.host, event);
+            } catch (Exception ex) {
+                LOG.warn("Can't process event {} for cloud '{}'", event, cloudName, ex);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOG.warn("Events stream for cloud '{}' on '{}' failed, inventory will be resynced",
+                    cloudName, hostInventory.host, throwable);
+            finished = true;
+            hostInventory.streamClosed(this);
+            hostInventory.seeded = false;
+            super.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            LOG.debug("Events stream for cloud '{}' on '{}' completed", cloudName, hostInventory.host);
+            finished = true;
+            hostInventory.streamClosed(this);
+            hostInventory.seeded = false;
+            super.onComplete();
+        }
+    }
+}
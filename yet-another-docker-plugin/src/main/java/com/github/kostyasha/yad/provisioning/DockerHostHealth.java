@@ -0,0 +1,240 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Objects.isNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Health of docker hosts of one cloud from periodic ping probes, see {@link DockerHostHealthWork}.
+ * State is computed from rolling window of last probes: host whose last probes all failed is unavailable
+ * and gets no new containers, host with high error rate or slow responses is degraded and gets containers
+ * only when healthy hosts can't take them. Host without probes yet is not excluded.
+ */
+public class DockerHostHealth {
+    public static final int WINDOW = 10;
+
+    public static final int UNAVAILABLE_FAILURES = 3;
+
+    public static final double DEGRADED_ERROR_RATE = 0.3;
+
+    public static final long DEGRADED_LATENCY = SECONDS.toMillis(2);
+
+    /**
+     * serverUrl -> health
+     */
+    private final ConcurrentHashMap<String, HostHealth> hosts = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public HostHealth forHost(@Nonnull String host) {
+        return hosts.computeIfAbsent(host, HostHealth::new);
+    }
+
+    @Nonnull
+    public State getState(@Nonnull String host) {
+        final HostHealth health = hosts.get(host);
+        return isNull(health) ? State.UNKNOWN : health.getState();
+    }
+
+    /**
+     * Pings hosts in parallel, host that didn't answer within timeout is recorded as failed.
+     * Host whose previous probe still hangs isn't pinged again, but gets failure every round,
+     * so hung daemon becomes unavailable.
+     *
+     * @param pings serverUrl -> ping of host, failure is thrown exception
+     */
+    public void probeAll(@Nonnull Map<String, Runnable> pings, @Nonnull ExecutorService executor, long timeoutMillis) {
+        final long started = System.currentTimeMillis();
+        final Map<Future<?>, Probe> running = new LinkedHashMap<>();
+        pings.forEach((host, ping) -> {
+            final HostHealth health = forHost(host);
+            if (health.tryStartProbe()) {
+                final Probe probe = new Probe(health);
+                running.put(executor.submit(() -> probe.run(ping)), probe);
+            } else {
+                health.failure(timeoutMillis, "Previous probe still has no answer");
+            }
+        });
+
+        for (Map.Entry<Future<?>, Probe> entry : running.entrySet()) {
+            final long left = timeoutMillis - (System.currentTimeMillis() - started);
+            try {
+                entry.getKey().get(Math.max(left, 0), MILLISECONDS);
+            } catch (TimeoutException ex) {
+                entry.getValue().timedOut(timeoutMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ignore) {
+                // probe records its failures
+            }
+        }
+    }
+
+    /**
+     * @return false only for unavailable host.
+     */
+    public boolean isAvailable(@Nonnull String host) {
+        return getState(host) != State.UNAVAILABLE;
+    }
+
+    /**
+     * One ping that is recorded once, either by itself or as timed out.
+     */
+    private static final class Probe {
+        private final HostHealth health;
+        private final long started = System.currentTimeMillis();
+        private final AtomicBoolean recorded = new AtomicBoolean(false);
+
+        private Probe(HostHealth health) {
+            this.health = health;
+        }
+
+        private void run(Runnable ping) {
+            try {
+                ping.run();
+                if (recorded.compareAndSet(false, true)) {
+                    health.success(System.currentTimeMillis() - started);
+                }
+            } catch (RuntimeException ex) {
+                if (recorded.compareAndSet(false, true)) {
+                    health.failure(System.currentTimeMillis() - started, ex.toString());
+                }
+            } finally {
+                health.probeFinished();
+            }
+        }
+
+        private void timedOut(long timeoutMillis) {
+            if (recorded.compareAndSet(false, true)) {
+                health.failure(timeoutMillis, "No answer in " + timeoutMillis + " ms");
+            }
+        }
+    }
+
+    public enum State {
+        UNKNOWN,
+        HEALTHY,
+        DEGRADED,
+        UNAVAILABLE
+    }
+
+    /**
+     * Rolling window of probes of one docker host.
+     */
+    public static final class HostHealth {
+        private final String host;
+        private final long[] latencies = new long[WINDOW];
+        private final boolean[] failures = new boolean[WINDOW];
+        private final AtomicBoolean probing = new AtomicBoolean(false);
+        private int next;
+        private int size;
+        private int consecutiveFailures;
+        private long lastCheck;
+        @CheckForNull
+        private String lastError;
+
+        HostHealth(@Nonnull String host) {
+            this.host = host;
+        }
+
+        /**
+         * @return true when caller may probe host, false when previous probe still runs.
+         */
+        public boolean tryStartProbe() {
+            return probing.compareAndSet(false, true);
+        }
+
+        public void probeFinished() {
+            probing.set(false);
+        }
+
+        public synchronized void success(long latencyMillis) {
+            add(latencyMillis, false);
+            consecutiveFailures = 0;
+            lastError = null;
+        }
+
+        public synchronized void failure(long latencyMillis, @Nonnull String error) {
+            add(latencyMillis, true);
+            consecutiveFailures++;
+            lastError = error;
+        }
+
+        private void add(long latencyMillis, boolean failed) {
+            latencies[next] = latencyMillis;
+            failures[next] = failed;
+            next = (next + 1) % WINDOW;
+            size = Math.min(size + 1, WINDOW);
+            lastCheck = System.currentTimeMillis();
+        }
+
+        @Nonnull
+        public synchronized State getState() {
+            if (size == 0) {
+                return State.UNKNOWN;
+            }
+            if (consecutiveFailures >= UNAVAILABLE_FAILURES) {
+                return State.UNAVAILABLE;
+            }
+            if (getErrorRate() >= DEGRADED_ERROR_RATE || getAverageLatency() > DEGRADED_LATENCY) {
+                return State.DEGRADED;
+            }
+            return State.HEALTHY;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return failed part of probes in window.
+         */
+        public synchronized double getErrorRate() {
+            if (size == 0) {
+                return 0;
+            }
+            int failed = 0;
+            for (int i = 0; i < size; i++) {
+                if (failures[i]) {
+                    failed++;
+                }
+            }
+            return (double) failed / size;
+        }
+
+        /**
+         * @return average latency of successful probes in window.
+         */
+        public synchronized long getAverageLatency() {
+            long total = 0;
+            int succeeded = 0;
+            for (int i = 0; i < size; i++) {
+                if (!failures[i]) {
+                    total += latencies[i];
+                    succeeded++;
+                }
+            }
+            return succeeded == 0 ? 0 : total / succeeded;
+        }
+
+        public synchronized long getLastCheck() {
+            return lastCheck;
+        }
+
+        @CheckForNull
+        public synchronized String getLastError() {
+            return lastError;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Probes docker hosts of every {@link DockerCloud}, see {@link DockerCloud#checkHostHealth()}.
+ */
+@Extension
+public class DockerHostHealthWork extends AsyncPeriodicWork {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerHostHealthWork.class);
+
+    public DockerHostHealthWork() {
+        super("YAD docker host health");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return SECONDS.toMillis(30);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (DockerCloud cloud : getDockerClouds()) {
+            try {
+                cloud.checkHostHealth();
+            } catch (Exception ex) {
+                LOG.warn("Can't check docker hosts health for cloud '{}'", cloud.getDisplayName(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.Nonnull;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Orders docker hosts of cloud for container placement. Host with lowest (running + reserved) containers
+ * per CPU goes first, more memory per container breaks ties, then configuration order.
+ * Hosts that reached their cap are skipped. Works only with local counters and cached host info.
+ */
+public final class DockerHostPlacement {
+    private DockerHostPlacement() {
+    }
+
+    /**
+     * @return server urls of hosts that may take one more container, most free first.
+     */
+    @Nonnull
+    public static List<String> rank(@Nonnull List<HostLoad> hosts) {
+        return hosts.stream()
+                .filter(HostLoad::hasCapacity)
+                .sorted(Comparator.comparingDouble(HostLoad::containersPerCpu)
+                        .thenComparing(Comparator.comparingDouble(HostLoad::memoryPerContainer).reversed()))
+                .map(HostLoad::getHost)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Snapshot of host load.
+     */
+    public static class HostLoad {
+        private final String host;
+        private final int cap;
+        private final int containers;
+        private final int cpus;
+        private final long memory;
+
+        /**
+         * @param cap        max containers on host, 0 means unlimited
+         * @param containers running and reserved containers
+         * @param cpus       CPUs of host, 0 if unknown
+         * @param memory     total memory of host, 0 if unknown
+         */
+        public HostLoad(@Nonnull String host, int cap, int containers, int cpus, long memory) {
+            this.host = host;
+            this.cap = cap;
+            this.containers = containers;
+            this.cpus = cpus;
+            this.memory = memory;
+        }
+
+        @Nonnull
+        public String getHost() {
+            return host;
+        }
+
+        boolean hasCapacity() {
+            return cap == 0 || containers < cap;
+        }
+
+        double containersPerCpu() {
+            return (containers + 1) / (double) Math.max(1, cpus);
+        }
+
+        double memoryPerContainer() {
+            return memory / (double) (containers + 1);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Event;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.NameParser;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.EventsResultCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Per-host cache of images known to be present on docker hosts of one {@link DockerCloud}.
+ * <p>
+ * Replaces listing of all host images on every pull check. Entries are keyed by normalized {@code repo:tag},
+ * added after pull and from image {@code pull/tag} events, dropped on {@code untag/delete} events.
+ * Entry older than TTL and unknown image are checked with targeted {@code inspectImage}.
+ * Missing images are not cached, they are pulled or checked again next time.
+ * <p>
+ * Concurrent pulls of the same image on the same host are coalesced by {@link HostImages#pull}.
+ */
+public class DockerImageCache {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerImageCache.class);
+
+    public static final long TTL = MINUTES.toMillis(5);
+
+    /**
+     * Image pulled within this window is not pulled again, even by always pull strategy.
+     */
+    public static final long RECENT_PULL = SECONDS.toMillis(30);
+
+    /**
+     * Present image refreshed by {@link DockerImagePrePullWork} within this window is not pulled by provisioning.
+     * Longer than pre-pull period, so refreshed images don't expire between runs.
+     */
+    public static final long REFRESH_WINDOW = MINUTES.toMillis(15);
+
+    private static final Set<DockerImageCache> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private final String cloudName;
+
+    /**
+     * serverUrl -> host images
+     */
+    private final Map<String, HostImages> hosts;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param clients serverUrl -> client for every docker host of cloud
+     */
+    public DockerImageCache(@Nonnull String cloudName, @Nonnull Map<String, Supplier<DockerClient>> clients) {
+        this(cloudName, clients, System::currentTimeMillis);
+    }
+
+    DockerImageCache(@Nonnull String cloudName, @Nonnull Map<String, Supplier<DockerClient>> clients,
+                     @Nonnull LongSupplier clock) {
+        this.cloudName = cloudName;
+        this.clock = clock;
+        final Map<String, HostImages> hostMap = new LinkedHashMap<>();
+        clients.forEach((host, client) -> hostMap.put(host, new HostImages(host, client)));
+        this.hosts = Collections.unmodifiableMap(hostMap);
+    }
+
+    /**
+     * @return images of docker host or null when host doesn't belong to cloud.
+     */
+    @CheckForNull
+    public HostImages forHost(@Nonnull String host) {
+        return hosts.get(host);
+    }
+
+    /**
+     * Image name as docker shows it in repo tags: without default registry and library prefix,
+     * with {@code latest} tag when tag is not specified.
+     */
+    @Nonnull
+    public static String normalize(@Nonnull String imageName) {
+        final NameParser.ReposTag reposTag = NameParser.parseRepositoryTag(imageName);
+        String repos = reposTag.repos;
+        for (String prefix : new String[]{"docker.io/", "index.docker.io/", "registry-1.docker.io/"}) {
+            if (repos.startsWith(prefix)) {
+                repos = repos.substring(prefix.length());
+                break;
+            }
+        }
+        if (repos.startsWith("library/")) {
+            repos = repos.substring("library/".length());
+        }
+        return repos + ":" + (reposTag.tag.isEmpty() ? "latest" : reposTag.tag);
+    }
+
+    /**
+     * Closes events streams. Cache stays usable and will reopen streams on next lookup.
+     */
+    public void close() {
+        ACTIVE.remove(this);
+        for (HostImages hostImages : hosts.values()) {
+            hostImages.close();
+        }
+    }
+
+    /**
+     * Closes streams of caches that doesn't belong to live clouds (i.e. after configuration save).
+     */
+    public static void closeAllExcept(@Nonnull Collection<DockerImageCache> live) {
+        for (DockerImageCache cache : ACTIVE) {
+            if (!live.contains(cache)) {
+                LOG.debug("Closing image cache of removed cloud '{}'", cache.cloudName);
+                cache.close();
+            }
+        }
+    }
+
+    private static final class CachedImage {
+        /**
+         * Image id or null when it is not known (i.e. from pull event).
+         */
+        @CheckForNull
+        private final String imageId;
+        private final long checkedAt;
+
+        private CachedImage(@CheckForNull String imageId, long checkedAt) {
+            this.imageId = imageId;
+            this.checkedAt = checkedAt;
+        }
+
+        private boolean isFresh(long now) {
+            return now - checkedAt < TTL;
+        }
+    }
+
+    /**
+     * Images of one docker host.
+     */
+    public final class HostImages {
+        private final String host;
+
+        private final Supplier<DockerClient> clientSupplier;
+
+        /**
+         * normalized repo:tag -> image
+         */
+        private final ConcurrentHashMap<String, CachedImage> images = new ConcurrentHashMap<>();
+
+        /**
+         * normalized repo:tag -> in-flight and recent pulls
+         */
+        private final SingleFlight<String> pulls = new SingleFlight<>(RECENT_PULL);
+
+        /**
+         * normalized repo:tag -> last background refresh time
+         */
+        private final ConcurrentHashMap<String, Long> refreshedAt = new ConcurrentHashMap<>();
+
+        /**
+         * normalized repo:tag -> last time template container was started from it
+         */
+        private final ConcurrentHashMap<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+        /**
+         * normalized repo:tag of images removed by garbage collection
+         */
+        private final Set<String> evicted = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Guards stream state only, remote call that opens stream is done outside of it.
+         */
+        private final Object streamLock = new Object();
+
+        @CheckForNull
+        private EventsResultCallback eventsCallback = null;
+
+        /**
+         * Stream is being opened by other thread.
+         */
+        private boolean opening = false;
+
+        /**
+         * Incremented on close, so stream opened concurrently with close is closed too.
+         */
+        private long closeCount = 0;
+
+        private HostImages(String host, Supplier<DockerClient> clientSupplier) {
+            this.host = host;
+            this.clientSupplier = clientSupplier;
+        }
+
+        @Nonnull
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return true when image is present on host. Does remote {@code inspectImage} call only for
+         * unknown or expired entry.
+         */
+        public boolean isPresent(@Nonnull String imageName) {
+            final String key = normalize(imageName);
+            final CachedImage cached = images.get(key);
+            if (nonNull(cached) && cached.isFresh(clock.getAsLong())) {
+                return true;
+            }
+
+            ensureEventsStream();
+
+            try {
+                final InspectImageResponse inspect = clientSupplier.get().inspectImageCmd(key).exec();
+                images.put(key, new CachedImage(inspect.getId(), clock.getAsLong()));
+                return true;
+            } catch (NotFoundException ex) {
+                images.remove(key);
+                return false;
+            }
+        }
+
+        /**
+         * Image was pulled by plugin.
+         */
+        public void imagePulled(@Nonnull String imageName) {
+            images.put(normalize(imageName), new CachedImage(null, clock.getAsLong()));
+            evicted.remove(normalize(imageName));
+        }
+
+        /**
+         * Provisioning is going to start container from image.
+         */
+        public void used(@Nonnull String imageName) {
+            lastUsed.put(normalize(imageName), clock.getAsLong());
+            evicted.remove(normalize(imageName));
+        }
+
+        /**
+         * @return last use time or 0 when image wasn't used since start.
+         */
+        public long getLastUsed(@Nonnull String imageName) {
+            return lastUsed.getOrDefault(normalize(imageName), 0L);
+        }
+
+        /**
+         * @return normalized names of images used since start.
+         */
+        @Nonnull
+        public Set<String> getUsedImages() {
+            return Collections.unmodifiableSet(lastUsed.keySet());
+        }
+
+        /**
+         * Image was removed by garbage collection, background pre-pull must not bring it back.
+         */
+        public void evicted(@Nonnull String imageName) {
+            final String key = normalize(imageName);
+            evicted.add(key);
+            images.remove(key);
+            refreshedAt.remove(key);
+        }
+
+        public boolean wasEvicted(@Nonnull String imageName) {
+            return evicted.contains(normalize(imageName));
+        }
+
+        /**
+         * Image was pulled or checked by background pre-pull.
+         */
+        public void refreshed(@Nonnull String imageName) {
+            refreshedAt.put(normalize(imageName), clock.getAsLong());
+        }
+
+        /**
+         * @return true when image was refreshed by background pre-pull within {@link #REFRESH_WINDOW}.
+         */
+        public boolean isRefreshed(@Nonnull String imageName) {
+            final Long at = refreshedAt.get(normalize(imageName));
+            return nonNull(at) && clock.getAsLong() - at < REFRESH_WINDOW;
+        }
+
+        /**
+         * Runs pull unless the same image is being pulled on this host (waits for it and shares its result)
+         * or was pulled within {@link #RECENT_PULL}.
+         *
+         * @return true when this call pulled image.
+         */
+        public boolean pull(@Nonnull String imageName, @Nonnull SingleFlight.Action pullAction) throws IOException {
+            final String key = normalize(imageName);
+            final boolean pulled = pulls.run(key, pullAction);
+            if (pulled) {
+                imagePulled(imageName);
+            }
+            return pulled;
+        }
+
+        /**
+         * Forgets image, next lookup will inspect it.
+         */
+        public void invalidate(@Nonnull String imageName) {
+            images.remove(normalize(imageName));
+        }
+
+        private void onEvent(Event event) {
+            final String id = event.getId();
+            final String status = event.getStatus();
+            if (isNull(id) || isNull(status)) {
+                return;
+            }
+
+            final String name = nameOf(event);
+            switch (status) {
+                case "pull":
+                    images.put(normalize(id), new CachedImage(null, clock.getAsLong()));
+                    break;
+                case "tag":
+                    if (nonNull(name)) {
+                        images.put(normalize(name), new CachedImage(id, clock.getAsLong()));
+                    }
+                    break;
+                case "untag":
+                case "delete":
+                    forgetRemoved(id, name);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /**
+         * Untag/delete events carry image id and usually the removed name. Entries from pull events don't know
+         * image id, they are dropped only when event has no name.
+         */
+        private void forgetRemoved(@Nonnull String id, @CheckForNull String name) {
+            final Set<String> removed = new HashSet<>();
+            if (nonNull(name)) {
+                removed.add(normalize(name));
+            }
+            images.forEach((key, image) -> {
+                if (id.equals(image.imageId) || (isNull(name) && isNull(image.imageId))) {
+                    removed.add(key);
+                }
+            });
+
+            for (String key : removed) {
+                images.remove(key);
+                pulls.forget(key);
+                refreshedAt.remove(key);
+            }
+        }
+
+        @CheckForNull
+        private String nameOf(Event event) {
+            if (isNull(event.getActor()) || isNull(event.getActor().getAttributes())) {
+                return null;
+            }
+            return event.getActor().getAttributes().get("name");
+        }
+
+        /**
+         * Opens stream unless it is opened or being opened. Hung daemon blocks only the opening thread,
+         * other lookups fall back to inspect.
+         */
+        private void ensureEventsStream() {
+            final long closeCountBefore;
+            synchronized (streamLock) {
+                if (nonNull(eventsCallback) || opening) {
+                    return;
+                }
+                opening = true;
+                closeCountBefore = closeCount;
+
+                ACTIVE.add(DockerImageCache.this);
+                // entries could miss events while stream was down
+                images.clear();
+            }
+
+            ImageEventsCallback callback = null;
+            try {
+                final String since = String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+                callback = clientSupplier.get().eventsCmd()
+                        .withSince(since)
+                        .withEventFilter("pull", "tag", "untag", "delete")
+                        .exec(new ImageEventsCallback(this));
+            } finally {
+                final boolean installed;
+                synchronized (streamLock) {
+                    opening = false;
+                    installed = nonNull(callback) && !callback.finished && closeCount == closeCountBefore;
+                    if (installed) {
+                        eventsCallback = callback;
+                    }
+                }
+
+                if (installed) {
+                    LOG.debug("Opened image events stream for cloud '{}' on '{}'", cloudName, host);
+                } else if (nonNull(callback)) {
+                    closeQuietly(callback);
+                }
+            }
+        }
+
+        private void streamClosed(EventsResultCallback callback) {
+            synchronized (streamLock) {
+                if (eventsCallback == callback) {
+                    eventsCallback = null;
+                }
+            }
+        }
+
+        private void close() {
+            final EventsResultCallback callback;
+            synchronized (streamLock) {
+                callback = eventsCallback;
+                eventsCallback = null;
+                closeCount++;
+            }
+            images.clear();
+            pulls.forgetAll();
+            refreshedAt.clear();
+
+            if (nonNull(callback)) {
+                closeQuietly(callback);
+            }
+        }
+
+        private void closeQuietly(EventsResultCallback callback) {
+            try {
+                callback.close();
+            } catch (IOException e) {
+                LOG.debug("Can't close image events stream for cloud '{}' on '{}'", cloudName, host, e);
+            }
+        }
+    }
+
+    private class ImageEventsCallback extends EventsResultCallback {
+        private final HostImages hostImages;
+
+        /**
+         * Set before stream state is cleared, so stream that ended while being opened is not installed.
+         */
+        private volatile boolean finished = false;
+
+        ImageEventsCallback(HostImages hostImages) {
+            this.hostImages = hostImages;
+        }
+
+        @Override
+        public void onNext(Event event) {
+            try {
+                hostImages.onEvent(event);
+            } catch (Exception ex) {
+                LOG.warn("Can't process image event {} for cloud '{}'", event, cloudName, ex);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOG.warn("Image events stream for cloud '{}' on '{}' failed, image cache will be rebuilt",
+                    cloudName, hostImages.host, throwable);
+            finished = true;
+            hostImages.streamClosed(this);
+            super.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            LOG.debug("Image events stream for cloud '{}' on '{}' completed", cloudName, hostImages.host);
+            finished = true;
+            hostImages.streamClosed(this);
+            super.onComplete();
+        }
+    }
+}
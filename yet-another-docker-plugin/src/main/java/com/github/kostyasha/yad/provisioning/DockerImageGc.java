@@ -0,0 +1,86 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Chooses images to remove from docker host whose images take more disk than budget.
+ * Callers pass only removable candidates: images of cloud templates that are not pinned and not used
+ * by any container. Least recently used go first, recently used are never chosen. Freed disk is estimated
+ * with unique sizes, so callers measure usage again after removal.
+ */
+public final class DockerImageGc {
+    /**
+     * Image used within this time may be going to be run by provisioning right now.
+     */
+    public static final long GRACE = MINUTES.toMillis(10);
+
+    private DockerImageGc() {
+    }
+
+    /**
+     * @param usage  disk taken by all image layers of host, shared layers counted once
+     * @param budget allowed disk
+     * @return candidates to remove in removal order, enough to get under budget when possible.
+     */
+    @Nonnull
+    public static List<Candidate> select(@Nonnull List<Candidate> candidates, long usage, long budget, long now) {
+        final List<Candidate> selected = new ArrayList<>();
+        if (usage <= budget) {
+            return selected;
+        }
+
+        final List<Candidate> lru = new ArrayList<>(candidates);
+        lru.sort(Comparator.comparingLong(Candidate::getLastUsed));
+
+        long remaining = usage;
+        for (Candidate candidate : lru) {
+            if (remaining <= budget) {
+                break;
+            }
+            if (now - candidate.getLastUsed() < GRACE) {
+                continue;
+            }
+            selected.add(candidate);
+            remaining -= candidate.getSize();
+        }
+        return selected;
+    }
+
+    /**
+     * Image that may be removed.
+     */
+    public static final class Candidate {
+        private final String name;
+        private final long size;
+        private final long lastUsed;
+
+        /**
+         * @param name     image id to remove
+         * @param size     disk freed by removal, layers shared with other images are not counted
+         * @param lastUsed last use by provisioning or 0 when unknown
+         */
+        public Candidate(@Nonnull String name, long size, long lastUsed) {
+            this.name = name;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Removes least recently used images from docker hosts that exceed image disk budget,
+ * see {@link DockerCloud#collectImages()}.
+ */
+@Extension
+public class DockerImageGcWork extends AsyncPeriodicWork {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerImageGcWork.class);
+
+    public DockerImageGcWork() {
+        super("YAD image garbage collection");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MINUTES.toMillis(10);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (DockerCloud cloud : getDockerClouds()) {
+            try {
+                cloud.collectImages();
+            } catch (Exception ex) {
+                LOG.warn("Can't collect images for cloud '{}'", cloud.getDisplayName(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Pre-pulls and refreshes template images of every {@link DockerCloud} off the provisioning path,
+ * see {@link DockerCloud#prePullImages()}. May be disabled with {@code <class name>.disabled} system property.
+ */
+@Extension
+public class DockerImagePrePullWork extends AsyncPeriodicWork {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerImagePrePullWork.class);
+
+    static final String DISABLED_PROPERTY = DockerImagePrePullWork.class.getName() + ".disabled";
+
+    public DockerImagePrePullWork() {
+        super("YAD image pre-pull");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MINUTES.toMillis(10);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        if (Boolean.getBoolean(DISABLED_PROPERTY)) {
+            return;
+        }
+
+        final List<CompletableFuture<Void>> clouds = new ArrayList<>();
+        for (DockerCloud cloud : getDockerClouds()) {
+            try {
+                clouds.add(cloud.prePullImages());
+            } catch (Exception ex) {
+                LOG.warn("Can't pre-pull images for cloud '{}'", cloud.getDisplayName(), ex);
+            }
+        }
+
+        // next run must not overlap with this one
+        for (CompletableFuture<Void> cloud : clouds) {
+            try {
+                cloud.join();
+            } catch (CompletionException ignore) {
+                // already logged per image
+            }
+        }
+    }
+}
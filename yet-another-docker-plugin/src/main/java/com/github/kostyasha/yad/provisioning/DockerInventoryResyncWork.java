@@ -0,0 +1,58 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.client.DockerClientRegistry;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Periodically resyncs {@link DockerContainerInventory} of every {@link DockerCloud} with its docker hosts
+ * and closes event streams (container inventory and image cache) and docker clients of clouds that were removed
+ * or replaced by configuration save.
+ */
+@Extension
+public class DockerInventoryResyncWork extends AsyncPeriodicWork {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerInventoryResyncWork.class);
+
+    public DockerInventoryResyncWork() {
+        super("YAD container inventory resync");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return MINUTES.toMillis(1);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        final List<DockerContainerInventory> live = new ArrayList<>();
+        final List<DockerImageCache> liveImageCaches = new ArrayList<>();
+        final List<DockerConnector> liveConnectors = new ArrayList<>();
+
+        for (DockerCloud cloud : getDockerClouds()) {
+            final DockerContainerInventory inventory = cloud.getInventory();
+            live.add(inventory);
+            liveImageCaches.add(cloud.getImageCache());
+            liveConnectors.addAll(cloud.getConnectors());
+            try {
+                inventory.resync();
+            } catch (Exception ex) {
+                LOG.warn("Can't resync container inventory for cloud '{}'", cloud.getDisplayName(), ex);
+            }
+        }
+
+        DockerContainerInventory.closeAllExcept(live);
+        DockerImageCache.closeAllExcept(liveImageCaches);
+        DockerClientRegistry.evictAllExcept(liveConnectors);
+    }
+}
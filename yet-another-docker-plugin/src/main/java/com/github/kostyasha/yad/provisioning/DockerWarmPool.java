@@ -0,0 +1,268 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerSlaveTemplate;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectContainerResponse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static java.util.Objects.isNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Per-cloud pool of created, started and ready for launch containers.
+ * <p>
+ * {@link com.github.kostyasha.yad.DockerCloud#provision} takes containers from pool first,
+ * {@link DockerWarmPoolWork} refills it up to template's min idle and grows it to max idle
+ * when pool was drained since previous refill.
+ */
+public class DockerWarmPool {
+    /**
+     * Containers that were handed out from any pool and are turning into slaves now.
+     * containerId -> claim time. Prevents adopting them back as orphans.
+     */
+    private static final ConcurrentHashMap<String, Long> CLAIMED = new ConcurrentHashMap<>();
+
+    private static final long CLAIM_TTL = MINUTES.toMillis(10);
+
+    /**
+     * templateId -> ready containers
+     */
+    private final ConcurrentHashMap<String, ConcurrentLinkedDeque<WarmContainer>> pools = new ConcurrentHashMap<>();
+
+    /**
+     * templateId -> containers being created for pool
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> creating = new ConcurrentHashMap<>();
+
+    /**
+     * templateId -> containers taken since last refill
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> taken = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean refilling = new AtomicBoolean(false);
+
+    private final AtomicBoolean adopted = new AtomicBoolean(false);
+
+    /**
+     * Only one refill may run at time, otherwise both would count the same missing containers.
+     *
+     * @return true if caller may refill pool and must call {@link #finishRefill()} after.
+     */
+    public boolean startRefill() {
+        return refilling.compareAndSet(false, true);
+    }
+
+    public void finishRefill() {
+        refilling.set(false);
+    }
+
+    /**
+     * @return true only for first call, orphan containers are adopted once per pool.
+     */
+    public boolean startAdoption() {
+        return adopted.compareAndSet(false, true);
+    }
+
+    /**
+     * @param alive check that container still runs, local only
+     * @return ready container or null if pool is empty.
+     */
+    @CheckForNull
+    public WarmContainer poll(@Nonnull DockerSlaveTemplate template, @Nonnull Predicate<String> alive) {
+        final ConcurrentLinkedDeque<WarmContainer> pool = pools.get(template.getId());
+        if (isNull(pool)) {
+            return null;
+        }
+
+        WarmContainer container;
+        while ((container = pool.pollFirst()) != null) {
+            if (alive.test(container.getContainerId())) {
+                CLAIMED.put(container.getContainerId(), System.currentTimeMillis());
+                counter(taken, template.getId()).incrementAndGet();
+                return container;
+            }
+        }
+
+        return null;
+    }
+
+    public void add(@Nonnull DockerSlaveTemplate template, @Nonnull WarmContainer container) {
+        pools.computeIfAbsent(template.getId(), k -> new ConcurrentLinkedDeque<>()).addLast(container);
+    }
+
+    public boolean contains(@Nonnull String containerId) {
+        for (ConcurrentLinkedDeque<WarmContainer> pool : pools.values()) {
+            for (WarmContainer container : pool) {
+                if (container.getContainerId().equals(containerId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of ready containers for template.
+     */
+    public int size(@Nonnull DockerSlaveTemplate template) {
+        final ConcurrentLinkedDeque<WarmContainer> pool = pools.get(template.getId());
+        return isNull(pool) ? 0 : pool.size();
+    }
+
+    /**
+     * Drops containers that died and containers of removed templates.
+     *
+     * @return dropped containers that still may need clean-up.
+     */
+    @Nonnull
+    public List<WarmContainer> prune(@Nonnull List<DockerSlaveTemplate> templates, @Nonnull Predicate<String> alive) {
+        final List<WarmContainer> dropped = new ArrayList<>();
+
+        pools.forEach((templateId, pool) -> {
+            final boolean templateExists = templates.stream().anyMatch(t -> t.getId().equals(templateId));
+            pool.removeIf(container -> {
+                if (!templateExists || !alive.test(container.getContainerId())) {
+                    dropped.add(container);
+                    return true;
+                }
+                return false;
+            });
+        });
+
+        return dropped;
+    }
+
+    /**
+     * Removes containers above template's max idle.
+     *
+     * @return containers that must be removed from docker host.
+     */
+    @Nonnull
+    public List<WarmContainer> trim(@Nonnull DockerSlaveTemplate template) {
+        final List<WarmContainer> extra = new ArrayList<>();
+        final ConcurrentLinkedDeque<WarmContainer> pool = pools.get(template.getId());
+        if (isNull(pool)) {
+            return extra;
+        }
+
+        WarmContainer container;
+        while (pool.size() > template.getPoolMaxIdle() && (container = pool.pollLast()) != null) {
+            extra.add(container);
+        }
+        return extra;
+    }
+
+    /**
+     * How many containers should be created now. Pool is filled up to min idle and grows up to max idle
+     * by number of containers taken since previous call.
+     */
+    public int missing(@Nonnull DockerSlaveTemplate template) {
+        final int minIdle = template.getPoolMinIdle();
+        if (minIdle <= 0) {
+            return 0;
+        }
+
+        final int recentlyTaken = counter(taken, template.getId()).getAndSet(0);
+        final int target = Math.min(minIdle + recentlyTaken, template.getPoolMaxIdle());
+
+        return Math.max(0, target - size(template) - creating(template).get());
+    }
+
+    /**
+     * Counter of containers being created for pool.
+     */
+    @Nonnull
+    public AtomicInteger creating(@Nonnull DockerSlaveTemplate template) {
+        return counter(creating, template.getId());
+    }
+
+    private static AtomicInteger counter(ConcurrentHashMap<String, AtomicInteger> map, String templateId) {
+        return map.computeIfAbsent(templateId, k -> new AtomicInteger());
+    }
+
+    /**
+     * What to do with pooled container found on docker host that this pool doesn't know (i.e. after restart).
+     *
+     * @param template template from container label or null when template was removed
+     * @param owned    ids of containers that already belong to slaves
+     */
+    @Nonnull
+    public Adoption adoption(@Nonnull String containerId, @CheckForNull DockerSlaveTemplate template,
+                             @Nonnull Set<String> owned) {
+        if (owned.contains(containerId) || contains(containerId) || isClaimed(containerId)) {
+            return Adoption.SKIP;
+        }
+        if (isNull(template) || template.getPoolMinIdle() <= 0) {
+            return Adoption.REMOVE;
+        }
+        return Adoption.ADOPT;
+    }
+
+    public enum Adoption {
+        /**
+         * Container is in use or already pooled.
+         */
+        SKIP,
+        ADOPT,
+        /**
+         * Template was removed or doesn't use pool anymore.
+         */
+        REMOVE
+    }
+
+    /**
+     * @return true when container was recently handed out from some pool.
+     */
+    public static boolean isClaimed(@Nonnull String containerId) {
+        final long now = System.currentTimeMillis();
+        CLAIMED.values().removeIf(claimedAt -> now - claimedAt > CLAIM_TTL);
+        return CLAIMED.containsKey(containerId);
+    }
+
+    /**
+     * Container that passed pull, create, start and wait up steps.
+     */
+    public static class WarmContainer {
+        private final String containerId;
+        private final InspectContainerResponse inspect;
+        private final String host;
+        private final long createdAt = System.currentTimeMillis();
+
+        public WarmContainer(@Nonnull InspectContainerResponse inspect, @Nonnull String host) {
+            this.containerId = inspect.getId();
+            this.inspect = inspect;
+            this.host = host;
+        }
+
+        @Nonnull
+        public String getContainerId() {
+            return containerId;
+        }
+
+        @Nonnull
+        public InspectContainerResponse getInspect() {
+            return inspect;
+        }
+
+        /**
+         * @return server url of docker host that runs container.
+         */
+        @Nonnull
+        public String getHost() {
+            return host;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.kostyasha.yad.utils.DockerFunctions.getDockerClouds;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Background refiller for {@link DockerWarmPool} of every {@link DockerCloud}.
+ */
+@Extension
+public class DockerWarmPoolWork extends AsyncPeriodicWork {
+    private static final Logger LOG = LoggerFactory.getLogger(DockerWarmPoolWork.class);
+
+    public DockerWarmPoolWork() {
+        super("YAD warm pool refill");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return SECONDS.toMillis(15);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        for (DockerCloud cloud : getDockerClouds()) {
+            try {
+                cloud.refillWarmPool();
+            } catch (Exception ex) {
+                LOG.warn("Can't refill warm pool for cloud '{}'", cloud.getDisplayName(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.kostyasha.yad.provisioning;
+
+/**
+ * Limits of one docker host and what running containers already take from them. 0 limit means unlimited.
+ */
+public final class HostBudget {
+    private final int cap;
+    private final int running;
+    private final long memory;
+    private final long runningMemory;
+    private final long cpuShares;
+    private final long runningCpuShares;
+
+    /**
+     * @param cap              max containers on host
+     * @param running          containers running on host
+     * @param memory           memory budget of host in bytes
+     * @param runningMemory    memory limits of running containers
+     * @param cpuShares        cpu shares budget of host
+     * @param runningCpuShares cpu shares of running containers
+     */
+    public HostBudget(int cap, int running, long memory, long runningMemory, long cpuShares, long runningCpuShares) {
+        this.cap = cap;
+        this.running = running;
+        this.memory = memory;
+        this.runningMemory = runningMemory;
+        this.cpuShares = cpuShares;
+        this.runningCpuShares = runningCpuShares;
+    }
+
+    public static HostBudget ofCap(int cap, int running) {
+        return new HostBudget(cap, running, 0, 0, 0, 0);
+    }
+
+    /**
+     * @return true when one more container fits together with already reserved ones.
+     */
+    boolean fits(int reserved, long reservedMemory, long reservedCpuShares, ContainerResources resources) {
+        if (cap != 0 && running + reserved >= cap) {
+            return false;
+        }
+        if (memory != 0 && runningMemory + reservedMemory + resources.getMemory() > memory) {
+            return false;
+        }
+        return cpuShares == 0 || runningCpuShares + reservedCpuShares + resources.getCpuShares() <= cpuShares;
+    }
+}
@@ -0,0 +1,175 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Failure tracker for provisioning, keyed by template id or docker host.
+ * <p>
+ * {@link State#CLOSED} key is used freely. After threshold of consecutive failures key becomes {@link State#OPEN}
+ * and is skipped until jittered exponential backoff passes. Then it is {@link State#HALF_OPEN}: only one probe
+ * provisioning is allowed, its success closes key and its failure opens it again with longer backoff.
+ * Caller that got permission with {@link #tryAcquire(String)} must report {@link #success(String)},
+ * {@link #failure(String)} or {@link #release(String)} when permission wasn't used.
+ */
+public class ProvisioningCircuitBreaker {
+    public static final long DEFAULT_BASE_BACKOFF = SECONDS.toMillis(10);
+    public static final long DEFAULT_MAX_BACKOFF = MINUTES.toMillis(10);
+    public static final int DEFAULT_THRESHOLD = 2;
+
+    /**
+     * Probe that never reported back (i.e. lost future) doesn't block key forever.
+     */
+    private static final long PROBE_TIMEOUT = MINUTES.toMillis(30);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final ConcurrentHashMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    private final int threshold;
+    private final long baseBackoff;
+    private final long maxBackoff;
+    private final LongSupplier clock;
+
+    public ProvisioningCircuitBreaker() {
+        this(DEFAULT_THRESHOLD, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF, System::currentTimeMillis);
+    }
+
+    public ProvisioningCircuitBreaker(int threshold, long baseBackoff, long maxBackoff, @Nonnull LongSupplier clock) {
+        this.threshold = threshold;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.clock = clock;
+    }
+
+    /**
+     * Doesn't change state, may be used for filtering.
+     *
+     * @return true when {@link #tryAcquire(String)} would most probably succeed.
+     */
+    public boolean isAvailable(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        return isNull(breaker) || breaker.isAvailable(clock.getAsLong());
+    }
+
+    /**
+     * @return true when key may be used now. In half-open state only one caller gets permission.
+     */
+    public boolean tryAcquire(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        return isNull(breaker) || breaker.tryAcquire(clock.getAsLong());
+    }
+
+    /**
+     * Permission from {@link #tryAcquire(String)} wasn't used, i.e. capacity was reached.
+     */
+    public void release(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        if (!isNull(breaker)) {
+            breaker.release();
+        }
+    }
+
+    public void success(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        if (!isNull(breaker)) {
+            breaker.success();
+        }
+    }
+
+    public void failure(@Nonnull String key) {
+        breakers.computeIfAbsent(key, k -> new Breaker()).failure(clock.getAsLong());
+    }
+
+    @Nonnull
+    public State getState(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        return isNull(breaker) ? State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * @return millis until open key may be probed, 0 when it may be used now.
+     */
+    public long getRetryIn(@Nonnull String key) {
+        final Breaker breaker = breakers.get(key);
+        return isNull(breaker) ? 0 : breaker.getRetryIn(clock.getAsLong());
+    }
+
+    /**
+     * Equal jitter: half of backoff is fixed, half is random, so many templates failing
+     * at once don't retry in the same tick.
+     */
+    private long backoff(int failures) {
+        final int exponent = Math.min(failures - threshold, 30);
+        final long backoff = Math.min(maxBackoff, baseBackoff << Math.max(0, exponent));
+        final long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    private final class Breaker {
+        private State state = State.CLOSED;
+        private int failures = 0;
+        private long retryAt = 0;
+        private long probeStartedAt = 0;
+        private boolean probing = false;
+
+        synchronized boolean isAvailable(long now) {
+            switch (state) {
+                case OPEN:
+                    return now >= retryAt;
+                case HALF_OPEN:
+                    return !probing || now - probeStartedAt > PROBE_TIMEOUT;
+                default:
+                    return true;
+            }
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            if (!isAvailable(now)) {
+                return false;
+            }
+
+            if (state != State.CLOSED) {
+                state = State.HALF_OPEN;
+                probing = true;
+                probeStartedAt = now;
+            }
+            return true;
+        }
+
+        synchronized void release() {
+            probing = false;
+        }
+
+        synchronized void success() {
+            state = State.CLOSED;
+            failures = 0;
+            probing = false;
+        }
+
+        synchronized void failure(long now) {
+            failures++;
+            probing = false;
+            if (state == State.HALF_OPEN || failures >= threshold) {
+                state = State.OPEN;
+                retryAt = now + backoff(failures);
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized long getRetryIn(long now) {
+            return state == State.OPEN ? Math.max(0, retryAt - now) : 0;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Exponential moving average of time from provisioning start to created slave, per template.
+ */
+public class ProvisioningLatency {
+    /**
+     * Weight of the newest sample.
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * templateId -> average millis, 0 when nothing was measured yet
+     */
+    private final ConcurrentHashMap<String, AtomicLong> averages = new ConcurrentHashMap<>();
+
+    public void record(@Nonnull String templateId, long millis) {
+        final AtomicLong average = averages.computeIfAbsent(templateId, k -> new AtomicLong());
+        average.accumulateAndGet(millis, (prev, sample) ->
+                prev == 0 ? sample : Math.round(ALPHA * sample + (1 - ALPHA) * prev));
+    }
+
+    /**
+     * @return average provisioning time in millis or 0 when unknown.
+     */
+    public long get(@Nonnull String templateId) {
+        final AtomicLong average = averages.get(templateId);
+        return isNull(average) ? 0 : average.get();
+    }
+}
@@ -0,0 +1,323 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.StageMetrics.Outcome;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Runs provisioning of one cloud as chain of {@link ProvisioningStage}s on dedicated executor,
+ * so slow docker hosts never hold threads of {@link hudson.model.Computer#threadPoolForRemoting}.
+ * <p>
+ * Every stage has own concurrency limit per docker host. Task waiting for free slot is queued without
+ * holding thread, so slow pull on one host doesn't delay other hosts or other stages. Stage that runs longer
+ * than its timeout fails with {@link TimeoutException} and its thread is interrupted.
+ * <p>
+ * Blocking docker calls may ignore interrupt, so timed out task frees its slot and its thread is counted as lost
+ * until call returns. Executor has no fixed size: threads are bounded by stage limits of hosts in use, and by
+ * at most the same number of lost threads per stage and host, so hung host can't starve other hosts.
+ * Stage metrics are shown by {@link com.github.kostyasha.yad.action.DockerApiMetricsAction}.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class ProvisioningPipeline {
+    private static final Logger LOG = LoggerFactory.getLogger(ProvisioningPipeline.class);
+
+    /**
+     * Shared by all clouds, stage limiters bound its usage per host.
+     */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, SECONDS,
+            new SynchronousQueue<>(), new NamingThreadFactory(new DaemonThreadFactory(), "YAD provisioning"));
+
+    private final String cloudName;
+
+    /**
+     * stage + host -> limiter
+     */
+    private final ConcurrentHashMap<String, StageLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final Map<ProvisioningStage, StageMetrics> metrics;
+
+    private final ToLongFunction<ProvisioningStage> timeouts;
+
+    public ProvisioningPipeline(@Nonnull String cloudName) {
+        this(cloudName, ProvisioningStage::getTimeoutMillis);
+    }
+
+    /**
+     * @param timeouts stage -> timeout in millis, tests use short ones
+     */
+    ProvisioningPipeline(@Nonnull String cloudName, @Nonnull ToLongFunction<ProvisioningStage> timeouts) {
+        this.cloudName = cloudName;
+        this.timeouts = timeouts;
+        final Map<ProvisioningStage, StageMetrics> map = new EnumMap<>(ProvisioningStage.class);
+        for (ProvisioningStage stage : ProvisioningStage.values()) {
+            map.put(stage, new StageMetrics(stage));
+        }
+        this.metrics = Collections.unmodifiableMap(map);
+    }
+
+    @Exported
+    public String getCloudName() {
+        return cloudName;
+    }
+
+    /**
+     * Executor of pipeline threads, for short follow-up work like clean-up of failed provisioning.
+     */
+    @Nonnull
+    public static Executor getExecutor() {
+        return EXECUTOR;
+    }
+
+    @Nonnull
+    public Map<ProvisioningStage, StageMetrics> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return metrics of all stages in provisioning order.
+     */
+    @Exported(inline = true)
+    public List<StageMetrics> getStages() {
+        return new ArrayList<>(metrics.values());
+    }
+
+    @Nonnull
+    public <T> CompletableFuture<T> stage(@Nonnull ProvisioningStage stage, @Nonnull String host,
+                                          @Nonnull Callable<T> task) {
+        return stage(stage, host, task, null);
+    }
+
+    /**
+     * Schedules stage task on host.
+     *
+     * @param lateResult cleans up result of task that completed after timeout, i.e. removes created container
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> stage(@Nonnull ProvisioningStage stage, @Nonnull String host,
+                                          @Nonnull Callable<T> task, @CheckForNull Consumer<T> lateResult) {
+        return submit(stage, host, task, lateResult, false);
+    }
+
+    /**
+     * Schedules background task, i.e. image pre-pull, with lower priority than provisioning. It starts only
+     * when no provisioning task of stage waits on host, one at a time, and leaves slot for provisioning.
+     */
+    @Nonnull
+    public <T> CompletableFuture<T> background(@Nonnull ProvisioningStage stage, @Nonnull String host,
+                                               @Nonnull Callable<T> task) {
+        return submit(stage, host, task, null, true);
+    }
+
+    private <T> CompletableFuture<T> submit(ProvisioningStage stage, String host, Callable<T> task,
+                                            @CheckForNull Consumer<T> lateResult, boolean background) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final StageMetrics stageMetrics = metrics.get(stage);
+        stageMetrics.queued();
+
+        final StageLimiter limiter = limiters.computeIfAbsent(stage.name() + " " + host,
+                k -> new StageLimiter(stage.getConcurrency()));
+        limiter.submit(slot -> runStage(stage, host, task, lateResult, result, stageMetrics, slot), background);
+
+        return result;
+    }
+
+    private <T> void runStage(ProvisioningStage stage, String host, Callable<T> task, @CheckForNull Consumer<T> lateResult,
+                              CompletableFuture<T> result, StageMetrics stageMetrics, Slot slot) {
+        stageMetrics.started();
+        final long started = System.currentTimeMillis();
+        final Thread worker = Thread.currentThread();
+        final Object interruptLock = new Object();
+        final boolean[] running = {true};
+
+        final long timeoutMillis = timeouts.applyAsLong(stage);
+        final ScheduledFuture<?> timeout = Timer.get().schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("Stage " + stage + " on '" + host + "' for cloud '" +
+                    cloudName + "' didn't finish in " + timeoutMillis + " ms"))) {
+                LOG.warn("Stage {} on '{}' for cloud '{}' timed out, interrupting", stage, host, cloudName);
+                synchronized (interruptLock) {
+                    if (running[0]) {
+                        worker.interrupt();
+                        // interrupt may be ignored by blocking read, queued tasks must not wait for it
+                        if (slot.abandon()) {
+                            stageMetrics.lost();
+                        }
+                    }
+                }
+            }
+        }, timeoutMillis, MILLISECONDS);
+
+        Outcome outcome = Outcome.SUCCEEDED;
+        try {
+            final T value = task.call();
+            if (!result.complete(value)) {
+                outcome = Outcome.TIMED_OUT;
+                if (nonNull(lateResult)) {
+                    lateResult.accept(value);
+                }
+            }
+        } catch (Throwable t) {
+            outcome = result.completeExceptionally(t) ? Outcome.FAILED : Outcome.TIMED_OUT;
+        } finally {
+            timeout.cancel(false);
+            synchronized (interruptLock) {
+                running[0] = false;
+            }
+            // don't leak timeout interrupt to next task of pooled thread
+            Thread.interrupted();
+            if (slot.isAbandoned()) {
+                stageMetrics.returned();
+            }
+            stageMetrics.finished(System.currentTimeMillis() - started, outcome);
+        }
+    }
+
+    /**
+     * Place of running task in {@link StageLimiter}.
+     */
+    private interface Slot {
+        /**
+         * Frees slot before task finishes, unless limiter has too many lost threads already.
+         *
+         * @return true when slot was freed and thread is lost until task returns
+         */
+        boolean abandon();
+
+        boolean isAbandoned();
+    }
+
+    /**
+     * Runs at most permits tasks at once, others wait in queue without holding threads.
+     * Abandoned tasks don't count, but at most permits of them may run at once.
+     * Background tasks wait until foreground queue is empty, run one at a time and never take last free slot,
+     * unless limiter has single permit.
+     */
+    private static final class StageLimiter {
+        private final int permits;
+        private final Queue<Consumer<Slot>> queue = new ArrayDeque<>();
+        private final Queue<Consumer<Slot>> backgroundQueue = new ArrayDeque<>();
+        private int running = 0;
+        private int lost = 0;
+        private int backgroundRunning = 0;
+
+        private StageLimiter(int permits) {
+            this.permits = permits;
+        }
+
+        void submit(Consumer<Slot> task, boolean background) {
+            synchronized (this) {
+                (background ? backgroundQueue : queue).add(task);
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (true) {
+                final Consumer<Slot> next;
+                final boolean background;
+                synchronized (this) {
+                    if (running >= permits) {
+                        return;
+                    }
+                    if (!queue.isEmpty()) {
+                        next = queue.poll();
+                        background = false;
+                    } else if (!backgroundQueue.isEmpty() && backgroundRunning == 0
+                            && running < Math.max(permits - 1, 1)) {
+                        next = backgroundQueue.poll();
+                        background = true;
+                        backgroundRunning++;
+                    } else {
+                        return;
+                    }
+                    running++;
+                }
+
+                final LimiterSlot slot = new LimiterSlot(background);
+                EXECUTOR.execute(() -> {
+                    try {
+                        next.accept(slot);
+                    } finally {
+                        slot.finish();
+                    }
+                });
+            }
+        }
+
+        private final class LimiterSlot implements Slot {
+            private final boolean background;
+            private boolean abandoned = false;
+
+            private LimiterSlot(boolean background) {
+                this.background = background;
+            }
+
+            @Override
+            public boolean abandon() {
+                synchronized (StageLimiter.this) {
+                    if (abandoned || lost >= permits) {
+                        return false;
+                    }
+                    abandoned = true;
+                    lost++;
+                    release();
+                }
+                drain();
+                return true;
+            }
+
+            @Override
+            public boolean isAbandoned() {
+                synchronized (StageLimiter.this) {
+                    return abandoned;
+                }
+            }
+
+            private void finish() {
+                synchronized (StageLimiter.this) {
+                    if (abandoned) {
+                        lost--;
+                        return;
+                    }
+                    release();
+                }
+                drain();
+            }
+
+            private void release() {
+                running--;
+                if (background) {
+                    backgroundRunning--;
+                }
+            }
+        }
+    }
+}
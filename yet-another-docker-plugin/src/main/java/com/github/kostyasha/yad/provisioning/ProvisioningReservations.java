@@ -0,0 +1,308 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Counts containers that are being provisioned, but not necessarily reported yet by docker.
+ * <p>
+ * Per-cloud and per-template counters are updated with CAS, so admission is constant time and
+ * concurrent provisioning rounds never overshoot caps (racing acquire may be rejected a bit early, next
+ * provisioning round will retry it). Every successful {@link #tryAcquire} returns
+ * {@link Reservation} that must be released when provisioning ends. Reservation that was attached to
+ * dead future or wasn't renewed for max age is released by {@link #expireStale()}. Reservation may be
+ * placed on docker host, host slots are counted together with memory and cpu shares of containers.
+ */
+public class ProvisioningReservations {
+    private static final Logger LOG = LoggerFactory.getLogger(ProvisioningReservations.class);
+
+    /**
+     * Longer than all {@link ProvisioningStage} timeouts together plus the same time waiting in stage queues,
+     * so only leaked reservation expires even when provisioning renews it once.
+     */
+    public static final long DEFAULT_MAX_AGE = 2 * Arrays.stream(ProvisioningStage.values())
+            .mapToLong(ProvisioningStage::getTimeoutMillis).sum();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    /**
+     * templateId -> reserved slots
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> perTemplate = new ConcurrentHashMap<>();
+
+    /**
+     * serverUrl -> reserved slots and resources
+     */
+    private final ConcurrentHashMap<String, HostSlots> perHost = new ConcurrentHashMap<>();
+
+    private final Set<Reservation> live = ConcurrentHashMap.newKeySet();
+
+    private final long maxAgeMillis;
+
+    private final LongSupplier clock;
+
+    public ProvisioningReservations() {
+        this(DEFAULT_MAX_AGE);
+    }
+
+    public ProvisioningReservations(long maxAgeMillis) {
+        this(maxAgeMillis, System::currentTimeMillis);
+    }
+
+    ProvisioningReservations(long maxAgeMillis, @Nonnull LongSupplier clock) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return number of reserved slots in cloud.
+     */
+    public int reserved() {
+        return total.get();
+    }
+
+    /**
+     * @return number of reserved slots for template.
+     */
+    public int reserved(@Nonnull String templateId) {
+        final AtomicInteger counter = perTemplate.get(templateId);
+        return isNull(counter) ? 0 : counter.get();
+    }
+
+    /**
+     * @return number of slots placed on docker host.
+     */
+    public int reservedOnHost(@Nonnull String host) {
+        final HostSlots slots = perHost.get(host);
+        return isNull(slots) ? 0 : slots.getCount();
+    }
+
+    /**
+     * @return memory limits in bytes of slots placed on docker host.
+     */
+    public long reservedMemoryOnHost(@Nonnull String host) {
+        final HostSlots slots = perHost.get(host);
+        return isNull(slots) ? 0 : slots.getMemory();
+    }
+
+    /**
+     * @return cpu shares of slots placed on docker host.
+     */
+    public long reservedCpuSharesOnHost(@Nonnull String host) {
+        final HostSlots slots = perHost.get(host);
+        return isNull(slots) ? 0 : slots.getCpuShares();
+    }
+
+    /**
+     * Reserves one slot when running + reserved containers stay under both caps.
+     *
+     * @param templateId      template to reserve slot for
+     * @param cloudCap        max containers in cloud
+     * @param templateCap     max containers for template, 0 means unlimited
+     * @param runningCloud    containers already running in cloud
+     * @param runningTemplate containers already running for template
+     * @return reservation or null when any cap is reached
+     */
+    @CheckForNull
+    public Reservation tryAcquire(@Nonnull String templateId, int cloudCap, int templateCap,
+                                  int runningCloud, int runningTemplate) {
+        int reservedTotal;
+        do {
+            reservedTotal = total.get();
+            if (runningCloud + reservedTotal >= cloudCap) {
+                return null;
+            }
+        } while (!total.compareAndSet(reservedTotal, reservedTotal + 1));
+
+        final AtomicInteger templateCounter = counterFor(perTemplate, templateId);
+        int reservedTemplate;
+        do {
+            reservedTemplate = templateCounter.get();
+            if (templateCap != 0 && runningTemplate + reservedTemplate >= templateCap) {
+                total.decrementAndGet();
+                return null;
+            }
+        } while (!templateCounter.compareAndSet(reservedTemplate, reservedTemplate + 1));
+
+        final Reservation reservation = new Reservation(templateId);
+        live.add(reservation);
+        return reservation;
+    }
+
+    /**
+     * Releases reservations whose provisioning future is done or that weren't renewed for max age.
+     * Done future is normal end of provisioning that raced with its own release, so only age expiry is logged.
+     *
+     * @return number of expired reservations
+     */
+    public int expireStale() {
+        final long now = clock.getAsLong();
+        int expired = 0;
+        for (Reservation reservation : live) {
+            final Future<?> future = reservation.future;
+            if (nonNull(future) && future.isDone()) {
+                if (reservation.release()) {
+                    LOG.debug("Released reservation of finished provisioning for template '{}'",
+                            reservation.templateId);
+                    expired++;
+                }
+            } else if (now - reservation.renewedAt > maxAgeMillis && reservation.release()) {
+                LOG.warn("Expired leaked provisioning reservation for template '{}', not renewed for {} ms",
+                        reservation.templateId, now - reservation.renewedAt);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private static AtomicInteger counterFor(ConcurrentHashMap<String, AtomicInteger> counters, String key) {
+        return counters.computeIfAbsent(key, k -> new AtomicInteger());
+    }
+
+    /**
+     * Slots and resources placed on one docker host. Count, memory and cpu are checked together,
+     * so plain lock is used instead of CAS.
+     */
+    private static final class HostSlots {
+        private int count;
+        private long memory;
+        private long cpuShares;
+
+        synchronized boolean tryPlace(HostBudget budget, ContainerResources resources) {
+            if (!budget.fits(count, memory, cpuShares, resources)) {
+                return false;
+            }
+            count++;
+            memory += resources.getMemory();
+            cpuShares += resources.getCpuShares();
+            return true;
+        }
+
+        synchronized void release(ContainerResources resources) {
+            count--;
+            memory -= resources.getMemory();
+            cpuShares -= resources.getCpuShares();
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        synchronized long getMemory() {
+            return memory;
+        }
+
+        synchronized long getCpuShares() {
+            return cpuShares;
+        }
+    }
+
+    /**
+     * One reserved provisioning slot.
+     */
+    public final class Reservation {
+        private final String templateId;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private volatile long renewedAt = clock.getAsLong();
+
+        @CheckForNull
+        private volatile Future<?> future;
+
+        @CheckForNull
+        private volatile String host;
+
+        private ContainerResources resources = ContainerResources.NONE;
+
+        private Reservation(String templateId) {
+            this.templateId = templateId;
+        }
+
+        public String getTemplateId() {
+            return templateId;
+        }
+
+        /**
+         * Docker host that slot was placed on.
+         */
+        @CheckForNull
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Places reserved slot on docker host when running + placed containers stay under host cap
+         * and their memory and cpu shares stay in host budget. Reservation may be placed only once.
+         *
+         * @param budget    limits of host and what running containers take from them
+         * @param resources what container of this reservation will take
+         * @return true when slot was placed on host
+         */
+        public synchronized boolean placeOn(@Nonnull String host, @Nonnull HostBudget budget,
+                                            @Nonnull ContainerResources resources) {
+            if (nonNull(this.host) || isReleased()) {
+                return false;
+            }
+
+            if (!perHost.computeIfAbsent(host, k -> new HostSlots()).tryPlace(budget, resources)) {
+                return false;
+            }
+
+            this.host = host;
+            this.resources = resources;
+            return true;
+        }
+
+        /**
+         * Binds reservation to provisioning future, so it expires when future dies without release.
+         */
+        public Reservation attach(@Nonnull Future<?> future) {
+            this.future = future;
+            return this;
+        }
+
+        /**
+         * Marks provisioning as alive, called when its next stage starts after waiting in queue.
+         */
+        public void renew() {
+            renewedAt = clock.getAsLong();
+        }
+
+        /**
+         * Idempotent.
+         *
+         * @return true if this call released slot.
+         */
+        public boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+
+            live.remove(this);
+            counterFor(perTemplate, templateId).decrementAndGet();
+            total.decrementAndGet();
+            synchronized (this) {
+                if (nonNull(host)) {
+                    perHost.get(host).release(resources);
+                }
+            }
+            return true;
+        }
+
+        public boolean isReleased() {
+            return released.get();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.github.kostyasha.yad.provisioning;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Steps of container provisioning, see {@link ProvisioningPipeline}.
+ * Concurrency per docker host and timeout may be overridden with system properties
+ * {@code com.github.kostyasha.yad.provisioning.ProvisioningStage.<STAGE>.concurrency} and {@code .timeoutMinutes}.
+ */
+public enum ProvisioningStage {
+    /**
+     * Image pull, heavy for network and disk.
+     */
+    PULL(2, 30),
+    /**
+     * Container create and start.
+     */
+    RUN(4, 2),
+    INSPECT(8, 1),
+    /**
+     * Launcher specific wait until container accepts connections, i.e. SSH polling.
+     */
+    WAIT_UP(10, 5),
+    /**
+     * Launcher preparation and slave creation.
+     */
+    LAUNCHER(10, 1);
+
+    private final int concurrency;
+    private final long timeoutMillis;
+
+    ProvisioningStage(int concurrency, int timeoutMinutes) {
+        final String prefix = ProvisioningStage.class.getName() + "." + name();
+        this.concurrency = Math.max(1, Integer.getInteger(prefix + ".concurrency", concurrency));
+        this.timeoutMillis = MINUTES.toMillis(Integer.getInteger(prefix + ".timeoutMinutes", timeoutMinutes));
+    }
+
+    /**
+     * @return max tasks of this stage running at once for one docker host.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.CheckForNull;
+
+import static java.util.Objects.isNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Extrapolates queue length from {@link hudson.model.LoadStatistics} history.
+ * Trend is least squares slope over the last minute of 10 seconds samples.
+ */
+public final class QueueTrend {
+    /**
+     * Period of {@code sec10} time series.
+     */
+    public static final long TICK_MILLIS = SECONDS.toMillis(10);
+
+    /**
+     * Samples used for slope, one minute.
+     */
+    public static final int SAMPLES = 6;
+
+    /**
+     * Don't look further than this, trend of one minute says nothing about next hour.
+     */
+    public static final long MAX_LOOKAHEAD_MILLIS = MINUTES.toMillis(5);
+
+    private QueueTrend() {
+    }
+
+    /**
+     * @param newestFirst queue length history as returned by {@link hudson.model.TimeSeries#getHistory()}
+     * @return growth of queue per tick, positive when queue grows
+     */
+    public static double slope(@CheckForNull float[] newestFirst, int samples) {
+        if (isNull(newestFirst)) {
+            return 0;
+        }
+
+        final int n = Math.min(samples, newestFirst.length);
+        if (n < 2) {
+            return 0;
+        }
+
+        // x grows with time, newest sample has the biggest x
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        for (int x = 0; x < n; x++) {
+            final double y = newestFirst[n - 1 - x];
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+
+        return (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+    }
+
+    /**
+     * @param queueLength     current queue length
+     * @param newestFirst     queue length history
+     * @param lookaheadMillis how far to look, usually provisioning latency
+     * @return expected queue length after lookahead, never less than current
+     */
+    public static int forecast(int queueLength, @CheckForNull float[] newestFirst, long lookaheadMillis) {
+        if (lookaheadMillis <= 0) {
+            return queueLength;
+        }
+
+        final double slope = slope(newestFirst, SAMPLES);
+        if (slope <= 0) {
+            return queueLength;
+        }
+
+        final double ticks = Math.min(lookaheadMillis, MAX_LOOKAHEAD_MILLIS) / (double) TICK_MILLIS;
+        return Math.max(queueLength, (int) Math.ceil(queueLength + slope * ticks));
+    }
+}
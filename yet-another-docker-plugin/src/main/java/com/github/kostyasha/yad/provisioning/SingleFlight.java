@@ -0,0 +1,118 @@
+package com.github.kostyasha.yad.provisioning;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+import static com.github.kostyasha.yad_docker_java.com.google.common.base.Throwables.propagateIfPossible;
+import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+
+/**
+ * Coalesces concurrent actions with the same key into one in-flight action, whose result all callers share.
+ * Successful action is not repeated for the same key during short window.
+ * <p>
+ * Waiters share failure of leader too, including its interruption by stage timeout.
+ */
+public class SingleFlight<K> {
+    private final ConcurrentHashMap<K, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * key -> last success time
+     */
+    private final ConcurrentHashMap<K, Long> succeededAt = new ConcurrentHashMap<>();
+
+    private final long windowMillis;
+
+    private final LongSupplier clock;
+
+    public SingleFlight(long windowMillis) {
+        this(windowMillis, System::currentTimeMillis);
+    }
+
+    public SingleFlight(long windowMillis, @Nonnull LongSupplier clock) {
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Runs action unless the same action is running (then waits for it) or recently succeeded.
+     *
+     * @return true when this call executed action.
+     */
+    public boolean run(@Nonnull K key, @Nonnull Action action) throws IOException {
+        if (isRecent(key)) {
+            return false;
+        }
+
+        final CompletableFuture<Void> mine = new CompletableFuture<>();
+        final CompletableFuture<Void> running = inFlight.putIfAbsent(key, mine);
+        if (nonNull(running)) {
+            await(running);
+            return false;
+        }
+
+        try {
+            action.run();
+            succeededAt.put(key, clock.getAsLong());
+            mine.complete(null);
+            return true;
+        } catch (Throwable t) {
+            mine.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return true when action for key succeeded within window.
+     */
+    public boolean isRecent(@Nonnull K key) {
+        final Long at = succeededAt.get(key);
+        if (isNull(at)) {
+            return false;
+        }
+        if (clock.getAsLong() - at < windowMillis) {
+            return true;
+        }
+        succeededAt.remove(key, at);
+        return false;
+    }
+
+    /**
+     * Next call for key will run action even within window.
+     */
+    public void forget(@Nonnull K key) {
+        succeededAt.remove(key);
+    }
+
+    public void forgetAll() {
+        succeededAt.clear();
+    }
+
+    private static void await(CompletableFuture<Void> running) throws IOException {
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for in-flight action");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            propagateIfPossible(cause, IOException.class);
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Action that may be coalesced.
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one {@link ProvisioningStage} of one cloud.
+ */
+@ExportedBean(defaultVisibility = 2)
+public class StageMetrics {
+    private final ProvisioningStage stage;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger lost = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public StageMetrics(@Nonnull ProvisioningStage stage) {
+        this.stage = stage;
+    }
+
+    @Exported
+    public String getStage() {
+        return stage.name();
+    }
+
+    /**
+     * @return max tasks running at once per docker host.
+     */
+    @Exported
+    public int getConcurrency() {
+        return stage.getConcurrency();
+    }
+
+    void queued() {
+        queued.incrementAndGet();
+    }
+
+    void started() {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+    }
+
+    void lost() {
+        lost.incrementAndGet();
+    }
+
+    void returned() {
+        lost.decrementAndGet();
+    }
+
+    void finished(long millis, Outcome outcome) {
+        running.decrementAndGet();
+        totalMillis.addAndGet(millis);
+        maxMillis.accumulateAndGet(millis, Math::max);
+        switch (outcome) {
+            case SUCCEEDED:
+                succeeded.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+            default:
+                timedOut.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * @return tasks waiting for free slot of docker host.
+     */
+    @Exported
+    public int getQueued() {
+        return queued.get();
+    }
+
+    @Exported
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return timed out tasks whose threads are still blocked, they don't hold slots of docker host.
+     */
+    @Exported
+    public int getLost() {
+        return lost.get();
+    }
+
+    @Exported
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    @Exported
+    public long getFailed() {
+        return failed.get();
+    }
+
+    @Exported
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+
+    /**
+     * @return average duration of finished tasks or 0.
+     */
+    @Exported
+    public long getAverageMillis() {
+        final long finished = succeeded.get() + failed.get() + timedOut.get();
+        return finished == 0 ? 0 : totalMillis.get() / finished;
+    }
+
+    @Exported
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return "queued=" + getQueued() + ", running=" + getRunning() + ", lost=" + getLost() + ", succeeded=" + getSucceeded() +
+                ", failed=" + getFailed() + ", timedOut=" + getTimedOut() + ", avgMillis=" + getAverageMillis() +
+                ", maxMillis=" + getMaxMillis();
+    }
+
+    enum Outcome {
+        SUCCEEDED, FAILED, TIMED_OUT
+    }
+}
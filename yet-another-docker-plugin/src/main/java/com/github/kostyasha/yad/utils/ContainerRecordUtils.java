@@ -2,6 +2,7 @@ package com.github.kostyasha.yad.utils;
 
 import com.github.kostyasha.yad.DockerCloud;
 import com.github.kostyasha.yad.DockerComputer;
+import com.github.kostyasha.yad.DockerSlave;
 import com.github.kostyasha.yad_docker_java.com.fasterxml.jackson.databind.util.StdDateFormat;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
 import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectContainerResponse;
@@ -32,9 +33,11 @@ public class ContainerRecordUtils {
 
         final String containerId = computer.getContainerId();
 
-        final String host = cloud.getConnector().getServerUrl();
+        final DockerSlave node = computer.getNode();
+        final String dockerHost = isNull(node) ? null : node.getDockerHost();
+        final String host = cloud.getConnector(dockerHost).getServerUrl();
 
-        final DockerClient client = cloud.getClient();
+        final DockerClient client = cloud.getClient(dockerHost);
         final InspectContainerResponse containerInspect = client.inspectContainerCmd(containerId).exec();
 
         final Date date = new StdDateFormat().parse(containerInspect.getCreated());
@@ -12,6 +12,10 @@ f.block(title: "Connector") {
     f.property(field: "connector")
 }
 
+f.entry(title: _("Additional Docker hosts"), field: "additionalConnectors") {
+    f.repeatableProperty(field: "additionalConnectors", add: _("Add Docker host"))
+}
+
 f.entry(title: _("Max Containers"), field: "containerCap") {
     f.number(default: 50)
 }
@@ -24,3 +28,26 @@ f.entry(title: _("Images"), description: _("List of Images to be launched as sla
             deleteCaption: _("Delete Docker Template")
     )
 }
+
+if (instance != null) {
+    f.entry(title: _("Docker hosts health"), help: descriptor.getHelpFile("hostsHealth")) {
+        table(class: "pane") {
+            tr {
+                th(_("Docker host"))
+                th(_("State"))
+                th(_("Avg ping, ms"))
+                th(_("Errors, %"))
+                th(_("Last error"))
+            }
+            instance.hostsHealth.each { health ->
+                tr {
+                    td(health.host)
+                    td(health.state.name())
+                    td(health.averageLatency)
+                    td(Math.round(health.errorRate * 100))
+                    td(health.lastError ?: "")
+                }
+            }
+        }
+    }
+}
@@ -29,6 +29,48 @@ f.entry(title: "Type", field: "connectorType") {
     }
 }
 
+f.entry(title: _("Max Containers on host"), field: "containerCap") {
+    f.number(default: 0)
+}
+
+f.entry(title: _("Memory budget, %"), field: "memoryBudgetPercent") {
+    f.number(default: 0)
+}
+
+f.entry(title: _("CPU budget, %"), field: "cpuBudgetPercent") {
+    f.number(default: 0)
+}
+
+f.entry(title: _("Image disk budget, GB"), field: "imageBudgetGb") {
+    f.number(default: 0)
+}
+
+f.advanced(title: _("Connection settings"), align: "left") {
+    f.entry(title: _("Connect timeout, seconds"), field: "connectTimeout") {
+        f.number(default: 0)
+    }
+
+    f.entry(title: _("Read timeout, seconds"), field: "readTimeout") {
+        f.number(default: 0)
+    }
+
+    f.entry(title: _("Max connections"), field: "maxTotalConnections") {
+        f.number(default: DockerConnector.DEFAULT_MAX_TOTAL_CONNECTIONS)
+    }
+
+    f.entry(title: _("Max connections per route"), field: "maxPerRouteConnections") {
+        f.number(default: DockerConnector.DEFAULT_MAX_PER_ROUTE_CONNECTIONS)
+    }
+
+    f.entry(title: _("Retries of failed commands"), field: "maxRetries") {
+        f.number(default: 2)
+    }
+
+    f.entry(title: _("Retry deadline, seconds"), field: "retryDeadlineSeconds") {
+        f.number(default: 60)
+    }
+}
+
 f.validateButton(title: _("Test Connection"), progress: _("Testing..."),
         method: "testConnection",
         with: "serverUrl,credentialsId,version,connectorType"
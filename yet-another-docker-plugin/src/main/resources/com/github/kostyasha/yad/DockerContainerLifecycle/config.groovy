@@ -8,6 +8,10 @@ f.entry(title: _("Docker Image Name"), field: "image") {
     f.textbox()
 }
 
+f.entry(title: _("Pin image"), field: "pinImage") {
+    f.checkbox()
+}
+
 f.section(title: "Pull Image Settings") {
     f.property(field: "pullImage")
 }
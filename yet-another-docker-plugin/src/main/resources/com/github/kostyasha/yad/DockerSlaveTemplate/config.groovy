@@ -71,6 +71,14 @@ f.section(title: _("Jenkins Slave Config")) {
         f.entry(title: _("# of executors"), field: "numExecutors") {
             f.number(default: "1")
         }
+
+        f.entry(title: _("Min idle ready containers"), field: "poolMinIdle") {
+            f.number(default: "0")
+        }
+
+        f.entry(title: _("Max idle ready containers"), field: "poolMaxIdle") {
+            f.number(default: "0")
+        }
     }
 
     f.dropdownList(name: "launcher", title: _("Launch method"),
@@ -0,0 +1,107 @@
+package com.github.kostyasha.yad.action.DockerApiMetricsAction
+
+import jenkins.model.Jenkins
+import lib.LayoutTagLib
+
+def l = namespace(LayoutTagLib)
+
+l.layout(title: my.displayName, permission: Jenkins.ADMINISTER) {
+    l.main_panel {
+        h1(my.displayName)
+        p {
+            text(_("Latency histogram buckets are upper bounds in ms. Machine readable form: "))
+            a(href: "api/json?depth=2", "api/json?depth=2")
+        }
+
+        my.hosts.each { host ->
+            h2(host.host)
+            table(class: "pane sortable bigtable") {
+                tr {
+                    th(_("Command"))
+                    th(_("In flight"))
+                    th(_("Count"))
+                    th(_("Errors"))
+                    th(_("Avg, ms"))
+                    th(_("Max, ms"))
+                    if (!host.commands.isEmpty()) {
+                        host.commands[0].bucketBounds.each { bound ->
+                            th("<=" + bound)
+                        }
+                    }
+                    th(_("Slower"))
+                }
+                host.commands.each { command ->
+                    tr {
+                        td(command.command)
+                        td(command.inFlight)
+                        td(command.count)
+                        td(command.errors)
+                        td(command.averageMillis)
+                        td(command.maxMillis)
+                        command.bucketCounts.each { bucket ->
+                            td(bucket)
+                        }
+                    }
+                }
+            }
+        }
+
+        my.pipelines.each { pipeline ->
+            h2(_("Provisioning stages of ") + pipeline.cloudName)
+            table(class: "pane sortable bigtable") {
+                tr {
+                    th(_("Stage"))
+                    th(_("Per host"))
+                    th(_("Queued"))
+                    th(_("Running"))
+                    th(_("Lost threads"))
+                    th(_("Succeeded"))
+                    th(_("Failed"))
+                    th(_("Timed out"))
+                    th(_("Avg, ms"))
+                    th(_("Max, ms"))
+                }
+                pipeline.stages.each { stage ->
+                    tr {
+                        td(stage.stage)
+                        td(stage.concurrency)
+                        td(stage.queued)
+                        td(stage.running)
+                        td(stage.lost)
+                        td(stage.succeeded)
+                        td(stage.failed)
+                        td(stage.timedOut)
+                        td(stage.averageMillis)
+                        td(stage.maxMillis)
+                    }
+                }
+            }
+        }
+
+        h2(_("Image pulls"))
+        table(class: "pane bigtable") {
+            tr {
+                th(_("Succeeded"))
+                th(_("Failed"))
+                th(_("Timed out"))
+                th(_("Stalled"))
+                th(_("Layers"))
+                th(_("Bytes"))
+                th(_("Bytes/s"))
+                th(_("Avg layer, ms"))
+                th(_("Max layer, ms"))
+            }
+            tr {
+                td(my.pulls.succeeded)
+                td(my.pulls.failed)
+                td(my.pulls.timedOut)
+                td(my.pulls.stalled)
+                td(my.pulls.layers)
+                td(my.pulls.bytes)
+                td(my.pulls.bytesPerSecond)
+                td(my.pulls.averageLayerMillis)
+                td(my.pulls.maxLayerMillis)
+            }
+        }
+    }
+}
@@ -15,3 +15,13 @@ f.entry(title: _("Pull strategy"), field: "pullStrategy") {
 f.entry(title: _("Registry Credentials"), field: "credentialsId") {
     c.select()
 }
+
+f.advanced(title: _("Pull timeouts"), align: "left") {
+    f.entry(title: _("Pull timeout, minutes"), field: "pullTimeoutMinutes") {
+        f.number(default: 30)
+    }
+
+    f.entry(title: _("Stall timeout, seconds"), field: "stallTimeoutSeconds") {
+        f.number(default: 180)
+    }
+}
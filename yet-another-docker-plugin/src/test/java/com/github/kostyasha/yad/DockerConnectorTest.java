@@ -0,0 +1,38 @@
+package com.github.kostyasha.yad;
+
+import hudson.util.XStream2;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DockerConnectorTest {
+    private final XStream2 xStream = new XStream2();
+
+    @Test
+    public void shouldUseDefaultsForOldConfig() {
+        final DockerConnector connector = (DockerConnector) xStream.fromXML(
+                "<com.github.kostyasha.yad.DockerConnector>" +
+                        "<serverUrl>tcp://localhost:2375</serverUrl>" +
+                        "<connectorType>NETTY</connectorType>" +
+                        "<connectTimeout>0</connectTimeout>" +
+                        "</com.github.kostyasha.yad.DockerConnector>");
+
+        assertThat(connector.getMaxRetries(), is(DockerConnector.DEFAULT_MAX_RETRIES));
+        assertThat(connector.getRetryDeadlineSeconds(), is(DockerConnector.DEFAULT_RETRY_DEADLINE_SECONDS));
+        assertThat(connector.getMaxTotalConnections(), is(DockerConnector.DEFAULT_MAX_TOTAL_CONNECTIONS));
+        assertThat(connector.getMaxPerRouteConnections(), is(DockerConnector.DEFAULT_MAX_PER_ROUTE_CONNECTIONS));
+        assertThat("loaded config equals new one", connector, is(new DockerConnector("tcp://localhost:2375")));
+    }
+
+    @Test
+    public void shouldKeepDisabledRetries() {
+        final DockerConnector connector = new DockerConnector("tcp://localhost:2375");
+        connector.setMaxRetries(0);
+
+        final DockerConnector loaded = (DockerConnector) xStream.fromXML(xStream.toXML(connector));
+
+        assertThat(loaded.getMaxRetries(), is(0));
+        assertThat(loaded, is(connector));
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.kostyasha.yad;
+
+import com.github.kostyasha.yad.strategy.DockerCloudRetentionStrategy;
+import com.github.kostyasha.yad.strategy.DockerOnceRetentionStrategy;
+import hudson.model.Label;
+import hudson.model.LoadStatistics.LoadStatisticsSnapshot;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.NodeProvisioner.PlannedNode;
+import hudson.slaves.NodeProvisioner.StrategyDecision;
+import hudson.slaves.NodeProvisioner.StrategyState;
+import hudson.slaves.RetentionStrategy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerProvisioningStrategyTest {
+    private static final Label LABEL = Label.get("docker");
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final DockerProvisioningStrategy strategy = new DockerProvisioningStrategy();
+
+    /**
+     * Excess workload of every provision call.
+     */
+    private final List<Integer> requested = new ArrayList<>();
+
+    private int capacityLeft = Integer.MAX_VALUE;
+
+    @Test
+    public void shouldCountExecutorsOfMultiExecutorTemplate() throws Exception {
+        addCloud(template(4, new DockerCloudRetentionStrategy(10)));
+
+        final StrategyState state = state(snapshot(6), 0, 0);
+        assertThat(strategy.apply(state), is(StrategyDecision.PROVISIONING_COMPLETED));
+        // two containers with 4 executors serve 6 queued items
+        assertThat(requested, is(singletonList(6)));
+        verify(state).recordPendingLaunches(anyCollectionOf(PlannedNode.class));
+
+        // next tick sees them as planned capacity
+        requested.clear();
+        assertThat(strategy.apply(state(snapshot(6), 8, 0)), is(StrategyDecision.PROVISIONING_COMPLETED));
+        assertThat(requested, is(empty()));
+    }
+
+    @Test
+    public void shouldUseIdleExecutorsOfReusableAgents() throws Exception {
+        addCloud(template(2, new DockerCloudRetentionStrategy(10)));
+        final DumbSlave reusable = new DumbSlave("reusable", "", j.createTmpDir().getPath(), "2",
+                Node.Mode.NORMAL, LABEL.getName(), j.createComputerLauncher(null), RetentionStrategy.NOOP,
+                Collections.emptyList());
+        j.jenkins.addNode(reusable);
+        j.waitOnline(reusable);
+
+        final LoadStatisticsSnapshot snapshot = LoadStatisticsSnapshot.builder()
+                .with(reusable.toComputer())
+                .withQueueLength(3)
+                .build();
+        assertThat(snapshot.getAvailableExecutors(), is(2));
+
+        assertThat(strategy.apply(state(snapshot, 0, 0)), is(StrategyDecision.PROVISIONING_COMPLETED));
+        assertThat("only queue that idle agent can't take", requested, is(singletonList(1)));
+    }
+
+    @Test
+    public void shouldSubtractPlannedCapacity() throws Exception {
+        addCloud(template(1, new DockerOnceRetentionStrategy(10)));
+
+        final StrategyState state = state(snapshot(5), 3, 1);
+        assertThat(strategy.apply(state), is(StrategyDecision.PROVISIONING_COMPLETED));
+        assertThat(requested, is(singletonList(1)));
+
+        requested.clear();
+        final StrategyState covered = state(snapshot(4), 3, 1);
+        assertThat(strategy.apply(covered), is(StrategyDecision.PROVISIONING_COMPLETED));
+        assertThat(requested, is(empty()));
+        verify(covered, never()).recordPendingLaunches(anyCollectionOf(PlannedNode.class));
+    }
+
+    @Test
+    public void shouldConsultOtherStrategiesWhenCloudIsFull() throws Exception {
+        addCloud(template(2, new DockerCloudRetentionStrategy(10)));
+        capacityLeft = 1;
+
+        assertThat(strategy.apply(state(snapshot(4), 0, 0)), is(StrategyDecision.CONSULT_REMAINING_STRATEGIES));
+        assertThat(requested, is(singletonList(4)));
+    }
+
+    private void addCloud(DockerSlaveTemplate template) {
+        j.jenkins.clouds.add(new DockerCloud("cloud", singletonList(template), 10,
+                new DockerConnector("tcp://localhost:2375")) {
+            /**
+             * Plans containers of template without docker, at most capacityLeft of them.
+             */
+            @Override
+            public Collection<PlannedNode> provision(Label label, int excessWorkload) {
+                requested.add(excessWorkload);
+                final List<PlannedNode> planned = new ArrayList<>();
+                for (int left = excessWorkload; left > 0 && capacityLeft > 0; left -= template.getNumExecutors()) {
+                    planned.add(new PlannedNode("planned", new CompletableFuture<>(), template.getNumExecutors()));
+                    capacityLeft--;
+                }
+                return planned;
+            }
+        });
+    }
+
+    private static DockerSlaveTemplate template(int numExecutors, RetentionStrategy retentionStrategy) {
+        final DockerSlaveTemplate template = new DockerSlaveTemplate();
+        template.setLabelString(LABEL.getName());
+        template.setRetentionStrategy(retentionStrategy);
+        template.setNumExecutors(numExecutors);
+        return template;
+    }
+
+    private static LoadStatisticsSnapshot snapshot(int queueLength) {
+        return LoadStatisticsSnapshot.builder().withQueueLength(queueLength).build();
+    }
+
+    private static StrategyState state(LoadStatisticsSnapshot snapshot, int plannedCapacity, int additionalCapacity) {
+        final StrategyState state = mock(StrategyState.class);
+        when(state.getLabel()).thenReturn(LABEL);
+        when(state.getSnapshot()).thenReturn(snapshot);
+        when(state.getPlannedCapacitySnapshot()).thenReturn(plannedCapacity);
+        when(state.getAdditionalPlannedCapacity()).thenReturn(additionalCapacity);
+        return state;
+    }
+}
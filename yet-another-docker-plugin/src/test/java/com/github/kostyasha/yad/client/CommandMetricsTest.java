@@ -0,0 +1,52 @@
+package com.github.kostyasha.yad.client;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CommandMetricsTest {
+
+    @Test
+    public void shouldCountLatencyIntoBuckets() {
+        final CommandMetrics metrics = new CommandMetrics("inspectContainer");
+
+        metrics.started();
+        metrics.started();
+        metrics.started();
+        assertThat(metrics.getInFlight(), is(3));
+
+        metrics.finished(3, false);
+        metrics.finished(7, true);
+        metrics.finished(120_000, false);
+
+        assertThat(metrics.getInFlight(), is(0));
+        assertThat(metrics.getCount(), is(3L));
+        assertThat(metrics.getErrors(), is(1L));
+        assertThat(metrics.getMaxMillis(), is(120_000L));
+        assertThat(metrics.getAverageMillis(), is(120_010L / 3));
+
+        final long[] buckets = metrics.getBucketCounts();
+        assertThat(buckets.length, is(metrics.getBucketBounds().length + 1));
+        assertThat(buckets[0], is(1L));
+        assertThat(buckets[1], is(1L));
+        assertThat(buckets[buckets.length - 1], is(1L));
+    }
+
+    @Test
+    public void shouldUseUpperBoundInclusive() {
+        assertThat(CommandMetrics.bucketOf(0), is(0));
+        assertThat(CommandMetrics.bucketOf(5), is(0));
+        assertThat(CommandMetrics.bucketOf(6), is(1));
+        assertThat(CommandMetrics.bucketOf(60_000), is(new CommandMetrics("ping").getBucketBounds().length - 1));
+    }
+
+    @Test
+    public void shouldShareHostMetrics() {
+        final DockerApiMetrics host = DockerApiMetrics.forHost("tcp://metrics-test:2375");
+
+        assertThat(DockerApiMetrics.forHost("tcp://metrics-test:2375") == host, is(true));
+        assertThat(host.forCommand("ping") == host.forCommand("ping"), is(true));
+        assertThat(host.getCommands().size(), is(1));
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.kostyasha.yad.client;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.client.DockerClientRegistry.ClientHandle;
+import com.github.kostyasha.yad.client.DockerClientRegistry.ClientKey;
+import com.github.kostyasha.yad.credentials.DockerCredentialsCache;
+import com.github.kostyasha.yad.credentials.DockerRegistryAuthCredentials;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DockerClientRegistryTest {
+    private static final String SERVER_URL = "tcp://localhost:2375";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Before
+    public void setUp() {
+        DockerClientRegistry.setClock(now::get);
+    }
+
+    @After
+    public void tearDown() {
+        now.addAndGet(DockerClientRegistry.GRACE);
+        DockerClientRegistry.evictAllExcept(Collections.emptyList());
+        DockerClientRegistry.setClock(System::currentTimeMillis);
+        DockerCredentialsCache.invalidateAll();
+    }
+
+    @Test
+    public void shouldKeyClientsBySettings() {
+        final DockerConnector connector = new DockerConnector(SERVER_URL);
+        final DockerConnector saved = new DockerConnector(SERVER_URL);
+        assertThat("new connector instance after save", ClientKey.of(saved), is(ClientKey.of(connector)));
+
+        final DockerConnector otherTimeout = new DockerConnector(SERVER_URL);
+        otherTimeout.setReadTimeout(30);
+        assertThat(ClientKey.of(otherTimeout), not(ClientKey.of(connector)));
+
+        final DockerConnector otherRetries = new DockerConnector(SERVER_URL);
+        otherRetries.setMaxRetries(0);
+        assertThat(ClientKey.of(otherRetries), not(ClientKey.of(connector)));
+    }
+
+    @Test
+    public void shouldShareClientBetweenConnectorsWithSameSettings() throws Exception {
+        final ClientHandle first = DockerClientRegistry.acquire(new DockerConnector(SERVER_URL));
+        final ClientHandle second = DockerClientRegistry.acquire(new DockerConnector(SERVER_URL));
+
+        assertThat(second.getClient(), sameInstance(first.getClient()));
+        assertThat(first.isValid(), is(true));
+    }
+
+    @Test
+    public void shouldEvictUnusedClientAfterGrace() throws Exception {
+        final DockerConnector replaced = new DockerConnector(SERVER_URL);
+        replaced.setReadTimeout(30);
+        final DockerConnector live = new DockerConnector(SERVER_URL);
+        final ClientHandle replacedHandle = DockerClientRegistry.acquire(replaced);
+        final ClientHandle liveHandle = DockerClientRegistry.acquire(live);
+
+        now.addAndGet(DockerClientRegistry.GRACE - 1);
+        assertThat("in-flight operations can finish", DockerClientRegistry.evictAllExcept(singletonList(live)), is(0));
+        assertThat(replacedHandle.isValid(), is(true));
+
+        now.addAndGet(1);
+        assertThat(DockerClientRegistry.evictAllExcept(singletonList(live)), is(1));
+        assertThat(replacedHandle.isValid(), is(false));
+        assertThat(liveHandle.isValid(), is(true));
+        assertThat(DockerClientRegistry.acquire(live).getClient(), sameInstance(liveHandle.getClient()));
+    }
+
+    @Test
+    public void shouldInvalidateHandleWhenCredentialsChange() throws Exception {
+        putCredentials(new DockerRegistryAuthCredentials(CredentialsScope.GLOBAL, "creds", null, "user", "pass", null));
+        final DockerConnector connector = new DockerConnector(SERVER_URL);
+        connector.setCredentialsId("creds");
+        final ClientHandle before = DockerClientRegistry.acquire(connector);
+
+        // unchanged credentials saved again keep client
+        SystemCredentialsProvider.getInstance().save();
+        assertThat(before.isValid(), is(false));
+        final ClientHandle resaved = DockerClientRegistry.acquire(connector);
+        assertThat(resaved.getClient(), sameInstance(before.getClient()));
+
+        putCredentials(new DockerRegistryAuthCredentials(CredentialsScope.GLOBAL, "creds", null, "user", "new", null));
+        assertThat(resaved.isValid(), is(false));
+        final ClientHandle after = DockerClientRegistry.acquire(connector);
+        assertThat(after.isValid(), is(true));
+        assertThat(after.getClient(), not(sameInstance(before.getClient())));
+    }
+
+    private static void putCredentials(IdCredentials credentials) throws Exception {
+        final SystemCredentialsProvider provider = SystemCredentialsProvider.getInstance();
+        final List<Credentials> all = provider.getCredentials();
+        all.removeIf(c -> c instanceof IdCredentials && ((IdCredentials) c).getId().equals(credentials.getId()));
+        all.add(credentials);
+        provider.save();
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.kostyasha.yad.client;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DockerDiskUsageTest {
+
+    @Test
+    public void shouldCountSharedLayersOnce() {
+        final DockerDiskUsage diskUsage = DockerDiskUsage.parse("{\"LayersSize\": 300, \"Images\": ["
+                + "{\"Id\": \"sha256:a\", \"Size\": 200, \"SharedSize\": 100, \"Containers\": 0},"
+                + "{\"Id\": \"sha256:b\", \"Size\": 200, \"SharedSize\": 100, \"Containers\": 1}],"
+                + "\"Containers\": [], \"Volumes\": []}");
+
+        // two images of 200 bytes with common base of 100 bytes
+        assertThat(diskUsage.getLayersSize(), is(300L));
+        assertThat(diskUsage.getUniqueSize("sha256:a"), is(100L));
+        assertThat(diskUsage.getUniqueSize("sha256:b"), is(100L));
+        assertThat(diskUsage.getUniqueSize("sha256:missing"), is(0L));
+    }
+
+    @Test
+    public void shouldNotTreatUncomputedSharedSizeAsUnique() {
+        final DockerDiskUsage diskUsage = DockerDiskUsage.parse("{\"LayersSize\": 200, \"Images\": ["
+                + "{\"Id\": \"sha256:a\", \"Size\": 200, \"SharedSize\": -1}]}");
+
+        assertThat(diskUsage.getUniqueSize("sha256:a"), is(0L));
+    }
+}
@@ -0,0 +1,126 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.DockerException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotModifiedException;
+import org.junit.Test;
+
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+public class DockerRetryPolicyTest {
+
+    @Test
+    public void shouldRetryTransientFailures() {
+        final List<Long> sleeps = new ArrayList<>();
+        final DockerRetryPolicy policy = new DockerRetryPolicy(3, 60_000, sleeps::add);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = policy.call("inspect", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new RuntimeException(new SocketException("Connection reset"));
+            }
+            return "inspected";
+        });
+
+        assertThat(result, is("inspected"));
+        assertThat(attempts.get(), is(3));
+        assertThat(sleeps.size(), is(2));
+    }
+
+    @Test
+    public void shouldNotRetryClientErrors() {
+        final DockerRetryPolicy policy = new DockerRetryPolicy(3, 60_000, millis -> {
+        });
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.call("remove", () -> {
+                attempts.incrementAndGet();
+                throw new DockerException("No such container", 404);
+            });
+            fail("Client error must be rethrown");
+        } catch (DockerException ex) {
+            assertThat(ex.getHttpStatus(), is(404));
+        }
+        assertThat(attempts.get(), is(1));
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxRetries() {
+        final DockerRetryPolicy policy = new DockerRetryPolicy(2, 60_000, millis -> {
+        });
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.call("stop", () -> {
+                attempts.incrementAndGet();
+                throw new DockerException("Server error", 500);
+            });
+            fail("Last failure must be rethrown");
+        } catch (DockerException ex) {
+            assertThat(ex.getHttpStatus(), is(500));
+        }
+        assertThat(attempts.get(), is(3));
+    }
+
+    @Test
+    public void shouldTreatAlreadyDoneRetryAsSuccess() {
+        final DockerRetryPolicy policy = new DockerRetryPolicy(2, 60_000, millis -> {
+        });
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // daemon stopped container, but response was lost
+        final Void result = policy.call("stop", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException(new SocketException("Connection reset"));
+            }
+            throw new NotModifiedException("Container already stopped");
+        }, RetryingDockerCmdExecFactory.alreadyDone("createStopContainerCmdExec"));
+
+        assertThat(result, nullValue());
+        assertThat(attempts.get(), is(2));
+    }
+
+    @Test
+    public void shouldRethrowAlreadyDoneOfFirstAttempt() {
+        final DockerRetryPolicy policy = new DockerRetryPolicy(2, 60_000, millis -> {
+        });
+
+        try {
+            policy.call("remove", () -> {
+                throw new NotFoundException("No such container");
+            }, RetryingDockerCmdExecFactory.alreadyDone("createRemoveContainerCmdExec"));
+            fail("Not found of first attempt must be rethrown");
+        } catch (NotFoundException ex) {
+            assertThat(ex.getHttpStatus(), is(404));
+        }
+    }
+
+    @Test
+    public void shouldMatchAlreadyDoneByCommand() {
+        final NotModifiedException notModified = new NotModifiedException("not modified");
+        final NotFoundException notFound = new NotFoundException("not found");
+
+        assertThat(RetryingDockerCmdExecFactory.alreadyDone("createStartContainerCmdExec").test(notModified), is(true));
+        assertThat(RetryingDockerCmdExecFactory.alreadyDone("createStopContainerCmdExec").test(notModified), is(true));
+        assertThat(RetryingDockerCmdExecFactory.alreadyDone("createStopContainerCmdExec").test(notFound), is(false));
+        assertThat(RetryingDockerCmdExecFactory.alreadyDone("createRemoveContainerCmdExec").test(notFound), is(true));
+        assertThat(RetryingDockerCmdExecFactory.alreadyDone("createInspectContainerCmdExec").test(notFound), is(false));
+    }
+
+    @Test
+    public void shouldCapJitteredBackoff() {
+        assertThat(DockerRetryPolicy.backoffMillis(0, 0.5), is(DockerRetryPolicy.BASE_BACKOFF / 2));
+        assertThat(DockerRetryPolicy.backoffMillis(3, 0.5), is(DockerRetryPolicy.BASE_BACKOFF * 8 / 2));
+        assertThat(DockerRetryPolicy.backoffMillis(30, 0.5), is(DockerRetryPolicy.MAX_BACKOFF / 2));
+        assertThat(DockerRetryPolicy.backoffMillis(30, 0), is(0L));
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.kostyasha.yad.client;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.async.ResultCallback;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.DockerCmdExecFactory;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.EventsCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.EventsCmdExec;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.PullImageCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.PullImageCmdExec;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Event;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.PullResponseItem;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.EventsResultCallback;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.PullImageResultCallback;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedDockerCmdExecFactoryTest {
+    private final DockerApiMetrics metrics = new DockerApiMetrics("tcp://host:2375");
+    private final DockerCmdExecFactory delegate = mock(DockerCmdExecFactory.class);
+    private final DockerCmdExecFactory factory = InstrumentedDockerCmdExecFactory.wrap(delegate, metrics);
+    private final AtomicReference<ResultCallback<?>> callback = new AtomicReference<>();
+    private final Closeable stream = () -> { };
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldMeasureStreamingCommandUntilResponseStarts() throws Exception {
+        final EventsCmdExec exec = mock(EventsCmdExec.class, invocation -> {
+            callback.set((ResultCallback<?>) invocation.getArguments()[1]);
+            return null;
+        });
+        when(delegate.createEventsCmdExec()).thenReturn(exec);
+
+        factory.createEventsCmdExec().exec(mock(EventsCmd.class), new EventsResultCallback());
+        final CommandMetrics events = metrics.forCommand("events");
+        assertThat(events.getInFlight(), is(1));
+
+        callback.get().onStart(stream);
+        assertThat(events.getInFlight(), is(0));
+        assertThat(events.getCount(), is(1L));
+
+        // stream stays open for hours, its end changes nothing
+        ((ResultCallback<Event>) callback.get()).onNext(mock(Event.class));
+        callback.get().onComplete();
+        assertThat(events.getCount(), is(1L));
+        assertThat(events.getErrors(), is(0L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldMeasureAsyncCommandUntilStreamEnds() throws Exception {
+        final PullImageCmdExec exec = mock(PullImageCmdExec.class, invocation -> {
+            callback.set((ResultCallback<?>) invocation.getArguments()[1]);
+            return null;
+        });
+        when(delegate.createPullImageCmdExec()).thenReturn(exec);
+
+        factory.createPullImageCmdExec().exec(mock(PullImageCmd.class), new PullImageResultCallback());
+        final CommandMetrics pull = metrics.forCommand("pullImage");
+
+        callback.get().onStart(stream);
+        ((ResultCallback<PullResponseItem>) callback.get()).onNext(mock(PullResponseItem.class));
+        assertThat(pull.getInFlight(), is(1));
+        assertThat(pull.getCount(), is(0L));
+
+        callback.get().onError(new RuntimeException("registry is down"));
+        assertThat(pull.getInFlight(), is(0));
+        assertThat(pull.getCount(), is(1L));
+        assertThat(pull.getErrors(), is(1L));
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.DockerSlaveTemplate;
+import hudson.model.Node;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class AbstractCloudTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @Test
+    public void shouldLookupTemplatesByLabel() {
+        final DockerSlaveTemplate java = template("java", "docker java", Node.Mode.EXCLUSIVE);
+        final DockerSlaveTemplate javaNode = template("node", "docker java node", Node.Mode.EXCLUSIVE);
+        final DockerCloud cloud = cloud(java, javaNode);
+
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), contains(java, javaNode));
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java && node")), contains(javaNode));
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("python")), is(empty()));
+        assertThat(cloud.getTemplate(j.jenkins.getLabel("docker")), is(java));
+    }
+
+    @Test
+    public void shouldLookupTemplatesByImageAndId() {
+        final DockerSlaveTemplate first = template("image", "first", Node.Mode.NORMAL);
+        final DockerSlaveTemplate second = template("image", "second", Node.Mode.NORMAL);
+        final DockerCloud cloud = cloud(first, second);
+
+        assertThat("first template wins", cloud.getTemplate("image"), is(first));
+        assertThat(cloud.getTemplate("other"), nullValue());
+        assertThat(cloud.getTemplateById(second.getId()), is(second));
+        assertThat(cloud.getTemplateById(null), nullValue());
+    }
+
+    @Test
+    public void shouldReturnNormalTemplatesForUnlabeledLoad() {
+        final DockerSlaveTemplate normal = template("normal", "docker", Node.Mode.NORMAL);
+        final DockerSlaveTemplate exclusive = template("exclusive", "docker", Node.Mode.EXCLUSIVE);
+        final DockerCloud cloud = cloud(normal, exclusive);
+
+        assertThat(cloud.getTemplates(null), contains(normal));
+    }
+
+    @Test
+    public void shouldFollowTemplatesChangedInPlace() {
+        final DockerSlaveTemplate template = template("image", "java", Node.Mode.EXCLUSIVE);
+        final DockerCloud cloud = cloud(template);
+
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), contains(template));
+        assertThat(cloud.getTemplates(null), is(empty()));
+
+        template.setLabelString("python");
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), is(empty()));
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("python")), contains(template));
+
+        template.setMode(Node.Mode.NORMAL);
+        assertThat(cloud.getTemplates(null), contains(template));
+
+        template.getDockerContainerLifecycle().setImage("other");
+        assertThat(cloud.getTemplate("image"), nullValue());
+        assertThat(cloud.getTemplate("other"), is(template));
+    }
+
+    @Test
+    public void shouldFollowReplacedTemplates() {
+        final DockerSlaveTemplate first = template("first", "java", Node.Mode.EXCLUSIVE);
+        final DockerSlaveTemplate second = template("second", "java", Node.Mode.EXCLUSIVE);
+        final DockerCloud cloud = cloud(first);
+
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), contains(first));
+
+        cloud.addTemplate(second);
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), contains(first, second));
+
+        cloud.removeTemplate(first);
+        assertThat(cloud.getTemplates(j.jenkins.getLabel("java")), contains(second));
+        assertThat(cloud.getTemplateById(first.getId()), nullValue());
+    }
+
+    private static DockerCloud cloud(DockerSlaveTemplate... templates) {
+        return new DockerCloud("cloud", Arrays.asList(templates), 10, new DockerConnector("tcp://localhost:2375"));
+    }
+
+    private static DockerSlaveTemplate template(String image, String labels, Node.Mode mode) {
+        final DockerSlaveTemplate template = new DockerSlaveTemplate();
+        template.getDockerContainerLifecycle().setImage(image);
+        template.setLabelString(labels);
+        template.setMode(mode);
+        return template;
+    }
+}
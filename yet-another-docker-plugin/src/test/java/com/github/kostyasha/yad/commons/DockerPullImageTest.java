@@ -0,0 +1,42 @@
+package com.github.kostyasha.yad.commons;
+
+import hudson.util.XStream2;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DockerPullImageTest {
+    private final XStream2 xStream = new XStream2();
+
+    @Test
+    public void shouldUseDefaultTimeoutsForOldConfig() {
+        final DockerPullImage pullImage = (DockerPullImage) xStream.fromXML(
+                "<com.github.kostyasha.yad.commons.DockerPullImage>" +
+                        "<pullStrategy>PULL_ALWAYS</pullStrategy>" +
+                        "</com.github.kostyasha.yad.commons.DockerPullImage>");
+
+        assertThat(pullImage.getPullStrategy(), is(DockerImagePullStrategy.PULL_ALWAYS));
+        assertThat(pullImage.getPullTimeoutMinutes(), is(DockerPullImage.DEFAULT_PULL_TIMEOUT_MINUTES));
+        assertThat(pullImage.getStallTimeoutSeconds(), is(DockerPullImage.DEFAULT_STALL_TIMEOUT_SECONDS));
+        assertThat("loaded config equals new one", pullImage, is(configured(DockerImagePullStrategy.PULL_ALWAYS)));
+    }
+
+    @Test
+    public void shouldKeepUnlimitedTimeouts() {
+        final DockerPullImage unlimited = configured(DockerImagePullStrategy.PULL_LATEST);
+        unlimited.setPullTimeoutMinutes(0);
+        unlimited.setStallTimeoutSeconds(0);
+
+        final DockerPullImage loaded = (DockerPullImage) xStream.fromXML(xStream.toXML(unlimited));
+
+        assertThat(loaded.getPullTimeoutMinutes(), is(0));
+        assertThat(loaded.getStallTimeoutSeconds(), is(0));
+    }
+
+    private static DockerPullImage configured(DockerImagePullStrategy strategy) {
+        final DockerPullImage pullImage = new DockerPullImage();
+        pullImage.setPullStrategy(strategy);
+        return pullImage;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.kostyasha.yad.commons;
+
+import com.github.kostyasha.yad.commons.HttpDockerRegistryClient.ImageReference;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs client against in-process registry stand-in that serves one manifest behind bearer token auth.
+ */
+public class HttpDockerRegistryClientTest {
+    private static final String DIGEST = "sha256:0123456789abcdef";
+    private static final String TOKEN = "secret-token";
+
+    private HttpServer registry;
+    private String registryHost;
+    private final AtomicInteger manifestRequests = new AtomicInteger();
+
+    @Before
+    public void startRegistry() throws IOException {
+        registry = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        registryHost = "localhost:" + registry.getAddress().getPort();
+
+        registry.createContext("/token", exchange -> {
+            final String expected = "Basic " + Base64.getEncoder()
+                    .encodeToString("user:pass".getBytes(StandardCharsets.UTF_8));
+            if (!expected.equals(exchange.getRequestHeaders().getFirst("Authorization"))
+                    || !exchange.getRequestURI().getQuery().contains("scope=repository:team/app:pull")) {
+                respond(exchange, 401, "");
+                return;
+            }
+            respond(exchange, 200, "{\"token\": \"" + TOKEN + "\", \"expires_in\": 300}");
+        });
+
+        registry.createContext("/v2/", exchange -> {
+            manifestRequests.incrementAndGet();
+            if (!("Bearer " + TOKEN).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                exchange.getResponseHeaders().add("WWW-Authenticate", "Bearer realm=\"http://" + registryHost
+                        + "/token\",service=\"stand-in\",scope=\"repository:team/app:pull\"");
+                respond(exchange, 401, "");
+                return;
+            }
+            if (!"/v2/team/app/manifests/1.0".equals(exchange.getRequestURI().getPath())) {
+                respond(exchange, 404, "");
+                return;
+            }
+            exchange.getResponseHeaders().add("Docker-Content-Digest", DIGEST);
+            respond(exchange, 200, "");
+        });
+
+        registry.start();
+    }
+
+    @After
+    public void stopRegistry() {
+        registry.stop(0);
+    }
+
+    @Test
+    public void shouldGetDigestWithBearerToken() throws IOException {
+        final String digest = new HttpDockerRegistryClient().getDigest(registryHost + "/team/app:1.0", auth());
+        assertThat(digest, is(DIGEST));
+    }
+
+    @Test
+    public void shouldFailForUnknownImage() {
+        try {
+            new HttpDockerRegistryClient().getDigest(registryHost + "/team/app:2.0", auth());
+            fail("unknown tag");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage().contains("404"), is(true));
+        }
+    }
+
+    @Test
+    public void shouldCacheDigestForTtl() throws IOException {
+        final AtomicLong now = new AtomicLong();
+        final CachingDockerRegistryClient client =
+                new CachingDockerRegistryClient(new HttpDockerRegistryClient(), 1000, now::get);
+
+        assertThat(client.getDigest(registryHost + "/team/app:1.0", auth()), is(DIGEST));
+        final int requests = manifestRequests.get();
+        now.set(999);
+        assertThat(client.getDigest(registryHost + "/team/app:1.0", auth()), is(DIGEST));
+        assertThat("cached", manifestRequests.get(), is(requests));
+
+        now.set(1000);
+        assertThat(client.getDigest(registryHost + "/team/app:1.0", auth()), is(DIGEST));
+        assertThat("expired", manifestRequests.get() > requests, is(true));
+    }
+
+    @Test
+    public void shouldParseImageReferences() {
+        assertReference("busybox", HttpDockerRegistryClient.DEFAULT_REGISTRY, "library/busybox", "latest");
+        assertReference("docker.io/jenkins/slave:2.60", HttpDockerRegistryClient.DEFAULT_REGISTRY, "jenkins/slave", "2.60");
+        assertReference("localhost:5000/team/app", "localhost:5000", "team/app", "latest");
+        assertReference("registry.example.com/app@sha256:abc", "registry.example.com", "app", "sha256:abc");
+
+        assertThat(ImageReference.parse("app@sha256:abc").isDigest(), is(true));
+        assertThat(ImageReference.parse("localhost:5000/app").getBaseUrl(), is("http://localhost:5000"));
+        assertThat(ImageReference.parse("busybox").getBaseUrl(), is("https://registry-1.docker.io"));
+    }
+
+    private static void assertReference(String imageName, String registry, String repository, String reference) {
+        final ImageReference parsed = ImageReference.parse(imageName);
+        assertThat(parsed.getRegistry(), is(registry));
+        assertThat(parsed.getRepository(), is(repository));
+        assertThat(parsed.getReference(), is(reference));
+    }
+
+    private static AuthConfig auth() {
+        return new AuthConfig().withUsername("user").withPassword("pass");
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if ("HEAD".equals(exchange.getRequestMethod()) || bytes.length == 0) {
+            exchange.sendResponseHeaders(code, -1);
+        } else {
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.kostyasha.yad.credentials;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.AuthConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class DockerCredentialsCacheTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Before
+    public void setUp() {
+        DockerCredentialsCache.setClock(now::get);
+        DockerCredentialsCache.invalidateAll();
+    }
+
+    @After
+    public void tearDown() {
+        DockerCredentialsCache.setClock(System::currentTimeMillis);
+        DockerCredentialsCache.invalidateAll();
+    }
+
+    @Test
+    public void shouldReturnOwnAuthConfigCopy() throws Exception {
+        addCredentials(registry("registry", "user", "pass"));
+
+        final AuthConfig first = DockerCredentialsCache.getAuthConfig("registry");
+        assertThat(first.getUsername(), is("user"));
+        assertThat(first.getPassword(), is("pass"));
+        assertThat(first.getEmail(), is("user@example.com"));
+
+        first.withPassword("changed by caller");
+
+        final AuthConfig second = DockerCredentialsCache.getAuthConfig("registry");
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getPassword(), is("pass"));
+    }
+
+    @Test
+    public void shouldNotReturnAuthConfigForOtherCredentials() throws Exception {
+        addCredentials(registry("registry", "user", "pass"));
+
+        assertThat(DockerCredentialsCache.getAuthConfig("missing"), nullValue());
+        assertThat(DockerCredentialsCache.get("registry"), notNullValue());
+        assertThat(DockerCredentialsCache.getSSLConfig("registry"), nullValue());
+    }
+
+    @Test
+    public void shouldDropIndexWhenCredentialsSaved() throws Exception {
+        assertThat(DockerCredentialsCache.get("registry"), nullValue());
+        final long generation = DockerCredentialsCache.getGeneration();
+
+        addCredentials(registry("registry", "user", "pass"));
+
+        assertThat(DockerCredentialsCache.getGeneration(), is(generation + 1));
+        assertThat(DockerCredentialsCache.get("registry"), notNullValue());
+    }
+
+    @Test
+    public void shouldExpireIndexAndBumpGeneration() {
+        assertThat(DockerCredentialsCache.get("registry"), nullValue());
+        final long generation = DockerCredentialsCache.getGeneration();
+
+        // provider that doesn't persist through Saveable
+        SystemCredentialsProvider.getInstance().getCredentials().add(registry("registry", "user", "pass"));
+
+        now.addAndGet(DockerCredentialsCache.MAX_AGE);
+        assertThat(DockerCredentialsCache.get("registry"), nullValue());
+        assertThat(DockerCredentialsCache.getGeneration(), is(generation));
+
+        now.addAndGet(1);
+        assertThat(DockerCredentialsCache.get("registry"), notNullValue());
+        assertThat(DockerCredentialsCache.getGeneration(), is(generation + 1));
+    }
+
+    @Test
+    public void shouldKeepFingerprintUntilSecretChanges() throws Exception {
+        addCredentials(registry("registry", "user", "pass"));
+        final String fingerprint = DockerCredentialsCache.getFingerprint("registry");
+        assertThat(fingerprint, notNullValue());
+
+        // stored secret is encrypted again on every save
+        SystemCredentialsProvider.getInstance().save();
+        assertThat(DockerCredentialsCache.getFingerprint("registry"), is(fingerprint));
+
+        SystemCredentialsProvider.getInstance().getCredentials().clear();
+        addCredentials(registry("registry", "user", "other"));
+        assertThat(DockerCredentialsCache.getFingerprint("registry"), not(fingerprint));
+        assertThat(DockerCredentialsCache.getFingerprint("missing"), nullValue());
+    }
+
+    static DockerRegistryAuthCredentials registry(String id, String username, String password) {
+        return new DockerRegistryAuthCredentials(CredentialsScope.GLOBAL, id, null, username, password,
+                username + "@example.com");
+    }
+
+    static void addCredentials(DockerRegistryAuthCredentials credentials) throws Exception {
+        final SystemCredentialsProvider provider = SystemCredentialsProvider.getInstance();
+        provider.getCredentials().add(credentials);
+        provider.save();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.kostyasha.yad.launcher;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import hudson.slaves.RetentionStrategy;
+import hudson.slaves.SlaveComputer;
+import hudson.util.StreamTaskListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class DockerComputerJNLPLauncherTest {
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final StreamTaskListener listener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    @Test
+    public void shouldCompleteLaunchWhenComputerGoesOnline() throws Exception {
+        final DockerComputerJNLPLauncher launcher = new DockerComputerJNLPLauncher();
+        final SlaveComputer computer = offlineComputer("slave");
+
+        final CompletableFuture<Void> online = launcher.expectOnline(computer);
+        launcher.awaitOnline(computer, online, listener, terminated::countDown);
+        assertThat("core must not relaunch waiting computer", launcher.isLaunchSupported(), is(false));
+
+        new DockerComputerJNLPLauncher.OnlineListener().onOnline(computer, listener);
+
+        online.get(10, SECONDS);
+        assertThat(launcher.isLaunchSupported(), is(true));
+        assertThat(terminated.getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldNotCompleteLaunchOfReplacedComputerWithSameName() throws Exception {
+        final DockerComputerJNLPLauncher launcher = new DockerComputerJNLPLauncher();
+        launcher.setLaunchTimeout(600);
+        final SlaveComputer computer = offlineComputer("slave");
+        final CompletableFuture<Void> online = launcher.expectOnline(computer);
+        launcher.awaitOnline(computer, online, listener, terminated::countDown);
+
+        j.jenkins.removeNode(computer.getNode());
+        final SlaveComputer replacement = offlineComputer("slave");
+        new DockerComputerJNLPLauncher.OnlineListener().onOnline(replacement, listener);
+
+        assertThat(online.isDone(), is(false));
+        new DockerComputerJNLPLauncher.OnlineListener().onOnline(computer, listener);
+        assertThat(online.isDone(), is(true));
+    }
+
+    @Test
+    public void shouldCompleteLaunchOfAlreadyOnlineComputer() throws Exception {
+        final DockerComputerJNLPLauncher launcher = new DockerComputerJNLPLauncher();
+        final SlaveComputer computer = (SlaveComputer) j.createOnlineSlave().toComputer();
+
+        final CompletableFuture<Void> online = launcher.expectOnline(computer);
+        launcher.awaitOnline(computer, online, listener, terminated::countDown);
+
+        assertThat(online.isDone(), is(true));
+        online.get();
+        assertThat(terminated.getCount(), is(1L));
+    }
+
+    @Test
+    public void shouldTerminateComputerThatDidNotConnectInTime() throws Exception {
+        final DockerComputerJNLPLauncher launcher = new DockerComputerJNLPLauncher();
+        launcher.setLaunchTimeout(1);
+        final SlaveComputer computer = offlineComputer("slave");
+
+        final CompletableFuture<Void> online = launcher.expectOnline(computer);
+        launcher.awaitOnline(computer, online, listener, terminated::countDown);
+
+        try {
+            online.get(10, SECONDS);
+            fail("Launch must time out");
+        } catch (ExecutionException ex) {
+            assertThat(ex.getCause(), instanceOf(TimeoutException.class));
+        }
+        assertThat(terminated.await(10, SECONDS), is(true));
+        assertThat(log.toString("UTF-8"), containsString("didn't connect in 1 seconds"));
+
+        // late connection of terminated computer changes nothing
+        new DockerComputerJNLPLauncher.OnlineListener().onOnline(computer, listener);
+        assertThat(launcher.isLaunchSupported(), is(true));
+    }
+
+    private SlaveComputer offlineComputer(String name) throws Exception {
+        // jnlp slave stays offline until agent connects
+        final DumbSlave slave = new DumbSlave(name, "", j.createTmpDir().getPath(), "1", Node.Mode.NORMAL, "",
+                new JNLPLauncher(), RetentionStrategy.NOOP, Collections.emptyList());
+        j.jenkins.addNode(slave);
+        return (SlaveComputer) slave.toComputer();
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.kostyasha.yad.launcher;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.ExposedPort;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.NetworkSettings;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Ports;
+import com.github.kostyasha.yad_docker_java.com.google.common.net.HostAndPort;
+import hudson.plugins.sshslaves.SSHConnector;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DockerComputerSSHLauncherTest {
+    private final DockerComputerSSHLauncher launcher = new DockerComputerSSHLauncher(
+            new SSHConnector(22, "", null, null, null, null, null));
+
+    @Test
+    public void shouldResolvePortBoundToAllInterfacesViaContainerHost() {
+        final HostAndPort hostAndPort = launcher.getHostAndPort("cloud", "tcp://second:2375",
+                inspect(new Ports.Binding(null, "32768")));
+
+        assertThat(hostAndPort, is(HostAndPort.fromParts("second", 32768)));
+    }
+
+    @Test
+    public void shouldUseExplicitlyBoundAddress() {
+        final HostAndPort hostAndPort = launcher.getHostAndPort("cloud", null,
+                inspect(new Ports.Binding("10.0.0.5", "2222")));
+
+        assertThat(hostAndPort, is(HostAndPort.fromParts("10.0.0.5", 2222)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailWhenContainerHostIsUnknown() {
+        launcher.getHostAndPort("cloud", null, inspect(new Ports.Binding("0.0.0.0", "32768")));
+    }
+
+    private static InspectContainerResponse inspect(Ports.Binding binding) {
+        final NetworkSettings networkSettings = mock(NetworkSettings.class);
+        when(networkSettings.getPorts()).thenReturn(new Ports(new ExposedPort(22), binding));
+        final InspectContainerResponse inspect = mock(InspectContainerResponse.class);
+        when(inspect.getId()).thenReturn("container");
+        when(inspect.getNetworkSettings()).thenReturn(networkSettings);
+        return inspect;
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.EventsCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InfoCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Container;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Event;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.EventActor;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Info;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.EventsResultCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.CheckForNull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.kostyasha.yad.DockerCloud.DOCKER_CLOUD_LABEL;
+import static com.github.kostyasha.yad.DockerCloud.DOCKER_TEMPLATE_LABEL;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerContainerInventoryTest {
+    private static final String CLOUD = "cloud";
+    private static final String HOST = "tcp://host:2375";
+
+    private final AtomicReference<EventsResultCallback> events = new AtomicReference<>();
+    private volatile Callable<List<Container>> listing = Collections::emptyList;
+    private DockerClient client;
+    private EventsCmd eventsCmd;
+    private DockerContainerInventory inventory;
+
+    @Before
+    public void setUp() {
+        client = mock(DockerClient.class);
+        eventsCmd = mockEventsCmd(events);
+        when(client.eventsCmd()).thenReturn(eventsCmd);
+        final ListContainersCmd listCmd = mock(ListContainersCmd.class, invocation ->
+                "exec".equals(invocation.getMethod().getName()) ? listing.call() : invocation.getMock());
+        when(client.listContainersCmd()).thenReturn(listCmd);
+        mockInfo(client);
+
+        inventory = new DockerContainerInventory(CLOUD, singletonMap(HOST, () -> client));
+    }
+
+    @Test
+    public void shouldSeedFromListingAndFollowEvents() {
+        listing = () -> Arrays.asList(container("c1", "t1"), container("other-cloud", "t1", "other"));
+
+        assertThat(inventory.isSeeded(), is(false));
+        inventory.resync();
+        assertThat(inventory.isSeeded(), is(true));
+        assertThat(inventory.countContainers(), is(1));
+        assertThat(inventory.hostOf("c1"), is(HOST));
+        assertThat(inventory.getCpus(HOST), is(4));
+
+        events.get().onNext(event("start", "c2", "t2"));
+        assertThat(inventory.countContainers(), is(2));
+        assertThat(inventory.countContainers("t2"), is(1));
+        assertThat(inventory.countContainersOnHost(HOST), is(2));
+
+        events.get().onNext(event("die", "c1", "t1"));
+        // destroy after die changes nothing
+        events.get().onNext(event("destroy", "c1", "t1"));
+        assertThat(inventory.isRunning("c1"), is(false));
+        assertThat(inventory.hostOf("c1"), nullValue());
+        assertThat(inventory.countContainers("t1"), is(0));
+        assertThat(inventory.countContainers(), is(1));
+    }
+
+    @Test
+    public void shouldApplyEventsThatCameDuringListing() {
+        listing = () -> Collections.singletonList(container("c1", "t1"));
+        inventory.resync();
+
+        // listing was taken before events of the same moment
+        listing = () -> {
+            events.get().onNext(event("start", "c2", "t1"));
+            events.get().onNext(event("die", "c1", "t1"));
+            return Collections.singletonList(container("c1", "t1"));
+        };
+        inventory.resync();
+
+        assertThat(inventory.isRunning("c1"), is(false));
+        assertThat(inventory.isRunning("c2"), is(true));
+        assertThat(inventory.countContainers(), is(1));
+        assertThat(inventory.countContainers("t1"), is(1));
+    }
+
+    @Test
+    public void shouldKeepProvisioningUpdatesThatRacedWithResync() {
+        listing = () -> Collections.singletonList(container("c1", "t1"));
+        inventory.resync();
+
+        listing = () -> {
+            inventory.containerStarted("c2", "t1", HOST);
+            inventory.containerRemoved("c1");
+            return Collections.singletonList(container("c1", "t1"));
+        };
+        inventory.resync();
+
+        assertThat(inventory.isRunning("c1"), is(false));
+        assertThat(inventory.isRunning("c2"), is(true));
+        assertThat(inventory.countContainersOnHost(HOST), is(1));
+
+        // stream reports the same start later
+        events.get().onNext(event("start", "c2", "t1"));
+        assertThat(inventory.countContainers(), is(1));
+    }
+
+    @Test
+    public void shouldUnseedWhenStreamEndsAndReseed() {
+        inventory.resync();
+        assertThat(inventory.isSeeded(HOST), is(true));
+
+        events.get().onComplete();
+        assertThat(inventory.isSeeded(HOST), is(false));
+
+        inventory.ensureSeeded();
+        assertThat(inventory.isSeeded(HOST), is(true));
+        verify(eventsCmd, times(2)).exec(any());
+
+        // old daemon without labels in events, only listing knows template
+        events.get().onNext(event("start", "c1", null));
+        assertThat(inventory.isSeeded(HOST), is(false));
+        assertThat(inventory.isRunning("c1"), is(false));
+
+        listing = () -> Collections.singletonList(container("c1", "t1"));
+        inventory.ensureSeeded();
+        assertThat(inventory.isRunning("c1"), is(true));
+    }
+
+    @Test
+    public void shouldCloseInventoriesOfRemovedClouds() {
+        final AtomicReference<EventsResultCallback> removedEvents = new AtomicReference<>();
+        final DockerClient removedClient = mock(DockerClient.class);
+        final EventsCmd removedEventsCmd = mockEventsCmd(removedEvents);
+        when(removedClient.eventsCmd()).thenReturn(removedEventsCmd);
+        final ListContainersCmd removedListCmd = mock(ListContainersCmd.class, invocation ->
+                "exec".equals(invocation.getMethod().getName()) ? Collections.emptyList() : invocation.getMock());
+        when(removedClient.listContainersCmd()).thenReturn(removedListCmd);
+        mockInfo(removedClient);
+        final DockerContainerInventory removed = new DockerContainerInventory(CLOUD,
+                singletonMap(HOST, () -> removedClient));
+
+        inventory.resync();
+        removed.resync();
+
+        DockerContainerInventory.closeAllExcept(singleton(inventory));
+
+        assertThat(inventory.isSeeded(), is(true));
+        assertThat(removed.isSeeded(), is(false));
+
+        // closed inventory stays usable and reopens stream
+        removed.resync();
+        assertThat(removed.isSeeded(), is(true));
+        verify(removedEventsCmd, times(2)).exec(any());
+        verify(eventsCmd, times(1)).exec(any());
+    }
+
+    /**
+     * Builder methods return command itself, exec hands stream callback to test.
+     */
+    private static EventsCmd mockEventsCmd(AtomicReference<EventsResultCallback> events) {
+        return mock(EventsCmd.class, invocation -> {
+            if ("exec".equals(invocation.getMethod().getName())) {
+                events.set((EventsResultCallback) invocation.getArguments()[0]);
+                return invocation.getArguments()[0];
+            }
+            return invocation.getMock();
+        });
+    }
+
+    private static void mockInfo(DockerClient client) {
+        final Info info = mock(Info.class);
+        when(info.getNCPU()).thenReturn(4);
+        when(info.getMemTotal()).thenReturn(8L * 1024 * 1024 * 1024);
+        final InfoCmd infoCmd = mock(InfoCmd.class);
+        when(infoCmd.exec()).thenReturn(info);
+        when(client.infoCmd()).thenReturn(infoCmd);
+    }
+
+    private static Container container(String id, String templateId) {
+        return container(id, templateId, CLOUD);
+    }
+
+    private static Container container(String id, String templateId, String cloud) {
+        final Map<String, String> labels = new HashMap<>();
+        labels.put(DOCKER_CLOUD_LABEL, cloud);
+        labels.put(DOCKER_TEMPLATE_LABEL, templateId);
+        final Container container = mock(Container.class);
+        when(container.getId()).thenReturn(id);
+        when(container.getLabels()).thenReturn(labels);
+        return container;
+    }
+
+    private static Event event(String status, String id, @CheckForNull String templateId) {
+        final Event event = mock(Event.class);
+        when(event.getStatus()).thenReturn(status);
+        when(event.getId()).thenReturn(id);
+        if (templateId != null) {
+            final EventActor actor = mock(EventActor.class);
+            when(actor.getAttributes()).thenReturn(singletonMap(DOCKER_TEMPLATE_LABEL, templateId));
+            when(event.getActor()).thenReturn(actor);
+        }
+        return event;
+    }
+}
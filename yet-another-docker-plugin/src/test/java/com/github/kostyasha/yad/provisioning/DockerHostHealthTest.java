@@ -0,0 +1,121 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.DockerHostHealth.HostHealth;
+import com.github.kostyasha.yad.provisioning.DockerHostHealth.State;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DockerHostHealthTest {
+
+    @Test
+    public void shouldComputeStateFromWindow() {
+        final DockerHostHealth health = new DockerHostHealth();
+        assertThat(health.getState("tcp://a:2375"), is(State.UNKNOWN));
+        assertThat(health.isAvailable("tcp://a:2375"), is(true));
+
+        final HostHealth host = health.forHost("tcp://a:2375");
+        for (int i = 0; i < 7; i++) {
+            host.success(10);
+        }
+        assertThat(health.getState("tcp://a:2375"), is(State.HEALTHY));
+
+        host.failure(10, "Connection refused");
+        host.failure(10, "Connection refused");
+        host.failure(10, "Connection refused");
+        assertThat(host.getState(), is(State.UNAVAILABLE));
+        assertThat(health.isAvailable("tcp://a:2375"), is(false));
+
+        host.success(10);
+        assertThat(host.getState(), is(State.DEGRADED));
+        assertThat(host.getLastError() == null, is(true));
+
+        for (int i = 0; i < DockerHostHealth.WINDOW; i++) {
+            host.success(10);
+        }
+        assertThat(host.getState(), is(State.HEALTHY));
+    }
+
+    @Test
+    public void shouldDegradeSlowHost() {
+        final HostHealth host = new DockerHostHealth().forHost("tcp://slow:2375");
+        host.success(DockerHostHealth.DEGRADED_LATENCY * 2);
+        assertThat(host.getState(), is(State.DEGRADED));
+        assertThat(host.getAverageLatency(), is(DockerHostHealth.DEGRADED_LATENCY * 2));
+    }
+
+    @Test
+    public void shouldRecordHangingProbeAsFailure() throws Exception {
+        final DockerHostHealth health = new DockerHostHealth();
+        final CountDownLatch hang = new CountDownLatch(1);
+        final Map<String, Runnable> pings = new LinkedHashMap<>();
+        pings.put("tcp://ok:2375", () -> {
+        });
+        pings.put("tcp://down:2375", () -> {
+            throw new IllegalStateException("Connection refused");
+        });
+        pings.put("tcp://hang:2375", () -> {
+            try {
+                hang.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            health.probeAll(pings, executor, 200);
+
+            assertThat(health.getState("tcp://ok:2375"), is(State.HEALTHY));
+            assertThat(health.forHost("tcp://down:2375").getErrorRate(), is(1.0));
+            assertThat(health.forHost("tcp://hang:2375").getErrorRate(), is(1.0));
+        } finally {
+            hang.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldMakeHangingHostUnavailable() throws Exception {
+        final DockerHostHealth health = new DockerHostHealth();
+        final CountDownLatch hang = new CountDownLatch(1);
+        final AtomicInteger pinged = new AtomicInteger();
+        final Map<String, Runnable> pings = new LinkedHashMap<>();
+        pings.put("tcp://hang:2375", () -> {
+            pinged.incrementAndGet();
+            try {
+                hang.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int round = 1; round < DockerHostHealth.UNAVAILABLE_FAILURES; round++) {
+                health.probeAll(pings, executor, 50);
+                assertThat(health.getState("tcp://hang:2375"), is(State.DEGRADED));
+            }
+            health.probeAll(pings, executor, 50);
+            assertThat(health.getState("tcp://hang:2375"), is(State.UNAVAILABLE));
+
+            // hanging probe isn't repeated, but every round counts
+            for (int round = 0; round < DockerHostHealth.WINDOW; round++) {
+                health.probeAll(pings, executor, 50);
+            }
+            assertThat(health.getState("tcp://hang:2375"), is(State.UNAVAILABLE));
+            assertThat(pinged.get(), is(1));
+        } finally {
+            hang.countDown();
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.DockerHostPlacement.HostLoad;
+import org.junit.Test;
+
+import static com.github.kostyasha.yad.provisioning.DockerHostPlacement.rank;
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+
+public class DockerHostPlacementTest {
+
+    @Test
+    public void shouldPreferLessLoadedPerCpu() {
+        assertThat(rank(asList(
+                new HostLoad("a", 0, 4, 2, 0),
+                new HostLoad("b", 0, 6, 8, 0),
+                new HostLoad("c", 0, 0, 1, 0)
+        )), contains("b", "c", "a"));
+    }
+
+    @Test
+    public void shouldSkipFullHosts() {
+        assertThat(rank(asList(
+                new HostLoad("a", 2, 2, 4, 0),
+                new HostLoad("b", 3, 2, 1, 0)
+        )), contains("b"));
+
+        assertThat(rank(asList(new HostLoad("a", 1, 1, 1, 0))), empty());
+    }
+
+    @Test
+    public void shouldBreakTiesByMemoryThenOrder() {
+        assertThat(rank(asList(
+                new HostLoad("a", 0, 1, 1, 1000),
+                new HostLoad("b", 0, 1, 1, 4000),
+                new HostLoad("c", 0, 1, 1, 1000)
+        )), contains("b", "a", "c"));
+    }
+
+    @Test
+    public void shouldTreatUnknownInfoAsSingleCpu() {
+        assertThat(rank(asList(
+                new HostLoad("a", 0, 1, 0, 0),
+                new HostLoad("b", 0, 0, 0, 0)
+        )), contains("b", "a"));
+    }
+}
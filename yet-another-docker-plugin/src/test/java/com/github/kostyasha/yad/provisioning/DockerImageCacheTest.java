@@ -0,0 +1,247 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.DockerImageCache.HostImages;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.EventsCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectImageCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.exception.NotFoundException;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.Event;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.EventActor;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.EventsResultCallback;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.CheckForNull;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.kostyasha.yad.provisioning.DockerImageCache.normalize;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerImageCacheTest {
+    private static final String HOST = "tcp://host:2375";
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final AtomicReference<EventsResultCallback> events = new AtomicReference<>();
+    private final CountDownLatch streamOpened = new CountDownLatch(1);
+    private volatile CountDownLatch hangStream = new CountDownLatch(0);
+    private DockerClient client;
+    private HostImages hostImages;
+
+    @Before
+    public void setUp() {
+        client = mock(DockerClient.class);
+        // builder methods return command itself, exec hands stream callback to test
+        final EventsCmd eventsCmd = mock(EventsCmd.class, invocation -> {
+            if ("exec".equals(invocation.getMethod().getName())) {
+                streamOpened.countDown();
+                hangStream.await();
+                events.set((EventsResultCallback) invocation.getArguments()[0]);
+                return invocation.getArguments()[0];
+            }
+            return invocation.getMock();
+        });
+        when(client.eventsCmd()).thenReturn(eventsCmd);
+
+        final DockerImageCache cache = new DockerImageCache("cloud", singletonMap(HOST, () -> client), now::get);
+        hostImages = cache.forHost(HOST);
+    }
+
+    @Test
+    public void shouldNormalizeImageNames() {
+        assertThat(normalize("busybox"), is("busybox:latest"));
+        assertThat(normalize("busybox:1.25"), is("busybox:1.25"));
+        assertThat(normalize("docker.io/library/busybox"), is("busybox:latest"));
+        assertThat(normalize("docker.io/jenkins/slave:2.60"), is("jenkins/slave:2.60"));
+        assertThat(normalize("registry:5000/team/image"), is("registry:5000/team/image:latest"));
+        assertThat(normalize("registry:5000/team/image:1"), is("registry:5000/team/image:1"));
+    }
+
+    @Test
+    public void shouldInspectUnknownImageOnce() {
+        final InspectImageCmd inspect = present("busybox:latest", "sha256:1");
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        assertThat(hostImages.isPresent("docker.io/library/busybox:latest"), is(true));
+
+        verify(inspect, times(1)).exec();
+    }
+
+    @Test
+    public void shouldNotCacheMissingImage() {
+        final InspectImageCmd inspect = missing("busybox:latest");
+
+        assertThat(hostImages.isPresent("busybox"), is(false));
+        assertThat(hostImages.isPresent("busybox"), is(false));
+
+        verify(inspect, times(2)).exec();
+    }
+
+    @Test
+    public void shouldInspectAgainAfterTtl() {
+        final InspectImageCmd inspect = present("busybox:latest", "sha256:1");
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        now.addAndGet(DockerImageCache.TTL - 1);
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        verify(inspect, times(1)).exec();
+
+        now.addAndGet(1);
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        verify(inspect, times(2)).exec();
+    }
+
+    @Test
+    public void shouldCacheImagesFromEvents() {
+        final InspectImageCmd busybox = missing("busybox:latest");
+        final InspectImageCmd tagged = missing("team/image:1");
+
+        // opens stream
+        assertThat(hostImages.isPresent("busybox"), is(false));
+
+        events.get().onNext(event("pull", "busybox", null));
+        events.get().onNext(event("tag", "sha256:2", "team/image:1"));
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        assertThat(hostImages.isPresent("team/image:1"), is(true));
+        verify(busybox, times(1)).exec();
+        verify(tagged, never()).exec();
+    }
+
+    @Test
+    public void shouldInvalidateOnDeleteEvent() {
+        final InspectImageCmd busybox = present("busybox:latest", "sha256:1");
+        final InspectImageCmd other = present("other:latest", "sha256:2");
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        assertThat(hostImages.isPresent("other"), is(true));
+
+        events.get().onNext(event("delete", "sha256:1", null));
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        assertThat(hostImages.isPresent("other"), is(true));
+        verify(busybox, times(2)).exec();
+        verify(other, times(1)).exec();
+    }
+
+    @Test
+    public void shouldInvalidateOnUntagEventWithName() {
+        final InspectImageCmd busybox = present("busybox:latest", "sha256:1");
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        events.get().onNext(event("untag", "sha256:other", "busybox:latest"));
+        assertThat(hostImages.isPresent("busybox"), is(true));
+
+        verify(busybox, times(2)).exec();
+    }
+
+    @Test
+    public void shouldKeepStateOfOtherImagesOnRemoval() throws Exception {
+        present("busybox:latest", "sha256:1");
+        final InspectImageCmd other = present("other:latest", "sha256:2");
+        assertThat(hostImages.isPresent("busybox"), is(true));
+
+        assertThat(hostImages.pull("other", () -> {
+        }), is(true));
+        hostImages.refreshed("other");
+        hostImages.refreshed("busybox");
+
+        // garbage collection removes busybox
+        events.get().onNext(event("untag", "sha256:1", "busybox:latest"));
+        events.get().onNext(event("delete", "sha256:1", "busybox:latest"));
+
+        assertThat(hostImages.isRefreshed("busybox"), is(false));
+        assertThat(hostImages.isRefreshed("other"), is(true));
+        assertThat("recent pull is kept", hostImages.pull("other", () -> {
+        }), is(false));
+        assertThat(hostImages.isPresent("other"), is(true));
+        verify(other, never()).exec();
+    }
+
+    @Test
+    public void shouldNotBlockLookupsWhileStreamOpens() throws Exception {
+        hangStream = new CountDownLatch(1);
+        final InspectImageCmd busybox = present("busybox:latest", "sha256:1");
+        present("other:latest", "sha256:2");
+
+        final Thread opening = new Thread(() -> hostImages.isPresent("busybox"));
+        opening.start();
+        try {
+            assertThat(streamOpened.await(10, SECONDS), is(true));
+
+            // hung daemon blocks only the opening thread
+            assertThat(hostImages.isPresent("other"), is(true));
+            verify(client, times(1)).eventsCmd();
+        } finally {
+            hangStream.countDown();
+            opening.join(SECONDS.toMillis(10));
+        }
+        verify(busybox, times(1)).exec();
+        assertThat(events.get() == null, is(false));
+    }
+
+    @Test
+    public void shouldForgetImagesWhenStreamFails() {
+        final InspectImageCmd busybox = present("busybox:latest", "sha256:1");
+
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        final EventsResultCallback failed = events.get();
+        failed.onError(new RuntimeException("connection reset"));
+
+        // events could be missed, stream is reopened and entries are checked again
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        verify(busybox, times(2)).exec();
+        verify(client, times(2)).eventsCmd();
+    }
+
+    @Test
+    public void shouldCachePulledAndForgetInvalidated() {
+        final InspectImageCmd busybox = present("busybox:latest", "sha256:1");
+
+        hostImages.imagePulled("busybox");
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        verify(busybox, never()).exec();
+
+        hostImages.invalidate("busybox:latest");
+        assertThat(hostImages.isPresent("busybox"), is(true));
+        verify(busybox, times(1)).exec();
+    }
+
+    private InspectImageCmd present(String image, String imageId) {
+        final InspectImageResponse response = mock(InspectImageResponse.class);
+        when(response.getId()).thenReturn(imageId);
+        final InspectImageCmd inspect = mock(InspectImageCmd.class);
+        when(inspect.exec()).thenReturn(response);
+        when(client.inspectImageCmd(image)).thenReturn(inspect);
+        return inspect;
+    }
+
+    private InspectImageCmd missing(String image) {
+        final InspectImageCmd inspect = mock(InspectImageCmd.class);
+        when(inspect.exec()).thenThrow(new NotFoundException("No such image: " + image));
+        when(client.inspectImageCmd(image)).thenReturn(inspect);
+        return inspect;
+    }
+
+    private static Event event(String status, String id, @CheckForNull String name) {
+        final Event event = mock(Event.class);
+        when(event.getStatus()).thenReturn(status);
+        when(event.getId()).thenReturn(id);
+        if (name != null) {
+            final EventActor actor = mock(EventActor.class);
+            when(actor.getAttributes()).thenReturn(singletonMap("name", name));
+            when(event.getActor()).thenReturn(actor);
+        }
+        return event;
+    }
+}
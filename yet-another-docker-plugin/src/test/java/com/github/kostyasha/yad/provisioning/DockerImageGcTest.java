@@ -0,0 +1,52 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.DockerImageGc.Candidate;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DockerImageGcTest {
+    private static final long NOW = DockerImageGc.GRACE * 10;
+
+    @Test
+    public void shouldNotSelectUnderBudget() {
+        final List<Candidate> candidates = Arrays.asList(new Candidate("a:1", 100, 0));
+
+        assertThat(DockerImageGc.select(candidates, 100, 100, NOW), is(emptyList()));
+    }
+
+    @Test
+    public void shouldSelectLeastRecentlyUsedUntilUnderBudget() {
+        final List<Candidate> candidates = Arrays.asList(
+                new Candidate("recent:1", 100, NOW - DockerImageGc.GRACE - 1),
+                new Candidate("never-used:1", 100, 0),
+                new Candidate("old:1", 100, NOW - DockerImageGc.GRACE * 5),
+                new Candidate("oldest:1", 100, NOW - DockerImageGc.GRACE * 8)
+        );
+
+        assertThat(names(DockerImageGc.select(candidates, 450, 250, NOW)),
+                is(Arrays.asList("never-used:1", "oldest:1")));
+    }
+
+    @Test
+    public void shouldSkipImagesInGracePeriod() {
+        final List<Candidate> candidates = Arrays.asList(
+                new Candidate("just-used:1", 100, NOW - 1),
+                new Candidate("shared-tag:1", 0, 0),
+                new Candidate("old:1", 100, NOW - DockerImageGc.GRACE * 2)
+        );
+
+        assertThat(names(DockerImageGc.select(candidates, 1000, 100, NOW)),
+                is(Arrays.asList("shared-tag:1", "old:1")));
+    }
+
+    private static List<String> names(List<Candidate> candidates) {
+        return candidates.stream().map(Candidate::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerCloud;
+import com.github.kostyasha.yad.DockerConnector;
+import com.github.kostyasha.yad.DockerContainerLifecycle;
+import com.github.kostyasha.yad.DockerSlaveTemplate;
+import com.github.kostyasha.yad.commons.DockerImagePullStrategy;
+import com.github.kostyasha.yad.commons.DockerPullImage;
+import com.github.kostyasha.yad_docker_java.com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.DockerClient;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.EventsCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectImageCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectImageResponse;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.PullImageCmd;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.model.PullResponseItem;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.core.command.PullImageResultCallback;
+import hudson.model.TaskListener;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DockerImagePrePullWorkTest {
+    private static final String HOST = "tcp://host:2375";
+    private static final String OTHER_HOST = "tcp://other:2375";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final Map<String, DockerClient> clients = new LinkedHashMap<>();
+    private DockerCloud cloud;
+
+    @Before
+    public void setUp() throws Exception {
+        clients.put(HOST, client());
+        clients.put(OTHER_HOST, client());
+        final Map<String, Supplier<DockerClient>> suppliers = new LinkedHashMap<>();
+        clients.forEach((host, client) -> suppliers.put(host, () -> client));
+        final DockerImageCache imageCache = new DockerImageCache("cloud", suppliers);
+
+        cloud = new DockerCloud("cloud", Arrays.asList(
+                template("always:1", DockerImagePullStrategy.PULL_ALWAYS),
+                template("once:1", DockerImagePullStrategy.PULL_ONCE),
+                template("never:1", DockerImagePullStrategy.PULL_NEVER)
+        ), 10, new DockerConnector(HOST)) {
+            @Override
+            public DockerClient getClient(String serverUrl) {
+                return clients.get(serverUrl);
+            }
+
+            @Override
+            public DockerImageCache getImageCache() {
+                return imageCache;
+            }
+        };
+        cloud.setAdditionalConnectors(singletonList(new DockerConnector(OTHER_HOST)));
+    }
+
+    @Test
+    public void shouldPrePullEveryTemplateOnEveryHostWithItsStrategy() throws Exception {
+        cloud.prePullImages().get(10, SECONDS);
+
+        for (String host : clients.keySet()) {
+            final DockerClient client = clients.get(host);
+            verify(client, times(1)).pullImageCmd("always:1");
+            // present image isn't pulled again
+            verify(client, never()).pullImageCmd("once:1");
+            verify(client, never()).pullImageCmd("never:1");
+            assertThat(cloud.getImageCache().forHost(host).isRefreshed("always:1"), is(true));
+        }
+    }
+
+    @Test
+    public void shouldSkipUnavailableHost() throws Exception {
+        for (int i = 0; i < ProvisioningCircuitBreaker.DEFAULT_THRESHOLD; i++) {
+            cloud.getHostBreaker().failure(OTHER_HOST);
+        }
+
+        cloud.prePullImages().get(10, SECONDS);
+
+        verify(clients.get(HOST), times(1)).pullImageCmd("always:1");
+        verify(clients.get(OTHER_HOST), never()).pullImageCmd(anyString());
+    }
+
+    @Test
+    public void shouldNotPrePullWhenDisabled() throws Exception {
+        j.jenkins.clouds.add(cloud);
+
+        System.setProperty(DockerImagePrePullWork.DISABLED_PROPERTY, "true");
+        try {
+            new DockerImagePrePullWork().execute(TaskListener.NULL);
+        } finally {
+            System.clearProperty(DockerImagePrePullWork.DISABLED_PROPERTY);
+        }
+        verify(clients.get(HOST), never()).pullImageCmd(anyString());
+
+        new DockerImagePrePullWork().execute(TaskListener.NULL);
+        verify(clients.get(HOST), times(1)).pullImageCmd("always:1");
+    }
+
+    private static DockerSlaveTemplate template(String image, DockerImagePullStrategy strategy) {
+        final DockerPullImage pullImage = new DockerPullImage();
+        pullImage.setPullStrategy(strategy);
+        final DockerContainerLifecycle lifecycle = new DockerContainerLifecycle();
+        lifecycle.setImage(image);
+        lifecycle.setPullImage(pullImage);
+        final DockerSlaveTemplate template = new DockerSlaveTemplate();
+        template.setDockerContainerLifecycle(lifecycle);
+        return template;
+    }
+
+    /**
+     * Every image is present, every pull succeeds right away.
+     */
+    private static DockerClient client() throws Exception {
+        final DockerClient client = mock(DockerClient.class);
+        final EventsCmd eventsCmd = mock(EventsCmd.class, invocation -> "exec".equals(invocation.getMethod().getName())
+                ? invocation.getArguments()[0] : invocation.getMock());
+        when(client.eventsCmd()).thenReturn(eventsCmd);
+
+        when(client.inspectImageCmd(anyString())).thenAnswer(invocation -> {
+            final InspectImageResponse response = mock(InspectImageResponse.class);
+            when(response.getId()).thenReturn("sha256:" + invocation.getArguments()[0]);
+            final InspectImageCmd inspect = mock(InspectImageCmd.class);
+            when(inspect.exec()).thenReturn(response);
+            return inspect;
+        });
+
+        final PullResponseItem pulled = new ObjectMapper().readValue(
+                "{\"status\": \"Status: Downloaded newer image\"}", PullResponseItem.class);
+        when(client.pullImageCmd(anyString())).thenAnswer(invocation -> mock(PullImageCmd.class, pull -> {
+            if ("exec".equals(pull.getMethod().getName())) {
+                final PullImageResultCallback callback = (PullImageResultCallback) pull.getArguments()[0];
+                callback.onNext(pulled);
+                callback.onComplete();
+                return callback;
+            }
+            return pull.getMock();
+        }));
+        return client;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.DockerSlaveTemplate;
+import com.github.kostyasha.yad.provisioning.DockerWarmPool.Adoption;
+import com.github.kostyasha.yad.provisioning.DockerWarmPool.WarmContainer;
+import com.github.kostyasha.yad_docker_java.com.github.dockerjava.api.command.InspectContainerResponse;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DockerWarmPoolTest {
+
+    @Test
+    public void shouldClaimPolledContainer() {
+        final DockerWarmPool pool = new DockerWarmPool();
+        final DockerSlaveTemplate template = template(1, 2);
+        final WarmContainer container = container();
+        pool.add(template, container);
+
+        final WarmContainer polled = pool.poll(template, id -> true);
+        assertThat(polled, notNullValue());
+        assertThat(polled.getContainerId(), is(container.getContainerId()));
+        assertThat(DockerWarmPool.isClaimed(container.getContainerId()), is(true));
+        assertThat(pool.contains(container.getContainerId()), is(false));
+        assertThat(pool.poll(template, id -> true), nullValue());
+    }
+
+    @Test
+    public void shouldSkipDeadContainersOnPoll() {
+        final DockerWarmPool pool = new DockerWarmPool();
+        final DockerSlaveTemplate template = template(2, 2);
+        final WarmContainer dead = container();
+        final WarmContainer alive = container();
+        pool.add(template, dead);
+        pool.add(template, alive);
+
+        final WarmContainer polled = pool.poll(template, id -> id.equals(alive.getContainerId()));
+        assertThat(polled.getContainerId(), is(alive.getContainerId()));
+        assertThat("dead container is not handed out", DockerWarmPool.isClaimed(dead.getContainerId()), is(false));
+    }
+
+    @Test
+    public void shouldRefillToMinIdleAndGrowByTaken() {
+        final DockerWarmPool pool = new DockerWarmPool();
+        final DockerSlaveTemplate template = template(2, 4);
+
+        assertThat(pool.missing(template), is(2));
+
+        pool.creating(template).incrementAndGet();
+        pool.add(template, container());
+        assertThat("created and being created containers count", pool.missing(template), is(0));
+        pool.creating(template).decrementAndGet();
+        pool.add(template, container());
+
+        pool.poll(template, id -> true);
+        pool.poll(template, id -> true);
+        assertThat("drained pool grows", pool.missing(template), is(4));
+        assertThat("taken counter is reset", pool.missing(template), is(2));
+
+        assertThat("pool disabled", pool.missing(template(0, 4)), is(0));
+    }
+
+    @Test
+    public void shouldTrimAndPrune() {
+        final DockerWarmPool pool = new DockerWarmPool();
+        final DockerSlaveTemplate template = template(1, 1);
+        final DockerSlaveTemplate removed = template(1, 1);
+        final WarmContainer first = container();
+        final WarmContainer second = container();
+        final WarmContainer orphan = container();
+        pool.add(template, first);
+        pool.add(template, second);
+        pool.add(removed, orphan);
+
+        final List<WarmContainer> extra = pool.trim(template);
+        assertThat(extra, hasSize(1));
+        assertThat(extra.get(0).getContainerId(), is(second.getContainerId()));
+
+        final List<WarmContainer> dropped = pool.prune(singletonList(template), id -> true);
+        assertThat(dropped, hasSize(1));
+        assertThat(dropped.get(0).getContainerId(), is(orphan.getContainerId()));
+        assertThat(pool.size(template), is(1));
+    }
+
+    @Test
+    public void shouldAdoptOnlyUnknownContainersOfPooledTemplates() {
+        final DockerWarmPool pool = new DockerWarmPool();
+        final DockerSlaveTemplate template = template(1, 1);
+
+        final WarmContainer pooled = container();
+        pool.add(template, pooled);
+        assertThat(pool.adoption(pooled.getContainerId(), template, Collections.emptySet()), is(Adoption.SKIP));
+
+        final String owned = UUID.randomUUID().toString();
+        assertThat(pool.adoption(owned, template, singleton(owned)), is(Adoption.SKIP));
+
+        final WarmContainer claimed = container();
+        final DockerWarmPool other = new DockerWarmPool();
+        other.add(template, claimed);
+        other.poll(template, id -> true);
+        assertThat("handed out by other pool", pool.adoption(claimed.getContainerId(), template, Collections.emptySet()),
+                is(Adoption.SKIP));
+
+        final String leftover = UUID.randomUUID().toString();
+        assertThat(pool.adoption(leftover, template, Collections.emptySet()), is(Adoption.ADOPT));
+        assertThat("template was removed", pool.adoption(leftover, null, Collections.emptySet()), is(Adoption.REMOVE));
+        assertThat("pool was disabled", pool.adoption(leftover, template(0, 0), Collections.emptySet()),
+                is(Adoption.REMOVE));
+    }
+
+    @Test
+    public void shouldAllowOneRefillAndOneAdoption() {
+        final DockerWarmPool pool = new DockerWarmPool();
+
+        assertThat(pool.startRefill(), is(true));
+        assertThat(pool.startRefill(), is(false));
+        pool.finishRefill();
+        assertThat(pool.startRefill(), is(true));
+
+        assertThat(pool.startAdoption(), is(true));
+        assertThat(pool.startAdoption(), is(false));
+    }
+
+    private static DockerSlaveTemplate template(int minIdle, int maxIdle) {
+        final DockerSlaveTemplate template = new DockerSlaveTemplate();
+        template.setPoolMinIdle(minIdle);
+        template.setPoolMaxIdle(maxIdle);
+        return template;
+    }
+
+    private static WarmContainer container() {
+        final String id = UUID.randomUUID().toString();
+        return new WarmContainer(new InspectContainerResponse() {
+            @Override
+            public String getId() {
+                return id;
+            }
+        }, "tcp://host:2375");
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.ProvisioningCircuitBreaker.State;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ProvisioningCircuitBreakerTest {
+    private final AtomicLong now = new AtomicLong(1000);
+
+    private final ProvisioningCircuitBreaker breaker = new ProvisioningCircuitBreaker(2, 100, 1000, now::get);
+
+    @Test
+    public void shouldOpenAfterThreshold() {
+        assertThat(breaker.tryAcquire("t"), is(true));
+        breaker.failure("t");
+        assertThat(breaker.getState("t"), is(State.CLOSED));
+        assertThat(breaker.tryAcquire("t"), is(true));
+
+        breaker.failure("t");
+        assertThat(breaker.getState("t"), is(State.OPEN));
+        assertThat(breaker.isAvailable("t"), is(false));
+        assertThat(breaker.tryAcquire("t"), is(false));
+        assertThat(breaker.getRetryIn("t"), allOf(greaterThanOrEqualTo(50L), lessThanOrEqualTo(100L)));
+
+        assertThat("other keys are not affected", breaker.tryAcquire("other"), is(true));
+    }
+
+    @Test
+    public void shouldAllowSingleProbeWhenHalfOpen() {
+        breaker.failure("t");
+        breaker.failure("t");
+        now.addAndGet(100);
+
+        assertThat(breaker.isAvailable("t"), is(true));
+        assertThat(breaker.tryAcquire("t"), is(true));
+        assertThat(breaker.getState("t"), is(State.HALF_OPEN));
+        assertThat("probe is in flight", breaker.tryAcquire("t"), is(false));
+
+        breaker.success("t");
+        assertThat(breaker.getState("t"), is(State.CLOSED));
+        assertThat(breaker.tryAcquire("t"), is(true));
+        assertThat(breaker.tryAcquire("t"), is(true));
+    }
+
+    @Test
+    public void shouldGrowBackoffAfterFailedProbe() {
+        breaker.failure("t");
+        breaker.failure("t");
+        now.addAndGet(100);
+        assertThat(breaker.tryAcquire("t"), is(true));
+
+        breaker.failure("t");
+        assertThat(breaker.getState("t"), is(State.OPEN));
+        assertThat(breaker.getRetryIn("t"), allOf(greaterThanOrEqualTo(100L), lessThanOrEqualTo(200L)));
+
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(1000);
+            assertThat(breaker.tryAcquire("t"), is(true));
+            breaker.failure("t");
+        }
+        assertThat("capped by max backoff", breaker.getRetryIn("t"), lessThanOrEqualTo(1000L));
+    }
+
+    @Test
+    public void releasedProbeShouldLetNextCallerIn() {
+        breaker.failure("t");
+        breaker.failure("t");
+        now.addAndGet(100);
+
+        assertThat(breaker.tryAcquire("t"), is(true));
+        breaker.release("t");
+        assertThat(breaker.tryAcquire("t"), is(true));
+    }
+}
@@ -0,0 +1,39 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ProvisioningLatencyTest {
+
+    @Test
+    public void shouldBeUnknownBeforeFirstSample() {
+        assertThat(new ProvisioningLatency().get("template"), is(0L));
+    }
+
+    @Test
+    public void shouldStartFromFirstSampleAndAverage() {
+        final ProvisioningLatency latency = new ProvisioningLatency();
+
+        latency.record("template", 1000);
+        assertThat(latency.get("template"), is(1000L));
+
+        latency.record("template", 2000);
+        assertThat(latency.get("template"), is(1300L));
+
+        latency.record("template", 2000);
+        assertThat(latency.get("template"), is(1510L));
+    }
+
+    @Test
+    public void shouldKeepTemplatesApart() {
+        final ProvisioningLatency latency = new ProvisioningLatency();
+
+        latency.record("fast", 100);
+        latency.record("slow", 10000);
+
+        assertThat(latency.get("fast"), is(100L));
+        assertThat(latency.get("slow"), is(10000L));
+    }
+}
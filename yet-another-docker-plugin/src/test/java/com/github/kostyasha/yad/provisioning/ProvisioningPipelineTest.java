@@ -0,0 +1,274 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.PULL;
+import static com.github.kostyasha.yad.provisioning.ProvisioningStage.RUN;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+public class ProvisioningPipelineTest {
+
+    @Test
+    public void shouldBoundStageConcurrencyPerHost() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud");
+        final int permits = PULL.getConcurrency();
+        final int tasks = permits * 3;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            futures.add(pipeline.stage(PULL, "host", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return 1;
+            }));
+        }
+
+        waitFor(() -> running.get() == permits);
+        assertThat(pipeline.getMetrics().get(PULL).getRunning(), is(permits));
+        assertThat(pipeline.getMetrics().get(PULL).getQueued(), is(tasks - permits));
+
+        // busy host doesn't block other host
+        final CompletableFuture<Integer> other = pipeline.stage(PULL, "other", () -> 1);
+        assertThat(other.get(10, SECONDS), is(1));
+
+        release.countDown();
+        for (CompletableFuture<Integer> future : futures) {
+            assertThat(future.get(10, SECONDS), is(1));
+        }
+
+        assertThat(maxRunning.get(), is(permits));
+        // metrics are updated right after future completes
+        waitFor(() -> pipeline.getMetrics().get(PULL).getSucceeded() == tasks + 1);
+        assertThat(pipeline.getMetrics().get(PULL).getQueued(), is(0));
+    }
+
+    @Test
+    public void shouldTimeoutAndInterruptStage() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud", stage -> 100);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        final CompletableFuture<String> future = pipeline.stage(RUN, "host", () -> {
+            try {
+                Thread.sleep(MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "never";
+        });
+
+        assertThat(causeOf(future), instanceOf(TimeoutException.class));
+        assertThat(interrupted.await(10, SECONDS), is(true));
+        waitFor(() -> pipeline.getMetrics().get(RUN).getTimedOut() == 1);
+        assertThat(pipeline.getMetrics().get(RUN).getFailed(), is(0L));
+    }
+
+    @Test
+    public void shouldPassLateResultToCleanup() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud", stage -> 100);
+        final AtomicReference<String> cleanedUp = new AtomicReference<>();
+        final CountDownLatch cleanup = new CountDownLatch(1);
+
+        // ignores interrupt like blocking http call does and creates container anyway
+        final CompletableFuture<String> future = pipeline.stage(RUN, "host", () -> {
+            final long until = System.currentTimeMillis() + 500;
+            while (System.currentTimeMillis() < until) {
+                Thread.interrupted();
+            }
+            return "container";
+        }, containerId -> {
+            cleanedUp.set(containerId);
+            cleanup.countDown();
+        });
+
+        assertThat(causeOf(future), instanceOf(TimeoutException.class));
+        assertThat(cleanup.await(10, SECONDS), is(true));
+        assertThat(cleanedUp.get(), is("container"));
+    }
+
+    @Test
+    public void shouldNotCleanupResultInTime() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud");
+        final AtomicBoolean cleanedUp = new AtomicBoolean(false);
+
+        final CompletableFuture<String> future = pipeline.stage(RUN, "host", () -> "container",
+                containerId -> cleanedUp.set(true));
+
+        assertThat(future.get(10, SECONDS), is("container"));
+        assertThat(cleanedUp.get(), is(false));
+    }
+
+    @Test
+    public void shouldNotLeakInterruptToNextTask() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud", stage -> 100);
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(pipeline.stage(RUN, "host", () -> {
+                Thread.sleep(10);
+                return Thread.currentThread().isInterrupted();
+            }));
+        }
+
+        for (CompletableFuture<Boolean> future : futures) {
+            assertThat(future.get(10, SECONDS), is(false));
+        }
+    }
+
+    @Test
+    public void shouldProvisionOtherHostWhileHostHangs() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud", stage -> 100);
+        final CountDownLatch hang = new CountDownLatch(1);
+        final int permits = RUN.getConcurrency();
+
+        // blocking read that ignores interrupt, on every stage of hung host
+        final List<CompletableFuture<Integer>> hung = new ArrayList<>();
+        final List<CompletableFuture<Integer>> hungRuns = new ArrayList<>();
+        for (ProvisioningStage stage : ProvisioningStage.values()) {
+            for (int i = 0; i < stage.getConcurrency() * 3; i++) {
+                final CompletableFuture<Integer> future = pipeline.stage(stage, "hung", () -> {
+                    while (hang.getCount() > 0) {
+                        try {
+                            hang.await();
+                        } catch (InterruptedException ignore) {
+                            // keeps hanging
+                        }
+                    }
+                    return 1;
+                });
+                hung.add(future);
+                if (stage == RUN) {
+                    hungRuns.add(future);
+                }
+            }
+        }
+
+        final CompletableFuture<Integer> other = pipeline.stage(RUN, "other", () -> 2);
+        assertThat(other.get(10, SECONDS), is(2));
+
+        // timed out tasks free slots for next ones, but at most permits threads are lost per stage and host
+        waitFor(() -> hungRuns.stream().filter(CompletableFuture::isCompletedExceptionally).count() == permits * 2);
+        assertThat(pipeline.getMetrics().get(RUN).getLost(), is(permits));
+        assertThat(pipeline.getMetrics().get(RUN).getRunning(), is(permits * 2));
+        assertThat(pipeline.getMetrics().get(RUN).getQueued(), is(permits));
+
+        hang.countDown();
+        waitFor(() -> hung.stream().allMatch(CompletableFuture::isDone));
+        waitFor(() -> pipeline.getMetrics().get(RUN).getRunning() == 0);
+        assertThat(pipeline.getMetrics().get(RUN).getLost(), is(0));
+        // last ones started after release
+        assertThat(pipeline.getMetrics().get(RUN).getTimedOut(), is((long) permits * 2));
+        assertThat(pipeline.getMetrics().get(RUN).getSucceeded(), is((long) permits + 1));
+    }
+
+    @Test
+    public void shouldRunBackgroundTasksAfterQueuedProvisioning() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud");
+        final int permits = PULL.getConcurrency();
+        final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger running = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < permits; i++) {
+            futures.add(pipeline.stage(PULL, "host", () -> {
+                running.incrementAndGet();
+                release.await();
+                return "build";
+            }));
+        }
+        waitFor(() -> running.get() == permits);
+
+        futures.add(pipeline.background(PULL, "host", () -> {
+            started.add("pre-pull");
+            return "pre-pull";
+        }));
+        futures.add(pipeline.stage(PULL, "host", () -> {
+            started.add("queued build");
+            return "queued build";
+        }));
+
+        release.countDown();
+        for (CompletableFuture<String> future : futures) {
+            future.get(10, SECONDS);
+        }
+        assertThat(started, is(Arrays.asList("queued build", "pre-pull")));
+    }
+
+    @Test
+    public void shouldLeaveSlotForProvisioningWhileBackgroundRuns() throws Exception {
+        final ProvisioningPipeline pipeline = new ProvisioningPipeline("cloud");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger backgroundRunning = new AtomicInteger();
+        final AtomicInteger maxBackgroundRunning = new AtomicInteger();
+
+        final List<CompletableFuture<Integer>> background = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            background.add(pipeline.background(PULL, "host", () -> {
+                maxBackgroundRunning.accumulateAndGet(backgroundRunning.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                } finally {
+                    backgroundRunning.decrementAndGet();
+                }
+                return 1;
+            }));
+        }
+        waitFor(() -> backgroundRunning.get() == 1);
+
+        // build pull doesn't wait for pre-pulls
+        assertThat(pipeline.stage(PULL, "host", () -> 2).get(10, SECONDS), is(2));
+
+        release.countDown();
+        for (CompletableFuture<Integer> future : background) {
+            assertThat(future.get(10, SECONDS), is(1));
+        }
+        assertThat(maxBackgroundRunning.get(), is(1));
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(10, SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("Future didn't fail");
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        final long until = System.currentTimeMillis() + SECONDS.toMillis(10);
+        while (!condition.met()) {
+            if (System.currentTimeMillis() > until) {
+                throw new AssertionError("Condition wasn't met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean met();
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.kostyasha.yad.provisioning;
+
+import com.github.kostyasha.yad.provisioning.ProvisioningReservations.Reservation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ProvisioningReservationsTest {
+
+    @Test
+    public void shouldRespectCloudAndTemplateCaps() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+
+        assertThat(reservations.tryAcquire("a", 3, 2, 0, 0), notNullValue());
+        assertThat(reservations.tryAcquire("a", 3, 2, 0, 0), notNullValue());
+        assertThat("template cap reached", reservations.tryAcquire("a", 3, 2, 0, 0), nullValue());
+        assertThat(reservations.tryAcquire("b", 3, 0, 0, 0), notNullValue());
+        assertThat("cloud cap reached", reservations.tryAcquire("b", 3, 0, 0, 0), nullValue());
+
+        assertThat(reservations.reserved(), is(3));
+        assertThat(reservations.reserved("a"), is(2));
+    }
+
+    @Test
+    public void shouldCountRunningContainers() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+
+        assertThat(reservations.tryAcquire("a", 5, 0, 5, 0), nullValue());
+        assertThat(reservations.tryAcquire("a", 5, 2, 0, 2), nullValue());
+        assertThat(reservations.reserved(), is(0));
+    }
+
+    @Test
+    public void releaseShouldBeIdempotent() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+
+        final Reservation reservation = reservations.tryAcquire("a", 1, 0, 0, 0);
+        assertThat(reservation, notNullValue());
+        assertThat(reservation.release(), is(true));
+        assertThat(reservation.release(), is(false));
+
+        assertThat(reservations.reserved(), is(0));
+        assertThat(reservations.reserved("a"), is(0));
+    }
+
+    @Test
+    public void shouldExpireReservationOfDeadFuture() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final Reservation reservation = reservations.tryAcquire("a", 1, 0, 0, 0);
+        assertThat(reservation, notNullValue());
+        reservation.attach(future);
+
+        assertThat(reservations.expireStale(), is(0));
+        future.cancel(true);
+        assertThat(reservations.expireStale(), is(1));
+        assertThat(reservation.isReleased(), is(true));
+        assertThat(reservations.reserved(), is(0));
+    }
+
+    @Test
+    public void shouldExpireOldReservation() throws Exception {
+        final ProvisioningReservations reservations = new ProvisioningReservations(0);
+
+        assertThat(reservations.tryAcquire("a", 1, 0, 0, 0), notNullValue());
+        Thread.sleep(5);
+        assertThat(reservations.expireStale(), is(1));
+        assertThat(reservations.reserved(), is(0));
+    }
+
+    @Test
+    public void shouldNotExpireRenewedReservation() {
+        final AtomicLong now = new AtomicLong(1000);
+        final ProvisioningReservations reservations = new ProvisioningReservations(100, now::get);
+
+        final Reservation reservation = reservations.tryAcquire("a", 1, 0, 0, 0);
+        reservation.attach(new CompletableFuture<>());
+        now.addAndGet(80);
+        reservation.renew();
+        now.addAndGet(100);
+        assertThat(reservations.expireStale(), is(0));
+
+        now.addAndGet(1);
+        assertThat(reservations.expireStale(), is(1));
+        assertThat(reservation.isReleased(), is(true));
+    }
+
+    @Test
+    public void shouldOutliveAllStageTimeouts() {
+        long timeouts = 0;
+        for (ProvisioningStage stage : ProvisioningStage.values()) {
+            timeouts += stage.getTimeoutMillis();
+        }
+        // queued stages wait for others
+        assertThat(ProvisioningReservations.DEFAULT_MAX_AGE > timeouts, is(true));
+    }
+
+    @Test
+    public void shouldRespectHostCap() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+
+        final Reservation first = reservations.tryAcquire("a", 10, 0, 0, 0);
+        final Reservation second = reservations.tryAcquire("a", 10, 0, 0, 0);
+        assertThat(first.placeOn("host", HostBudget.ofCap(2, 1), ContainerResources.NONE), is(true));
+        assertThat("host cap reached", second.placeOn("host", HostBudget.ofCap(2, 1), ContainerResources.NONE), is(false));
+        assertThat(reservations.reservedOnHost("host"), is(1));
+
+        first.release();
+        assertThat(reservations.reservedOnHost("host"), is(0));
+        assertThat(second.placeOn("host", HostBudget.ofCap(2, 1), ContainerResources.NONE), is(true));
+    }
+
+    @Test
+    public void shouldRespectHostResourceBudget() {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+        // 4 GB, 2 cpus; 1 GB and 1 cpu taken by running containers
+        final HostBudget budget = new HostBudget(0, 1, 4096, 1024, 2048, 1024);
+        final ContainerResources big = new ContainerResources(2048, 512);
+        final ContainerResources unlimited = ContainerResources.NONE;
+
+        final Reservation first = reservations.tryAcquire("a", 10, 0, 0, 0);
+        final Reservation second = reservations.tryAcquire("a", 10, 0, 0, 0);
+        final Reservation third = reservations.tryAcquire("a", 10, 0, 0, 0);
+        assertThat(first.placeOn("host", budget, big), is(true));
+        assertThat("memory budget exceeded", second.placeOn("host", budget, big), is(false));
+        assertThat("container without limits takes no budget", third.placeOn("host", budget, unlimited), is(true));
+        assertThat(reservations.reservedMemoryOnHost("host"), is(2048L));
+        assertThat(reservations.reservedCpuSharesOnHost("host"), is(512L));
+
+        final HostBudget cpuBound = new HostBudget(0, 1, 0, 0, 2048, 1024);
+        assertThat("cpu budget exceeded", second.placeOn("other", cpuBound, new ContainerResources(0, 2048)), is(false));
+
+        first.release();
+        assertThat(reservations.reservedMemoryOnHost("host"), is(0L));
+        assertThat(second.placeOn("host", budget, big), is(true));
+    }
+
+    @Test
+    public void shouldNotOvershootUnderContention() throws Exception {
+        final ProvisioningReservations reservations = new ProvisioningReservations();
+        final int threads = 16;
+        final int cloudCap = 50;
+        final int templateCap = 7;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger acquired = new AtomicInteger();
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                final String templateId = "t" + (i % 4);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 100; j++) {
+                        if (reservations.tryAcquire(templateId, cloudCap, templateCap, 0, 0) != null) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 4 templates * 7 = 28 < 50
+        assertThat(acquired.get(), is(4 * templateCap));
+        assertThat(reservations.reserved(), is(4 * templateCap));
+        for (int i = 0; i < 4; i++) {
+            assertThat(reservations.reserved("t" + i), is(templateCap));
+        }
+    }
+}
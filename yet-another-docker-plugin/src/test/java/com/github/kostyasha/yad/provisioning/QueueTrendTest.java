@@ -0,0 +1,46 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.junit.Test;
+
+import static com.github.kostyasha.yad.provisioning.QueueTrend.forecast;
+import static com.github.kostyasha.yad.provisioning.QueueTrend.slope;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class QueueTrendTest {
+
+    @Test
+    public void shouldKeepQueueLengthForFlatHistory() {
+        final float[] flat = {4, 4, 4, 4, 4, 4};
+        assertThat(slope(flat, QueueTrend.SAMPLES), closeTo(0, 0.0001));
+        assertThat(forecast(4, flat, SECONDS.toMillis(30)), is(4));
+    }
+
+    @Test
+    public void shouldExtrapolateRisingQueue() {
+        // newest first, queue grows by one every tick
+        final float[] rising = {6, 5, 4, 3, 2, 1, 50, 50};
+        assertThat("only last minute is used", slope(rising, QueueTrend.SAMPLES), closeTo(1, 0.0001));
+        assertThat(forecast(6, rising, SECONDS.toMillis(30)), is(9));
+        assertThat("lookahead is capped", forecast(6, rising, MINUTES.toMillis(60)), is(36));
+    }
+
+    @Test
+    public void shouldNotShrinkForecastForFallingQueue() {
+        final float[] falling = {1, 2, 3, 4, 5, 6};
+        assertThat(slope(falling, QueueTrend.SAMPLES), closeTo(-1, 0.0001));
+        assertThat(forecast(1, falling, SECONDS.toMillis(30)), is(1));
+    }
+
+    @Test
+    public void shouldHandleSparseHistory() {
+        assertThat(forecast(3, null, SECONDS.toMillis(30)), is(3));
+        assertThat(forecast(3, new float[0], SECONDS.toMillis(30)), is(3));
+        assertThat(forecast(3, new float[]{3}, SECONDS.toMillis(30)), is(3));
+        assertThat("two samples are enough", forecast(3, new float[]{3, 1}, SECONDS.toMillis(20)), is(7));
+        assertThat("no latency known", forecast(3, new float[]{3, 1}, 0), is(3));
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.kostyasha.yad.provisioning;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void shouldCoalesceConcurrentActions() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<>(0);
+        final AtomicInteger executed = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final int threads = 8;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            futures.add(executor.submit(() -> singleFlight.run("image", () -> {
+                executed.incrementAndGet();
+                started.countDown();
+                await(finish);
+            })));
+            started.await();
+            for (int i = 1; i < threads; i++) {
+                futures.add(executor.submit(() -> singleFlight.run("image", executed::incrementAndGet)));
+            }
+            Thread.sleep(100);
+            finish.countDown();
+
+            int leaders = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(30, TimeUnit.SECONDS)) {
+                    leaders++;
+                }
+            }
+            assertThat(leaders, is(1));
+            assertThat(executed.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldShareFailureAndRetryAfterIt() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<>(1000);
+
+        try {
+            singleFlight.run("image", () -> {
+                throw new IOException("registry down");
+            });
+            fail("failure expected");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("registry down"));
+        }
+
+        assertThat("failed action is not remembered", singleFlight.run("image", () -> { }), is(true));
+    }
+
+    @Test
+    public void shouldSkipRecentAction() throws Exception {
+        final AtomicLong now = new AtomicLong(0);
+        final SingleFlight<String> singleFlight = new SingleFlight<>(1000, now::get);
+
+        assertThat(singleFlight.run("image", () -> { }), is(true));
+        now.set(999);
+        assertThat(singleFlight.run("image", () -> { }), is(false));
+        assertThat(singleFlight.run("other", () -> { }), is(true));
+        now.set(1000);
+        assertThat(singleFlight.run("image", () -> { }), is(true));
+
+        singleFlight.forget("image");
+        assertThat(singleFlight.run("image", () -> { }), is(true));
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}